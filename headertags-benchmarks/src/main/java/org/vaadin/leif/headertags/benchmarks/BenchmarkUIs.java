@@ -0,0 +1,184 @@
+package org.vaadin.leif.headertags.benchmarks;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import org.vaadin.leif.headertags.GeneratorLifecycle;
+import org.vaadin.leif.headertags.GeneratorScope;
+import org.vaadin.leif.headertags.HeadTag;
+import org.vaadin.leif.headertags.HeadTagAttribute;
+import org.vaadin.leif.headertags.HeadTagGenerators;
+import org.vaadin.leif.headertags.JsonLd;
+import org.vaadin.leif.headertags.JsonLdProperty;
+import org.vaadin.leif.headertags.Link;
+import org.vaadin.leif.headertags.LinkTags;
+import org.vaadin.leif.headertags.Meta;
+import org.vaadin.leif.headertags.MetaTags;
+import org.vaadin.leif.headertags.Viewport;
+import org.vaadin.leif.headertags.ViewportGenerator;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+/**
+ * UI classes with different kinds of head tag definitions used by the
+ * benchmarks.
+ */
+public class BenchmarkUIs {
+
+    private BenchmarkUIs() {
+        // Only a holder for the UI classes
+    }
+
+    /**
+     * Base class for the benchmark UIs.
+     */
+    public abstract static class BenchmarkUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Never initialized in the benchmarks
+        }
+    }
+
+    /**
+     * UI with only static tags defined directly using the tag annotations.
+     */
+    @Viewport("width=device-width, initial-scale=1")
+    @Meta(httpEquiv = "X-UA-Compatible", content = "IE=edge")
+    @Meta(name = "description", content = "Static benchmark UI")
+    @Meta(name = "theme-color", content = "#00b4f0")
+    @Link(rel = "icon", href = "favicon.ico")
+    @Link(rel = "stylesheet", href = "styles.css")
+    public static class StaticUI extends BenchmarkUI {
+    }
+
+    /**
+     * Viewport generator that depends on the user agent.
+     */
+    public static class UserAgentViewportGenerator implements
+            ViewportGenerator {
+        @Override
+        public String getViewport(VaadinRequest request) {
+            String userAgent = request.getHeader("User-Agent");
+            if (userAgent != null
+                    && userAgent.toLowerCase().contains("mobile")) {
+                return "width=device-width, initial-scale=1, maximum-scale=1";
+            } else {
+                return "width=900";
+            }
+        }
+    }
+
+    /**
+     * Generator defining its own tag and multiple attributes.
+     */
+    @Meta(name = "generated")
+    public static class ContentGenerator {
+        public String getContent(VaadinRequest request) {
+            return "Generated for " + request.getHeader("Accept-Language");
+        }
+
+        @HeadTagAttribute("itemprop")
+        public String getItemprop() {
+            return "description";
+        }
+    }
+
+    /**
+     * Stateless generator shared by all requests.
+     */
+    @GeneratorLifecycle(GeneratorScope.SINGLETON)
+    @Link(rel = "canonical", href = HeadTag.NULL_VALUE)
+    public static class CanonicalLinkGenerator {
+        public String getHref(VaadinRequest request) {
+            return "https://example.com" + request.getPathInfo();
+        }
+    }
+
+    /**
+     * UI where most tags are created by generators.
+     */
+    @Meta(name = "description", content = "Generator benchmark UI")
+    @HeadTagGenerators({ UserAgentViewportGenerator.class,
+            ContentGenerator.class, CanonicalLinkGenerator.class })
+    public static class GeneratorUI extends BenchmarkUI {
+    }
+
+    /**
+     * Application specific viewport annotation, resolved through a
+     * <code>@AppViewport &rarr; @Viewport &rarr; @Meta &rarr; @HeadTag</code>
+     * chain.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Viewport("width=device-width")
+    public @interface AppViewport {
+        @HeadTagAttribute("content")
+        String value() default "width=device-width, initial-scale=1";
+    }
+
+    /**
+     * Annotation one more level away from the head tag.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @AppViewport
+    public @interface MobileViewport {
+        @HeadTagAttribute("content")
+        String value() default "width=device-width, initial-scale=1, maximum-scale=1";
+    }
+
+    /**
+     * UI using a deep meta annotation chain.
+     */
+    @MobileViewport
+    @Meta(name = "description", content = "Deep chain benchmark UI")
+    public static class DeepChainUI extends BenchmarkUI {
+    }
+
+    /**
+     * UI defining many tags through the collection annotations.
+     */
+    @MetaTags({ @Meta(name = "og:title", content = "Title"),
+            @Meta(name = "og:type", content = "website"),
+            @Meta(name = "og:url", content = "https://example.com"),
+            @Meta(name = "og:image", content = "https://example.com/og.png"),
+            @Meta(name = "twitter:card", content = "summary"),
+            @Meta(name = "twitter:title", content = "Title"),
+            @Meta(name = "twitter:description", content = "Description"),
+            @Meta(name = "apple-mobile-web-app-capable", content = "yes") })
+    @LinkTags({
+            @Link(rel = "icon", sizes = "16x16", href = "icon-16.png"),
+            @Link(rel = "icon", sizes = "32x32", href = "icon-32.png"),
+            @Link(rel = "icon", sizes = "192x192", href = "icon-192.png"),
+            @Link(rel = "apple-touch-icon", sizes = "180x180", href = "icon-180.png"),
+            @Link(rel = "manifest", href = "manifest.json") })
+    public static class RepeatableUI extends BenchmarkUI {
+    }
+
+    /**
+     * Generator for the dynamic members of a JSON-LD tag.
+     */
+    @GeneratorLifecycle(GeneratorScope.SINGLETON)
+    public static class ArticleGenerator {
+        public String getUrl(VaadinRequest request) {
+            return "https://example.com" + request.getPathInfo();
+        }
+
+        public String getInLanguage(VaadinRequest request) {
+            return request.getLocale().toLanguageTag();
+        }
+    }
+
+    /**
+     * UI with structured data, both static and generated.
+     */
+    @Meta(name = "description", content = "JSON-LD benchmark UI")
+    @JsonLd(type = "Organization", properties = {
+            @JsonLdProperty(name = "name", value = "Example"),
+            @JsonLdProperty(name = "url", value = "https://example.com"),
+            @JsonLdProperty(name = "logo", value = "https://example.com/logo.png") })
+    @JsonLd(type = "Article", properties = {
+            @JsonLdProperty(name = "headline", value = "Benchmark <article>") },
+            generator = ArticleGenerator.class)
+    public static class JsonLdUI extends BenchmarkUI {
+    }
+}
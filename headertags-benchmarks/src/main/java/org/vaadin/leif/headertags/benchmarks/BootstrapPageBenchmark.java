@@ -0,0 +1,95 @@
+package org.vaadin.leif.headertags.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.leif.headertags.HeaderTagHandler;
+import org.vaadin.leif.headertags.benchmarks.BenchmarkUIs.DeepChainUI;
+import org.vaadin.leif.headertags.benchmarks.BenchmarkUIs.GeneratorUI;
+import org.vaadin.leif.headertags.benchmarks.BenchmarkUIs.JsonLdUI;
+import org.vaadin.leif.headertags.benchmarks.BenchmarkUIs.RepeatableUI;
+import org.vaadin.leif.headertags.benchmarks.BenchmarkUIs.StaticUI;
+
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+/**
+ * Measures the cost of {@link HeaderTagHandler#modifyBootstrapPage} for
+ * different kinds of UI classes. Each invocation modifies a fresh clone of the
+ * bootstrap page; {@link #cloneDocument()} measures the cost of only cloning
+ * so that it can be subtracted from the other results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BootstrapPageBenchmark {
+
+    /**
+     * The kind of UI class to bootstrap.
+     */
+    @Param({ "static", "generators", "deepChain", "repeatable", "jsonLd" })
+    public String ui;
+
+    private HeaderTagHandler handler;
+
+    private Class<? extends UI> uiClass;
+
+    private Document template;
+
+    private VaadinRequest request;
+
+    @Setup
+    public void setup() {
+        handler = new HeaderTagHandler();
+        uiClass = getUiClass(ui);
+        template = BootstrapRequests.parseBootstrapPage();
+        request = BootstrapRequests
+                .createRequest("Mozilla/5.0 (iPhone) Mobile Safari");
+    }
+
+    static Class<? extends UI> getUiClass(String name) {
+        switch (name) {
+        case "static":
+            return StaticUI.class;
+        case "generators":
+            return GeneratorUI.class;
+        case "deepChain":
+            return DeepChainUI.class;
+        case "repeatable":
+            return RepeatableUI.class;
+        case "jsonLd":
+            return JsonLdUI.class;
+        default:
+            throw new IllegalArgumentException("Unknown UI: " + name);
+        }
+    }
+
+    @Benchmark
+    public Document cloneDocument() {
+        return template.clone();
+    }
+
+    @Benchmark
+    public Document modifyBootstrapPage() {
+        Document document = template.clone();
+        BootstrapPageResponse response = BootstrapRequests.createResponse(
+                uiClass, request, document);
+        handler.modifyBootstrapPage(response);
+        return document;
+    }
+}
@@ -0,0 +1,114 @@
+package org.vaadin.leif.headertags.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import com.vaadin.server.BootstrapHandler;
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.communication.ServletBootstrapHandler;
+import com.vaadin.ui.UI;
+
+/**
+ * Helpers for creating bootstrap responses without a servlet container.
+ */
+public class BootstrapRequests {
+
+    /**
+     * Only used as the event source of the responses, never for handling
+     * requests.
+     */
+    private static final BootstrapHandler bootstrapHandler = new ServletBootstrapHandler();
+
+    private BootstrapRequests() {
+        // Only static helpers
+    }
+
+    /**
+     * Parses the bootstrap page template used by all benchmarks. The returned
+     * document should be cloned for each response.
+     *
+     * @return the parsed bootstrap page
+     */
+    public static Document parseBootstrapPage() {
+        try (InputStream stream = BootstrapRequests.class
+                .getResourceAsStream("bootstrap.html")) {
+            return Jsoup.parse(stream, StandardCharsets.UTF_8.name(),
+                    "http://localhost:8080/");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a request that only supports the methods typically used by
+     * generators.
+     *
+     * @param headers
+     *            the request headers
+     * @return a new request
+     */
+    public static VaadinRequest createRequest(Map<String, String> headers) {
+        Map<String, String> copy = new HashMap<>(headers);
+        return (VaadinRequest) Proxy.newProxyInstance(
+                BootstrapRequests.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getHeader":
+                        return copy.get(args[0]);
+                    case "getLocale":
+                        return Locale.ENGLISH;
+                    case "getPathInfo":
+                        return "/";
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Creates a request with some typical headers.
+     *
+     * @param userAgent
+     *            the user agent header value
+     * @return a new request
+     */
+    public static VaadinRequest createRequest(String userAgent) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("User-Agent", userAgent);
+        headers.put("Accept-Language", "en-US,en;q=0.5");
+        return createRequest(headers);
+    }
+
+    /**
+     * Creates a bootstrap page response for a UI class.
+     *
+     * @param uiClass
+     *            the UI class
+     * @param request
+     *            the request
+     * @param document
+     *            the bootstrap page document to modify
+     * @return a new response
+     */
+    public static BootstrapPageResponse createResponse(
+            Class<? extends UI> uiClass, VaadinRequest request,
+            Document document) {
+        return new BootstrapPageResponse(bootstrapHandler, request, null,
+                uiClass, document, new HashMap<String, Object>(), null);
+    }
+}
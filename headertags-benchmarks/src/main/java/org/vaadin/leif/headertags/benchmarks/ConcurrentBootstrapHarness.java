@@ -0,0 +1,185 @@
+package org.vaadin.leif.headertags.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoup.nodes.Document;
+import org.vaadin.leif.headertags.HeaderTagHandler;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+/**
+ * Runs {@link HeaderTagHandler#modifyBootstrapPage} concurrently from a
+ * growing number of threads using a single shared handler, the same way a
+ * handler is shared by all sessions of a service. Each round starts from a
+ * fresh handler so that the per UI class caches are populated concurrently.
+ * The head of every page is compared to the head produced by a single thread,
+ * and the throughput of each round is reported relative to the single
+ * threaded round.
+ * <p>
+ * Run with
+ * <code>java -cp target/benchmarks.jar org.vaadin.leif.headertags.benchmarks.ConcurrentBootstrapHarness [calls] [maxThreads]</code>.
+ * The process exits with status 1 if any page differs from the expected
+ * output.
+ */
+public class ConcurrentBootstrapHarness {
+
+    private static final String[] UI_NAMES = { "static", "generators",
+            "deepChain", "repeatable", "jsonLd" };
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (iPhone) Mobile Safari",
+            "Mozilla/5.0 (Windows NT 10.0) Firefox" };
+
+    /**
+     * A UI class and request to bootstrap, together with the expected
+     * result.
+     */
+    private static final class Case {
+        private final Class<? extends UI> uiClass;
+        private final VaadinRequest request;
+        private final String expectedHead;
+
+        private Case(Class<? extends UI> uiClass, VaadinRequest request,
+                String expectedHead) {
+            this.uiClass = uiClass;
+            this.request = request;
+            this.expectedHead = expectedHead;
+        }
+    }
+
+    /**
+     * The bootstrap page of each thread. Documents are cloned for each page,
+     * but a document is never shared between threads.
+     */
+    private final ThreadLocal<Document> templates = ThreadLocal
+            .withInitial(BootstrapRequests::parseBootstrapPage);
+
+    private final List<Case> cases = new ArrayList<>();
+
+    private ConcurrentBootstrapHarness() {
+        HeaderTagHandler handler = new HeaderTagHandler();
+        for (String uiName : UI_NAMES) {
+            Class<? extends UI> uiClass = BootstrapPageBenchmark
+                    .getUiClass(uiName);
+            for (String userAgent : USER_AGENTS) {
+                VaadinRequest request = BootstrapRequests
+                        .createRequest(userAgent);
+                cases.add(new Case(uiClass, request,
+                        bootstrap(handler, uiClass, request)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        ConcurrentBootstrapHarness harness = new ConcurrentBootstrapHarness();
+
+        // Warm up with all threads before measuring
+        harness.run(maxThreads, calls);
+
+        System.out.println("threads  calls/s     speedup  mismatches");
+        double baseline = 0;
+        int totalMismatches = 0;
+        for (int threads : getThreadCounts(maxThreads)) {
+            long start = System.nanoTime();
+            int mismatches = harness.run(threads, calls);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double throughput = calls / seconds;
+            if (baseline == 0) {
+                baseline = throughput;
+            }
+            System.out.println(String.format("%7d  %10.0f  %7.2f  %10d",
+                    threads, throughput, throughput / baseline, mismatches));
+            totalMismatches += mismatches;
+        }
+
+        if (totalMismatches != 0) {
+            System.out.println(totalMismatches
+                    + " pages did not match the single threaded output");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gets the thread counts to run: powers of two up to and including the
+     * maximum.
+     */
+    private static List<Integer> getThreadCounts(int maxThreads) {
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            counts.add(Integer.valueOf(threads));
+        }
+        counts.add(Integer.valueOf(maxThreads));
+        return counts;
+    }
+
+    /**
+     * Bootstraps the given number of pages using a new shared handler.
+     *
+     * @param threads
+     *            the number of threads to use
+     * @param calls
+     *            the number of pages to bootstrap
+     * @return the number of pages that didn't match the expected output
+     */
+    private int run(int threads, int calls) throws Exception {
+        HeaderTagHandler handler = new HeaderTagHandler();
+        AtomicInteger nextCall = new AtomicInteger();
+        AtomicInteger mismatches = new AtomicInteger();
+        CountDownLatch startSignal = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    startSignal.await();
+                    int call;
+                    while ((call = nextCall.getAndIncrement()) < calls) {
+                        Case c = cases.get(call % cases.size());
+                        String head = bootstrap(handler, c.uiClass,
+                                c.request);
+                        if (!c.expectedHead.equals(head)) {
+                            if (mismatches.getAndIncrement() == 0) {
+                                System.out.println("Unexpected head for "
+                                        + c.uiClass.getSimpleName() + ":\n"
+                                        + head);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            startSignal.countDown();
+            for (Future<?> future : futures) {
+                // Propagates any exception thrown by the handler
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return mismatches.get();
+    }
+
+    private String bootstrap(HeaderTagHandler handler,
+            Class<? extends UI> uiClass, VaadinRequest request) {
+        Document document = templates.get().clone();
+        handler.modifyBootstrapPage(BootstrapRequests.createResponse(uiClass,
+                request, document));
+        return document.head().outerHtml();
+    }
+}
@@ -2,6 +2,9 @@ package org.vaadin.leif.headertags.demo;
 
 import javax.servlet.annotation.WebServlet;
 
+import org.vaadin.leif.headertags.CacheableGenerator;
+import org.vaadin.leif.headertags.GeneratorLifecycle;
+import org.vaadin.leif.headertags.GeneratorScope;
 import org.vaadin.leif.headertags.Link;
 import org.vaadin.leif.headertags.Meta;
 import org.vaadin.leif.headertags.Viewport;
@@ -24,6 +27,10 @@ import com.vaadin.ui.UI;
 public class DemoUI extends UI {
 
     // Generator class declared in the UI class is directly used
+    // Stateless generators can be shared instead of created for each request
+    @GeneratorLifecycle(GeneratorScope.SINGLETON)
+    // The output only depends on the user agent and can be cached
+    @CacheableGenerator(headers = "User-Agent")
     public static class MyViewportGenerator implements ViewportGenerator {
         @Override
         public String getViewport(VaadinRequest request) {
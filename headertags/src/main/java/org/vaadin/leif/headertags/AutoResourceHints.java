@@ -0,0 +1,38 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Adds preload hints for the resources that the Vaadin bootstrap script loads
+ * for a UI class. The resources are found from the bootstrap page for each
+ * request, so the hints follow the theme and Vaadin version that are actually
+ * used.
+ * <p>
+ * The widgetset is not preloaded since the bootstrap script loads it using a
+ * URL that is different for each page load.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AutoResourceHints {
+    /**
+     * Whether to preload <code>vaadinBootstrap.js</code>, which is otherwise
+     * only discovered at the end of the body.
+     *
+     * @return <code>true</code> to preload the bootstrap script
+     */
+    boolean bootstrapScript() default true;
+
+    /**
+     * Whether to preload the style sheet of the theme.
+     *
+     * @return <code>true</code> to preload the theme
+     */
+    boolean theme() default true;
+}
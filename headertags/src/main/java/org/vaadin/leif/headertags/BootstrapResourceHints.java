@@ -0,0 +1,97 @@
+package org.vaadin.leif.headertags;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Finds the resources that the Vaadin bootstrap script will load and adds
+ * preload hints for them to the head of the bootstrap page.
+ *
+ * @see AutoResourceHints
+ */
+final class BootstrapResourceHints {
+
+    private static final String BOOTSTRAP_SCRIPT = "vaadinBootstrap.js";
+
+    private static final Pattern THEME_PATTERN = createPattern("theme");
+
+    private static final Pattern VAADIN_DIR_PATTERN = createPattern(
+            "vaadinDir");
+
+    private static final Pattern VERSION_PATTERN = createPattern(
+            "vaadinVersion");
+
+    private BootstrapResourceHints() {
+        // Only static helpers
+    }
+
+    private static Pattern createPattern(String key) {
+        // Values with escapes are ignored rather than unescaped
+        return Pattern.compile("\"" + key + "\"\\s*:\\s*\"([^\"\\\\]*)\"");
+    }
+
+    /**
+     * Adds preload hints to the head of a bootstrap page.
+     *
+     * @param document
+     *            the bootstrap page
+     * @param hints
+     *            the hints to add
+     */
+    static void addHints(Document document, AutoResourceHints hints) {
+        String bootstrapScript = null;
+        String config = null;
+        for (Element script : document.getElementsByTag("script")) {
+            String src = script.attr("src");
+            if (src.contains(BOOTSTRAP_SCRIPT)) {
+                bootstrapScript = src;
+            } else if (src.isEmpty()) {
+                String data = script.data();
+                if (data.contains("vaadin.initApplication")) {
+                    config = data;
+                }
+            }
+        }
+
+        Element head = document.head();
+        if (hints.bootstrapScript() && bootstrapScript != null) {
+            addPreload(head, bootstrapScript, ResourceType.SCRIPT);
+        }
+
+        if (hints.theme() && config != null) {
+            String theme = find(THEME_PATTERN, config);
+            String vaadinDir = find(VAADIN_DIR_PATTERN, config);
+            if (theme != null && vaadinDir != null) {
+                // Same URL as used by loadTheme in vaadinBootstrap.js
+                String href = vaadinDir + "themes/" + theme + "/styles.css";
+                String version = find(VERSION_PATTERN, config);
+                if (version != null) {
+                    href += "?v=" + version;
+                }
+                addPreload(head, href, ResourceType.STYLE);
+            }
+        }
+    }
+
+    private static String find(Pattern pattern, String config) {
+        Matcher matcher = pattern.matcher(config);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static void addPreload(Element head, String href,
+            ResourceType type) {
+        for (Element link : head.getElementsByTag("link")) {
+            if ("preload".equalsIgnoreCase(link.attr("rel"))
+                    && href.equals(link.attr("href"))) {
+                return;
+            }
+        }
+
+        head.appendElement("link").attr("rel", "preload").attr("href", href)
+                .attr("as", type.name().toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,70 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.vaadin.server.VaadinRequest;
+
+/**
+ * Marks a generator class as producing output that only depends on some
+ * specific parts of the request. The generated attribute values are cached
+ * based on those parts of the request and shared between all sessions, so
+ * that the generator is only invoked once for each distinct combination of
+ * values.
+ * <p>
+ * The cache key is made up of the values of the request headers defined by
+ * {@link #headers()}, the request locale if {@link #locale()} is
+ * <code>true</code> and the return value of the method defined by
+ * {@link #keyMethod()}. A generator without any key dimensions is only invoked
+ * once until its cached value expires.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+@Inherited
+public @interface CacheableGenerator {
+    /**
+     * The names of the request headers that the generator output depends on.
+     *
+     * @return an array of header names
+     */
+    public String[] headers() default {};
+
+    /**
+     * Whether the generator output depends on the locale of the request.
+     *
+     * @return <code>true</code> to include the request locale in the cache
+     *         key, otherwise <code>false</code>
+     */
+    public boolean locale() default false;
+
+    /**
+     * The name of a public static method in the generator class that computes
+     * an additional cache key. The method should accept a
+     * {@link VaadinRequest} and return a String.
+     *
+     * @return the key method name, or an empty string to not use a key method
+     */
+    public String keyMethod() default "";
+
+    /**
+     * The maximum number of cached values. The least recently used value is
+     * discarded when the limit is reached. Must not be negative, and
+     * <code>0</code> disables caching.
+     *
+     * @return the maximum cache size
+     */
+    public int maxSize() default 1000;
+
+    /**
+     * The number of seconds a cached value is used before the generator is
+     * invoked again. Must be positive.
+     *
+     * @return the time to live in seconds
+     */
+    public long ttlSeconds() default 3600;
+}
@@ -0,0 +1,55 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a condition on a request header that must be fulfilled for a head
+ * tag to be included in the host page. Conditions are used through the
+ * <code>when</code> attribute of tag annotations such as {@link Meta} and
+ * {@link Link}.
+ * <p>
+ * If neither {@link #matches()} nor {@link #contains()} is defined, the
+ * condition is fulfilled if the header is present. A condition is never
+ * fulfilled if the header is missing, unless it's negated.
+ * <p>
+ * Conditions are compiled once and shared between all tags and UI classes
+ * that use the same definition.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface Condition {
+    /**
+     * The name of the request header to check.
+     *
+     * @return the header name
+     */
+    String header();
+
+    /**
+     * A regular expression that should be found in the header value.
+     *
+     * @return the regular expression
+     */
+    String matches() default HeadTag.NULL_VALUE;
+
+    /**
+     * A string that the header value should contain. This is faster than
+     * {@link #matches()} for simple cases. Cannot be used together with
+     * {@link #matches()}.
+     *
+     * @return the string to look for
+     */
+    String contains() default HeadTag.NULL_VALUE;
+
+    /**
+     * Whether the result of the condition should be inverted.
+     *
+     * @return <code>true</code> to include the tag when the condition is not
+     *         fulfilled
+     */
+    boolean negate() default false;
+}
@@ -0,0 +1,170 @@
+package org.vaadin.leif.headertags;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Loads and minifies the stylesheet defined by {@link InlineCriticalCss}.
+ */
+final class CriticalCss {
+
+    /**
+     * Characters that make any whitespace before them redundant.
+     */
+    private static final String NO_SPACE_BEFORE = "{};,>)";
+
+    /**
+     * Characters that make any whitespace after them redundant.
+     */
+    private static final String NO_SPACE_AFTER = "{};:,>(";
+
+    private CriticalCss() {
+        // Only static helpers
+    }
+
+    /**
+     * Creates a <code>style</code> tag with the minified content of the
+     * stylesheet of a UI class.
+     *
+     * @param uiClass
+     *            the UI class that defines the stylesheet
+     * @param annotation
+     *            the annotation that defines the stylesheet
+     * @return the style tag, not <code>null</code>
+     */
+    static HeadTagTemplate createTag(Class<?> uiClass,
+            InlineCriticalCss annotation) {
+        String location = annotation.resource();
+        URL url = HeadTagSourceReader.resolve(uiClass, location);
+        if (url == null) {
+            throw new RuntimeException("Critical CSS " + location + " for "
+                    + uiClass.getName() + " not found");
+        }
+
+        byte[] bytes;
+        try (InputStream stream = url.openStream()) {
+            bytes = HeadResources.readFully(stream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading critical CSS "
+                    + location, e);
+        }
+        if (bytes == null) {
+            throw new RuntimeException("Critical CSS " + location
+                    + " is too large to inline");
+        }
+
+        String css = minify(new String(bytes, StandardCharsets.UTF_8));
+        getLogger().info("Inlining " + css.length()
+                + " characters of critical CSS from " + location + " for "
+                + uiClass.getName() + ", allow in Content-Security-Policy using "
+                + "style-src '" + getCspHash(css) + "'");
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        if (!HeadTag.NULL_VALUE.equals(annotation.media())) {
+            attributes.put("media", annotation.media());
+        }
+        return new HeadTagTemplate("style", attributes, css,
+                Collections.emptyList(), null);
+    }
+
+    /**
+     * Removes comments and redundant whitespace from a stylesheet. Strings
+     * are kept as is.
+     *
+     * @param css
+     *            the stylesheet to minify
+     * @return the minified stylesheet
+     */
+    static String minify(String css) {
+        StringBuilder out = new StringBuilder(css.length());
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '/' && css.startsWith("*", i + 1)) {
+                int end = css.indexOf("*/", i + 2);
+                i = end == -1 ? css.length() : end + 2;
+                pendingSpace = true;
+                continue;
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+
+            if (pendingSpace) {
+                if (out.length() != 0
+                        && NO_SPACE_AFTER.indexOf(out.charAt(out.length()
+                                - 1)) == -1
+                        && NO_SPACE_BEFORE.indexOf(c) == -1
+                        && !(c == ':' && isDeclaration(css, i))) {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+            }
+
+            if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < css.length() && css.charAt(end) != c) {
+                    if (css.charAt(end) == '\\') {
+                        end++;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, css.length());
+                out.append(css, i, end);
+                i = end;
+                continue;
+            }
+
+            if (c == '}' && out.length() != 0
+                    && out.charAt(out.length() - 1) == ';') {
+                // The last semicolon of a block is optional
+                out.setLength(out.length() - 1);
+            }
+            out.append(c);
+            i++;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Checks whether a position is inside a declaration rather than a
+     * selector. Whitespace before <code>:</code> is only significant in
+     * selectors.
+     */
+    private static boolean isDeclaration(String css, int index) {
+        for (int i = index; i < css.length(); i++) {
+            char c = css.charAt(i);
+            if (c == '{') {
+                return false;
+            } else if (c == ';' || c == '}') {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private static String getCspHash(String css) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    css.getBytes(StandardCharsets.UTF_8));
+            return "sha256-" + Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(CriticalCss.class.getName());
+    }
+}
@@ -0,0 +1,22 @@
+package org.vaadin.leif.headertags;
+
+/**
+ * Values for the <code>crossorigin</code> attribute of resource hints.
+ */
+public enum CrossOrigin {
+    /**
+     * Leaves out the attribute, fetching the resource without CORS.
+     */
+    @HeadTagAttribute(HeadTag.NULL_VALUE)
+    UNSPECIFIED,
+
+    /**
+     * Fetches the resource in CORS mode without credentials.
+     */
+    ANONYMOUS,
+
+    /**
+     * Fetches the resource in CORS mode with credentials.
+     */
+    USE_CREDENTIALS;
+}
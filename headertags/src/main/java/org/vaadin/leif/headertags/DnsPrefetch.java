@@ -0,0 +1,32 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a &lt;link rel="dns-prefetch"&gt; tag that makes the browser
+ * resolve the domain name of an origin that the page will load resources
+ * from.
+ * <p>
+ * To add multiple tags, use {@link DnsPrefetchTags}
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(DnsPrefetchTags.class)
+@Link(rel = "dns-prefetch", href = HeadTag.NULL_VALUE)
+public @interface DnsPrefetch {
+    /**
+     * The origin to resolve, e.g. <code>https://cdn.example.com</code>.
+     *
+     * @return the href attribute
+     */
+    @HeadTagAttribute("href")
+    String value();
+}
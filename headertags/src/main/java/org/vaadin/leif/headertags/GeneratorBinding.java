@@ -0,0 +1,370 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+
+import com.vaadin.server.VaadinRequest;
+
+/**
+ * Binds a generator class to the methods that provide attribute values for a
+ * head tag. The methods and the attribute names are resolved once when the
+ * plan is compiled.
+ */
+final class GeneratorBinding {
+
+    /**
+     * A generator method together with the attribute name it provides a value
+     * for. The method is invoked through a method handle that is adapted to a
+     * uniform <code>(Object, GeneratorContext)String</code> type when the
+     * binding is created, with each parameter resolved from the context by a
+     * filter chosen based on its type.
+     */
+    static final class GeneratedAttribute {
+        private static final MethodType ACCESSOR_TYPE = MethodType.methodType(
+                String.class, Object.class, GeneratorContext.class);
+
+        private final String name;
+        private final Method method;
+        private final MethodHandle accessor;
+
+        GeneratedAttribute(String name, Method method,
+                ParameterResolvers resolvers) {
+            this.name = name;
+            this.method = method;
+            accessor = createAccessor(method, resolvers);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Method getMethod() {
+            return method;
+        }
+
+        String evaluate(Object instance, GeneratorContext context) {
+            try {
+                return (String) accessor.invokeExact(instance, context);
+            } catch (Throwable e) {
+                throw new RuntimeException(
+                        "Error processing @HeadTag annotation method "
+                                + method.getDeclaringClass().getName() + "."
+                                + method.getName(), e);
+            }
+        }
+
+        private static MethodHandle createAccessor(Method method,
+                ParameterResolvers resolvers) {
+            try {
+                // Generator classes are not necessarily public
+                method.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflect(method);
+
+                int parameterCount = method.getParameterCount();
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                MethodHandle[] filters = new MethodHandle[parameterCount];
+                for (int i = 0; i < parameterCount; i++) {
+                    filters[i] = resolvers.getFilter(parameterTypes[i]);
+                    if (filters[i] == null) {
+                        throw new IllegalArgumentException(
+                                "Unsupported generator parameter type: "
+                                        + parameterTypes[i].getCanonicalName());
+                    }
+                }
+
+                Class<?>[] accessorTypes = new Class<?>[parameterCount + 1];
+                accessorTypes[0] = Object.class;
+                System.arraycopy(parameterTypes, 0, accessorTypes, 1,
+                        parameterCount);
+                handle = handle.asType(MethodType.methodType(String.class,
+                        accessorTypes));
+
+                // Resolve each parameter from the context, then pass the same
+                // context to each of the filters
+                handle = MethodHandles.filterArguments(handle, 1, filters);
+                int[] reorder = new int[parameterCount + 1];
+                for (int i = 1; i < reorder.length; i++) {
+                    reorder[i] = 1;
+                }
+                return MethodHandles.permuteArguments(handle, ACCESSOR_TYPE,
+                        reorder);
+            } catch (Exception e) {
+                throw new RuntimeException(
+                        "Error processing @HeadTag annotation method "
+                                + method.getDeclaringClass().getName() + "."
+                                + method.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Shared instances of generators with the {@link GeneratorScope#SINGLETON}
+     * scope.
+     */
+    private static final ClassValue<Object> singletons = new ClassValue<Object>() {
+        @Override
+        protected Object computeValue(Class<?> instanceClass) {
+            return createInstance(instanceClass);
+        }
+    };
+
+    private final Class<?> instanceClass;
+
+    private final Class<?> declaringClass;
+
+    private final GeneratorScope scope;
+
+    private final List<GeneratedAttribute> attributes;
+
+    /**
+     * Cache for the generated values, or <code>null</code> if the generator
+     * is not a {@link CacheableGenerator}.
+     */
+    private final GeneratorOutputCache cache;
+
+    /**
+     * Timeout when run in parallel, or a negative value to use the default.
+     */
+    private final long timeoutMillis;
+
+    private final String fallbackValue;
+
+    /**
+     * Creates a new generator binding.
+     *
+     * @param instanceClass
+     *            the class to instantiate
+     * @param declaringClass
+     *            the class or interface that carries the head tag annotation
+     * @param scope
+     *            the scope of generator instances
+     * @param attributes
+     *            the attributes provided by the generator
+     */
+    GeneratorBinding(Class<?> instanceClass, Class<?> declaringClass,
+            GeneratorScope scope, List<GeneratedAttribute> attributes) {
+        this.instanceClass = instanceClass;
+        this.declaringClass = declaringClass;
+        this.scope = scope;
+        this.attributes = Collections.unmodifiableList(
+                new ArrayList<GeneratedAttribute>(attributes));
+
+        CacheableGenerator cacheable = instanceClass
+                .getAnnotation(CacheableGenerator.class);
+        cache = cacheable == null ? null : new GeneratorOutputCache(
+                instanceClass, cacheable);
+
+        GeneratorTimeout timeout = instanceClass
+                .getAnnotation(GeneratorTimeout.class);
+        timeoutMillis = timeout == null ? -1 : timeout.value();
+        fallbackValue = timeout == null ? HeadTag.NULL_VALUE : timeout
+                .fallback();
+    }
+
+    Class<?> getInstanceClass() {
+        return instanceClass;
+    }
+
+    Class<?> getDeclaringClass() {
+        return declaringClass;
+    }
+
+    GeneratorScope getScope() {
+        return scope;
+    }
+
+    List<GeneratedAttribute> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Gets the generated attribute values for a request, either from the
+     * cache or by finding or creating a generator instance according to the
+     * scope of this binding.
+     *
+     * @param context
+     *            the context to resolve generator method parameters from
+     * @param environment
+     *            the environment of the current service
+     * @return the generated values, in the same order as
+     *         {@link #getAttributes()}
+     */
+    String[] getValues(GeneratorContext context,
+            GeneratorEnvironment environment) {
+        Object key = getCacheKey(context.getRequest());
+        String[] values = getCachedValues(key, environment);
+        if (values == null) {
+            values = generateValues(key, context, environment);
+        }
+        return values;
+    }
+
+    /**
+     * Gets the key of the cached values for a request.
+     *
+     * @param request
+     *            the request to get a key for
+     * @return the cache key, or <code>null</code> if the output of the
+     *         generator is not cached
+     */
+    Object getCacheKey(VaadinRequest request) {
+        return cache == null ? null : cache.createKey(request);
+    }
+
+    /**
+     * Gets cached values without invoking the generator.
+     *
+     * @param key
+     *            the key from {@link #getCacheKey(VaadinRequest)}
+     * @param environment
+     *            the environment of the current service
+     * @return the cached values, or <code>null</code> if the values must be
+     *         generated
+     */
+    String[] getCachedValues(Object key, GeneratorEnvironment environment) {
+        if (key == null) {
+            return null;
+        }
+        String[] values = cache.get(key);
+        if (environment.isInstrumented()) {
+            environment.getInstrumentation().generatorCacheLookup(
+                    instanceClass, values != null);
+        }
+        return values;
+    }
+
+    /**
+     * Invokes the generator and caches the values.
+     *
+     * @param key
+     *            the key from {@link #getCacheKey(VaadinRequest)}
+     * @param context
+     *            the context to resolve generator method parameters from
+     * @param environment
+     *            the environment of the current service
+     * @return the generated values, in the same order as
+     *         {@link #getAttributes()}
+     */
+    String[] generateValues(Object key, GeneratorContext context,
+            GeneratorEnvironment environment) {
+        String[] values = invoke(context, environment);
+        if (key != null) {
+            cache.put(key, values);
+        }
+        return values;
+    }
+
+    private String[] invoke(GeneratorContext context,
+            GeneratorEnvironment environment) {
+        if (!environment.isInstrumented()) {
+            return evaluate(context, environment.getServiceInstances());
+        }
+
+        HeadTagInstrumentation instrumentation = environment
+                .getInstrumentation();
+        long start = System.nanoTime();
+        String[] values;
+        try {
+            values = evaluate(context, environment.getServiceInstances());
+        } catch (RuntimeException e) {
+            instrumentation.generatorFailed(instanceClass, e);
+            throw e;
+        }
+        instrumentation.generatorInvoked(instanceClass, System.nanoTime()
+                - start);
+        return values;
+    }
+
+    /**
+     * Gets the values to use if the generator doesn't complete in time.
+     *
+     * @return the fallback values
+     */
+    String[] getFallbackValues() {
+        String[] values = new String[attributes.size()];
+        Arrays.fill(values, fallbackValue);
+        return values;
+    }
+
+    /**
+     * Gets the number of milliseconds to wait for this generator when
+     * generators are run in parallel.
+     *
+     * @param defaultTimeout
+     *            the timeout to use if the generator doesn't define its own
+     * @return the timeout in milliseconds
+     */
+    long getTimeoutMillis(long defaultTimeout) {
+        return timeoutMillis < 0 ? defaultTimeout : timeoutMillis;
+    }
+
+    /**
+     * Applies generated attribute values to an element.
+     *
+     * @param element
+     *            the element to update
+     * @param values
+     *            the values from {@link #getValues}
+     */
+    void applyValues(Element element, String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            String name = attributes.get(i).getName();
+            String value = values[i];
+            if (value == null || HeadTag.NULL_VALUE.equals(value)) {
+                element.removeAttr(name);
+            } else {
+                element.attr(name, value);
+            }
+        }
+    }
+
+    private String[] evaluate(GeneratorContext context,
+            Map<Class<?>, Object> serviceInstances) {
+        Object instance = getInstance(serviceInstances);
+
+        String[] values = new String[attributes.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = attributes.get(i).evaluate(instance, context);
+        }
+        return values;
+    }
+
+    /**
+     * Removes all cached generator output, if any.
+     */
+    void clearCache() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private Object getInstance(Map<Class<?>, Object> serviceInstances) {
+        switch (scope) {
+        case SINGLETON:
+            return singletons.get(instanceClass);
+        case SERVICE:
+            return serviceInstances.computeIfAbsent(instanceClass,
+                    GeneratorBinding::createInstance);
+        default:
+            return createInstance(instanceClass);
+        }
+    }
+
+    private static Object createInstance(Class<?> instanceClass) {
+        try {
+            return instanceClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Error creating generator instance "
+                    + instanceClass.getCanonicalName(), e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.vaadin.leif.headertags;
+
+import java.util.Locale;
+
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+
+/**
+ * The bootstrap request that head tags are being generated for. The values
+ * are collected on the request thread before any generator is run, so that
+ * they are available also when generators are run in parallel.
+ * <p>
+ * Generator methods don't need to use this class directly. Each parameter of
+ * a generator method is resolved from the context based on its type when the
+ * plan is compiled. See {@link HeadTagParameterResolver} for the supported
+ * types.
+ */
+public final class GeneratorContext {
+
+    private final VaadinRequest request;
+
+    private final BootstrapPageResponse response;
+
+    private final VaadinSession session;
+
+    private final VaadinService service;
+
+    private final Class<? extends UI> uiClass;
+
+    /**
+     * Creates a context for a bootstrap page response.
+     *
+     * @param response
+     *            the bootstrap page response, not <code>null</code>
+     */
+    GeneratorContext(BootstrapPageResponse response) {
+        this(response.getRequest(), response, response.getSession(),
+                response.getUiClass());
+    }
+
+    /**
+     * Creates a context.
+     *
+     * @param request
+     *            the request, or <code>null</code> if not available
+     * @param response
+     *            the bootstrap page response, or <code>null</code> if not
+     *            available
+     * @param session
+     *            the session, or <code>null</code> if not available
+     * @param uiClass
+     *            the UI class, or <code>null</code> if not available
+     */
+    GeneratorContext(VaadinRequest request, BootstrapPageResponse response,
+            VaadinSession session, Class<? extends UI> uiClass) {
+        this.request = request;
+        this.response = response;
+        this.session = session;
+        this.uiClass = uiClass;
+        service = session != null ? session.getService() : VaadinService
+                .getCurrent();
+    }
+
+    /**
+     * Gets the bootstrap request.
+     *
+     * @return the request, or <code>null</code> if not available
+     */
+    public VaadinRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Gets the bootstrap page response that is being modified. Generators
+     * should not modify the document of the response since the generated tags
+     * are merged into it afterwards.
+     *
+     * @return the response, or <code>null</code> if not available
+     */
+    public BootstrapPageResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * Gets the session of the request. The session is not locked while
+     * generators are run.
+     *
+     * @return the session, or <code>null</code> if not available
+     */
+    public VaadinSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the service that handles the request.
+     *
+     * @return the service, or <code>null</code> if not available
+     */
+    public VaadinService getService() {
+        return service;
+    }
+
+    /**
+     * Gets the locale of the request.
+     *
+     * @return the locale, or <code>null</code> if not available
+     */
+    public Locale getLocale() {
+        return request == null ? null : request.getLocale();
+    }
+
+    /**
+     * Gets the UI class that is being bootstrapped.
+     *
+     * @return the UI class, or <code>null</code> if not available
+     */
+    public Class<? extends UI> getUiClass() {
+        return uiClass;
+    }
+}
@@ -0,0 +1,183 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.DeploymentConfiguration;
+
+/**
+ * Service specific state used when evaluating generators: instances of
+ * service scoped generators, the executor used for running generators in
+ * parallel and the instrumentation receiving measurements.
+ */
+final class GeneratorEnvironment {
+
+    private final ConcurrentHashMap<Class<?>, Object> serviceInstances = new ConcurrentHashMap<>();
+
+    /**
+     * Executor for parallel generators, or <code>null</code> if generators
+     * are run sequentially on the request thread.
+     */
+    private final ExecutorService executor;
+
+    private final long timeoutMillis;
+
+    private final HeadTagInstrumentation instrumentation;
+
+    private GeneratorEnvironment(ExecutorService executor, long timeoutMillis,
+            HeadTagInstrumentation instrumentation) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Creates an environment that runs generators sequentially without
+     * instrumentation.
+     *
+     * @return a new sequential environment
+     */
+    static GeneratorEnvironment createSequential() {
+        return new GeneratorEnvironment(null, 0, HeadTagInstrumentation.NOOP);
+    }
+
+    /**
+     * Creates an environment based on the init parameters of a service.
+     *
+     * @param configuration
+     *            the deployment configuration of the service
+     * @param serviceName
+     *            the name of the service
+     * @return a new environment
+     */
+    static GeneratorEnvironment create(DeploymentConfiguration configuration,
+            String serviceName) {
+        HeadTagInstrumentation instrumentation = createInstrumentation(
+                configuration.getApplicationOrSystemProperty(
+                        HeaderTagHandler.INSTRUMENTATION_PARAMETER, "").trim(),
+                serviceName);
+
+        if (!Boolean.parseBoolean(configuration.getApplicationOrSystemProperty(
+                HeaderTagHandler.PARALLEL_GENERATORS_PARAMETER, "false"))) {
+            return new GeneratorEnvironment(null, 0, instrumentation);
+        }
+
+        long timeoutMillis = Long.parseLong(configuration
+                .getApplicationOrSystemProperty(
+                        HeaderTagHandler.GENERATOR_TIMEOUT_PARAMETER, "1000"));
+        String executor = configuration.getApplicationOrSystemProperty(
+                HeaderTagHandler.GENERATOR_EXECUTOR_PARAMETER,
+                String.valueOf(Runtime.getRuntime().availableProcessors()));
+
+        return new GeneratorEnvironment(createExecutor(executor.trim()),
+                timeoutMillis, instrumentation);
+    }
+
+    private static HeadTagInstrumentation createInstrumentation(
+            String definition, String serviceName) {
+        if (definition.isEmpty()) {
+            return HeadTagInstrumentation.NOOP;
+        } else if ("jmx".equals(definition)) {
+            return new HeadTagStatistics(serviceName);
+        }
+
+        try {
+            return (HeadTagInstrumentation) Class.forName(definition, true,
+                    Thread.currentThread().getContextClassLoader())
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(
+                    "Could not create head tag instrumentation " + definition,
+                    e);
+        }
+    }
+
+    private static ExecutorService createExecutor(String definition) {
+        if ("virtual".equals(definition)) {
+            try {
+                // Available from Java 21
+                Method factory = Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to platform threads on older JDKs
+                definition = String.valueOf(Runtime.getRuntime()
+                        .availableProcessors());
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable,
+                    "headertags-generator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(Integer.parseInt(definition),
+                threadFactory);
+    }
+
+    Map<Class<?>, Object> getServiceInstances() {
+        return serviceInstances;
+    }
+
+    HeadTagInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Checks whether measurements should be taken. Code paths that take
+     * measurements should check this first to avoid any overhead when
+     * instrumentation is not used.
+     *
+     * @return <code>true</code> if instrumentation is enabled
+     */
+    boolean isInstrumented() {
+        return instrumentation != HeadTagInstrumentation.NOOP;
+    }
+
+    boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Gets the default number of milliseconds to wait for a parallel
+     * generator.
+     *
+     * @return the default timeout in milliseconds
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Releases the resources of this environment.
+     */
+    void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        serviceInstances.clear();
+        if (instrumentation instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) instrumentation).close();
+            } catch (Exception e) {
+                Logger.getLogger(GeneratorEnvironment.class.getName()).log(
+                        Level.WARNING, "Error closing instrumentation", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines the scope of a generator class. A scope defined using this
+ * annotation takes precedence over the scope defined using
+ * {@link HeadTagGenerators#scope()}.
+ *
+ * @see GeneratorScope
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+@Inherited
+public @interface GeneratorLifecycle {
+    /**
+     * The scope of the annotated generator class.
+     *
+     * @return the generator scope
+     */
+    public GeneratorScope value();
+}
@@ -0,0 +1,217 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.VaadinRequest;
+
+/**
+ * Bounded cache for the attribute values produced by a generator annotated
+ * with {@link CacheableGenerator}. The cache is shared by all requests for the
+ * same generator binding, so lookups don't take any lock. Eviction is
+ * approximately least recently used: it runs under a lock so that concurrent
+ * updates don't evict more entries than needed, but an entry that is used
+ * while it's being evicted may still be removed.
+ */
+final class GeneratorOutputCache {
+
+    /**
+     * A cached value together with its creation and last access time.
+     */
+    private static final class CachedValue {
+        private final String[] values;
+        private final long created;
+        private volatile long lastAccess;
+
+        private CachedValue(String[] values, long created) {
+            this.values = values;
+            this.created = created;
+            lastAccess = created;
+        }
+    }
+
+    private final String[] headers;
+
+    private final boolean locale;
+
+    private final MethodHandle keyMethod;
+
+    private final long ttlNanos;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<Object, CachedValue> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache based on the definition of a cacheable generator.
+     *
+     * @param instanceClass
+     *            the generator class
+     * @param cacheable
+     *            the cache definition
+     * @throws IllegalArgumentException
+     *             if the maximum size is negative or the time to live is not
+     *             positive
+     */
+    GeneratorOutputCache(Class<?> instanceClass, CacheableGenerator cacheable) {
+        if (cacheable.maxSize() < 0) {
+            throw new IllegalArgumentException("Cache size of "
+                    + instanceClass.getName() + " should not be negative");
+        }
+        if (cacheable.ttlSeconds() <= 0) {
+            throw new IllegalArgumentException("Cache time to live of "
+                    + instanceClass.getName() + " should be positive");
+        }
+        headers = cacheable.headers().clone();
+        locale = cacheable.locale();
+        keyMethod = findKeyMethod(instanceClass, cacheable.keyMethod());
+        ttlNanos = TimeUnit.SECONDS.toNanos(cacheable.ttlSeconds());
+        maxSize = cacheable.maxSize();
+    }
+
+    private static MethodHandle findKeyMethod(Class<?> instanceClass,
+            String name) {
+        if (name.isEmpty()) {
+            return null;
+        }
+        try {
+            Method method = instanceClass.getMethod(name, VaadinRequest.class);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                throw new IllegalArgumentException("Cache key method " + name
+                        + " in " + instanceClass.getName()
+                        + " should be static");
+            }
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(
+                    MethodType.methodType(String.class, VaadinRequest.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cache key method " + name
+                    + "(VaadinRequest) not found in "
+                    + instanceClass.getName(), e);
+        }
+    }
+
+    /**
+     * Creates the cache key for a request.
+     *
+     * @param request
+     *            the request
+     * @return the cache key
+     */
+    Object createKey(VaadinRequest request) {
+        int size = headers.length + (locale ? 1 : 0)
+                + (keyMethod != null ? 1 : 0);
+        Object[] key = new Object[size];
+
+        int i = 0;
+        for (String header : headers) {
+            key[i++] = request.getHeader(header);
+        }
+        if (locale) {
+            key[i++] = request.getLocale();
+        }
+        if (keyMethod != null) {
+            try {
+                key[i++] = (String) keyMethod.invokeExact(request);
+            } catch (Throwable e) {
+                throw new RuntimeException("Error computing cache key", e);
+            }
+        }
+
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Gets the cached values for a key.
+     *
+     * @param key
+     *            the cache key
+     * @return the cached attribute values, or <code>null</code> if there is
+     *         no valid cached value
+     */
+    String[] get(Object key) {
+        CachedValue value = entries.get(key);
+        if (value == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - value.created >= ttlNanos) {
+            entries.remove(key, value);
+            return null;
+        }
+        value.lastAccess = now;
+        return value.values;
+    }
+
+    /**
+     * Stores values in the cache.
+     *
+     * @param key
+     *            the cache key
+     * @param values
+     *            the attribute values, not modified after being cached
+     */
+    void put(Object key, String[] values) {
+        if (maxSize == 0) {
+            return;
+        }
+        entries.put(key, new CachedValue(values, System.nanoTime()));
+        if (entries.size() > maxSize) {
+            synchronized (this) {
+                // Another thread may already have made room
+                while (entries.size() > maxSize && evictLeastRecentlyUsed()) {
+                    // Keep evicting
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry that was accessed longest ago. This scans all
+     * entries, but it's only done after a cache miss, which runs the
+     * generator anyway.
+     *
+     * @return <code>true</code> if an entry was removed, <code>false</code> if
+     *         the cache is empty
+     */
+    private boolean evictLeastRecentlyUsed() {
+        Entry<Object, CachedValue> eldest = null;
+        for (Entry<Object, CachedValue> entry : entries.entrySet()) {
+            if (eldest == null || entry.getValue().lastAccess
+                    - eldest.getValue().lastAccess < 0) {
+                eldest = entry;
+            }
+        }
+        if (eldest == null) {
+            return false;
+        }
+        // Removed by someone else counts as well, the size is checked again
+        entries.remove(eldest.getKey(), eldest.getValue());
+        return true;
+    }
+
+    /**
+     * Gets the number of cached values, including expired values that have
+     * not yet been removed.
+     *
+     * @return the number of cached values
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    void clear() {
+        entries.clear();
+    }
+}
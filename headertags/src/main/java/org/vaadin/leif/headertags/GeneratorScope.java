@@ -0,0 +1,32 @@
+package org.vaadin.leif.headertags;
+
+import com.vaadin.server.VaadinService;
+
+/**
+ * Defines how long a generator instance is used before a new instance is
+ * created.
+ *
+ * @see GeneratorLifecycle
+ * @see HeadTagGenerators#scope()
+ */
+public enum GeneratorScope {
+    /**
+     * A new generator instance is created for each bootstrap request. This is
+     * the default scope and the only scope suitable for generators that keep
+     * request specific state in fields.
+     */
+    REQUEST,
+
+    /**
+     * One generator instance is created for each {@link VaadinService} and
+     * shared by all requests handled by that service. The generator must be
+     * thread safe.
+     */
+    SERVICE,
+
+    /**
+     * One generator instance is created and shared by all requests regardless
+     * of the service handling the request. The generator must be thread safe.
+     */
+    SINGLETON;
+}
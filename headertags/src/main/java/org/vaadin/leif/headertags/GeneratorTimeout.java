@@ -0,0 +1,36 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines how long to wait for a generator when generators are run in
+ * parallel, and the value to use if the generator doesn't complete in time.
+ * Has no effect unless parallel generators have been enabled using
+ * {@link HeaderTagHandler#PARALLEL_GENERATORS_PARAMETER}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+@Inherited
+public @interface GeneratorTimeout {
+    /**
+     * The maximum number of milliseconds to wait for the generator.
+     *
+     * @return the timeout in milliseconds
+     */
+    public long value();
+
+    /**
+     * The value to use for all attributes of the generator if it times out.
+     * The default {@link HeadTag#NULL_VALUE} leaves out the generated
+     * attributes.
+     *
+     * @return the fallback attribute value
+     */
+    public String fallback() default HeadTag.NULL_VALUE;
+}
@@ -0,0 +1,231 @@
+package org.vaadin.leif.headertags;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Merges new head elements into the head of the bootstrap page. Elements that
+ * match one of the configured replacement keys replace any existing elements
+ * with the same key in their original location, other elements are appended
+ * to the end of the head.
+ * <p>
+ * A replacement key is written as <code>tag[attribute=value]</code>, e.g.
+ * <code>link[rel=icon]</code>. Attribute values are compared ignoring case.
+ */
+final class HeadMerger {
+
+    /**
+     * The replacement keys used unless something else is configured.
+     */
+    static final String DEFAULT_REPLACE_KEYS = "meta[http-equiv=Content-Type],"
+            + "meta[http-equiv=X-UA-Compatible],link[rel=shortcut icon],"
+            + "link[rel=icon]";
+
+    private static final Pattern KEY_PATTERN = Pattern
+            .compile("\\s*([\\w-]+)\\[([\\w-]+)=([^\\]]*)\\]\\s*");
+
+    /**
+     * Attribute names to check for each tag name.
+     */
+    private final Map<String, List<String>> keyAttributes = new HashMap<>();
+
+    /**
+     * Normalized replacement keys.
+     */
+    private final Set<String> keys = new HashSet<>();
+
+    /**
+     * Creates a new merger using the given replacement keys.
+     *
+     * @param replaceKeys
+     *            a comma separated list of replacement keys, or an empty
+     *            string to always append new elements
+     */
+    HeadMerger(String replaceKeys) {
+        for (String key : replaceKeys.split(",")) {
+            if (key.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = parseKey(key);
+            String tag = parts[0];
+            String attribute = parts[1];
+
+            List<String> attributes = keyAttributes.computeIfAbsent(tag,
+                    t -> new ArrayList<>());
+            if (!attributes.contains(attribute)) {
+                attributes.add(attribute);
+            }
+            keys.add(createKey(tag, attribute, parts[2]));
+        }
+    }
+
+    /**
+     * Parses a replacement key.
+     *
+     * @param key
+     *            the key on the form <code>tag[attribute=value]</code>
+     * @return the lower case tag name, the lower case attribute name and the
+     *         attribute value
+     * @throws IllegalArgumentException
+     *             if the key is not valid
+     */
+    static String[] parseKey(String key) {
+        Matcher matcher = KEY_PATTERN.matcher(key);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(
+                    "Replacement key should be on the form tag[attribute=value], got "
+                            + key);
+        }
+        return new String[] { matcher.group(1).toLowerCase(Locale.ROOT),
+                matcher.group(2).toLowerCase(Locale.ROOT), matcher.group(3) };
+    }
+
+    /**
+     * Parses a replacement key and formats it in the same way as the keys
+     * that elements are matched by, so that keys that match the same
+     * elements are equal.
+     *
+     * @param key
+     *            the key on the form <code>tag[attribute=value]</code>
+     * @return the normalized key
+     * @throws IllegalArgumentException
+     *             if the key is not valid
+     */
+    static String normalizeKey(String key) {
+        String[] parts = parseKey(key);
+        return createKey(parts[0], parts[1], parts[2]);
+    }
+
+    private static String createKey(String tag, String attribute,
+            String value) {
+        return tag + '[' + attribute + '='
+                + value.trim().toLowerCase(Locale.ROOT) + ']';
+    }
+
+    private String getKey(Element element) {
+        List<String> attributes = keyAttributes.get(element.tagName());
+        if (attributes == null) {
+            return null;
+        }
+        for (String attribute : attributes) {
+            if (element.hasAttr(attribute)) {
+                String key = createKey(element.tagName(), attribute,
+                        element.attr(attribute));
+                if (keys.contains(key)) {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether elements created from a template might replace existing
+     * elements. This is the case if a static attribute of the template
+     * matches a replacement key or if a generator provides the value of an
+     * attribute that is used in a replacement key for the tag.
+     *
+     * @param tag
+     *            the template to check
+     * @return <code>true</code> if elements created from the template must be
+     *         merged as elements, <code>false</code> if they are always
+     *         appended
+     */
+    boolean mayReplace(HeadTagTemplate tag) {
+        String tagName = tag.getTagName().toLowerCase(Locale.ROOT);
+        List<String> attributes = keyAttributes.get(tagName);
+        if (attributes == null) {
+            return false;
+        }
+
+        GeneratorBinding generator = tag.getGenerator();
+        for (String attribute : attributes) {
+            if (generator != null) {
+                for (GeneratorBinding.GeneratedAttribute generated : generator
+                        .getAttributes()) {
+                    if (attribute.equalsIgnoreCase(generated.getName())) {
+                        return true;
+                    }
+                }
+            }
+            for (Entry<String, String> entry : tag.getAttributes()
+                    .entrySet()) {
+                if (attribute.equalsIgnoreCase(entry.getKey())
+                        && keys.contains(createKey(tagName, attribute,
+                                entry.getValue()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves all children of a new head element into the real head. Nodes
+     * other than elements, such as pre-serialized tags, are always appended.
+     *
+     * @param realHead
+     *            the head element of the bootstrap page
+     * @param newHead
+     *            a detached head element with the new elements
+     * @return the number of existing elements that were replaced
+     */
+    int merge(Element realHead, Element newHead) {
+        int replaced = 0;
+
+        // Classify new elements, usually none of them has a key
+        Map<String, List<Element>> newByKey = null;
+        for (Element element : newHead.children()) {
+            String key = getKey(element);
+            if (key != null) {
+                if (newByKey == null) {
+                    newByKey = new LinkedHashMap<>();
+                }
+                newByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(
+                        element);
+            }
+        }
+
+        if (newByKey != null) {
+            // Single pass through the existing elements
+            Map<String, List<Element>> oldByKey = new HashMap<>();
+            for (Element element : realHead.children()) {
+                String key = getKey(element);
+                if (key != null && newByKey.containsKey(key)) {
+                    oldByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(
+                            element);
+                }
+            }
+
+            for (Entry<String, List<Element>> entry : oldByKey.entrySet()) {
+                List<Element> oldElements = entry.getValue();
+                Element first = oldElements.get(0);
+                for (Element element : newByKey.get(entry.getKey())) {
+                    first.before(element);
+                }
+                for (Element element : oldElements) {
+                    element.remove();
+                }
+                replaced += oldElements.size();
+            }
+        }
+
+        // Dump remaining nodes to the end of the head tag
+        while (newHead.childNodeSize() != 0) {
+            realHead.appendChild(newHead.childNode(0));
+        }
+
+        return replaced;
+    }
+}
@@ -0,0 +1,597 @@
+package org.vaadin.leif.headertags;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletContext;
+
+import org.jsoup.nodes.Element;
+
+import com.vaadin.server.RequestHandler;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+
+/**
+ * Serves local resources referenced by <code>link</code> tags from
+ * fingerprinted URLs. The <code>href</code> of a link that points to a
+ * resource found in the web application is rewritten to a URL containing a
+ * hash of the resource content. The content is held in memory together with
+ * a gzipped variant and served with headers that allow browsers to cache it
+ * forever, since any change to the content results in a new URL.
+ * <p>
+ * A relative <code>href</code> is resolved against the root of the servlet,
+ * first as a servlet context resource and then from
+ * <code>META-INF/resources</code> or, for <code>VAADIN</code> resources, the
+ * root of the class path. Resources are served from below
+ * {@link #PATH_PREFIX} in the servlet root, so links on pages below the root
+ * must be adjusted using {@link #resolveFromRoot(Element, String)}.
+ */
+class HeadResources implements RequestHandler {
+
+    /**
+     * The path under which fingerprinted resources are served, relative to
+     * the servlet.
+     */
+    static final String PATH_PREFIX = "headertags/";
+
+    /**
+     * Resources larger than this are left as is.
+     */
+    private static final int MAX_RESOURCE_SIZE = 1024 * 1024;
+
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /**
+     * An in-memory copy of a resource.
+     */
+    private static final class Resource {
+        private final String url;
+        private final String etag;
+        private final String contentType;
+        private final byte[] content;
+
+        /**
+         * Gzipped content, or <code>null</code> if compressing doesn't make
+         * the resource smaller.
+         */
+        private final byte[] gzipped;
+
+        private Resource(String url, String etag, String contentType,
+                byte[] content, byte[] gzipped) {
+            this.url = url;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.content = content;
+            this.gzipped = gzipped;
+        }
+    }
+
+    /**
+     * Marker for paths that don't refer to a resource that can be
+     * fingerprinted.
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private final VaadinService service;
+
+    /**
+     * Resources by their original path, or {@link #NOT_FOUND} so that missing
+     * resources are only looked up once.
+     */
+    private final ConcurrentHashMap<String, Object> resourcesByPath = new ConcurrentHashMap<>();
+
+    /**
+     * Resources by their fingerprinted path, relative to {@link #PATH_PREFIX}.
+     */
+    private final ConcurrentHashMap<String, Resource> resourcesByUrl = new ConcurrentHashMap<>();
+
+    /**
+     * Generated resources that are not yet available, by their path relative
+     * to {@link #PATH_PREFIX}.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Resource>> pendingResources = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a resource handler for a service.
+     *
+     * @param service
+     *            the service to load resources from
+     */
+    HeadResources(VaadinService service) {
+        this.service = service;
+    }
+
+    /**
+     * Creates a copy of a plan in which the <code>href</code> of each
+     * <code>link</code> tag that refers to a local resource is replaced by a
+     * fingerprinted URL.
+     *
+     * @param plan
+     *            the plan to rewrite
+     * @return a rewritten plan, or the original plan if there's nothing to
+     *         rewrite
+     */
+    HeadTagPlan rewrite(HeadTagPlan plan) {
+        List<HeadTagTemplate> tags = new ArrayList<>(plan.getTags());
+        boolean changed = false;
+        for (int i = 0; i < tags.size(); i++) {
+            HeadTagTemplate tag = tags.get(i);
+            if (!"link".equalsIgnoreCase(tag.getTagName())
+                    || providesHref(tag.getGenerator())) {
+                continue;
+            }
+            String href = tag.getAttributes().get("href");
+            Resource resource = href == null ? null : getResource(href);
+            if (resource != null) {
+                Map<String, String> attributes = new LinkedHashMap<>(
+                        tag.getAttributes());
+                attributes.put("href", PATH_PREFIX + resource.url);
+                tags.set(i, tag.withAttributes(attributes));
+                changed = true;
+            }
+        }
+        return changed ? new HeadTagPlan(tags) : plan;
+    }
+
+    /**
+     * Forgets all resources that have been found for a path, so that modified
+     * resources get a new fingerprinted URL the next time a plan is
+     * rewritten. The old URLs are no longer served, so plans that have been
+     * rewritten before should be rewritten again, see
+     * {@link #isServed(HeadTagPlan)}. Generated resources are not affected.
+     */
+    void reload() {
+        for (Object resource : resourcesByPath.values()) {
+            if (resource instanceof Resource) {
+                resourcesByUrl.remove(((Resource) resource).url, resource);
+            }
+        }
+        resourcesByPath.clear();
+    }
+
+    /**
+     * Checks whether all links to resources of this handler in a rewritten
+     * plan are still served.
+     *
+     * @param plan
+     *            a plan returned by {@link #rewrite(HeadTagPlan)}
+     * @return <code>true</code> if the plan is up to date, <code>false</code>
+     *         if it should be rewritten again after {@link #reload()}
+     */
+    boolean isServed(HeadTagPlan plan) {
+        for (HeadTagTemplate tag : plan.getTags()) {
+            String href = tag.getAttributes().get("href");
+            if (href != null && href.startsWith(PATH_PREFIX)
+                    && "link".equalsIgnoreCase(tag.getTagName())) {
+                String url = href.substring(PATH_PREFIX.length());
+                if (!resourcesByUrl.containsKey(url)
+                        && !pendingResources.containsKey(url)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the relative path from a bootstrap page to the root of the
+     * servlet, which is where resources of this handler are served from.
+     *
+     * @param pathInfo
+     *            the path info of the bootstrap request, or
+     *            <code>null</code>
+     * @return the relative path, e.g. <code>../</code>, or an empty string if
+     *         the page is in the servlet root
+     */
+    static String getPathToRoot(String pathInfo) {
+        if (pathInfo == null) {
+            return "";
+        }
+        StringBuilder path = new StringBuilder();
+        // Start from 1 to ignore the first slash
+        for (int i = 1; i < pathInfo.length(); i++) {
+            if (pathInfo.charAt(i) == '/') {
+                path.append("../");
+            }
+        }
+        return path.toString();
+    }
+
+    /**
+     * Makes the links to resources of this handler among the children of an
+     * element relative to a bootstrap page below the servlet root.
+     *
+     * @param head
+     *            the element containing the links
+     * @param pathToRoot
+     *            the path from {@link #getPathToRoot(String)}
+     */
+    static void resolveFromRoot(Element head, String pathToRoot) {
+        for (Element link : head.getElementsByTag("link")) {
+            String href = link.attr("href");
+            if (href.startsWith(PATH_PREFIX)) {
+                link.attr("href", pathToRoot + href);
+            }
+        }
+    }
+
+    private static boolean providesHref(GeneratorBinding generator) {
+        if (generator != null) {
+            for (GeneratorBinding.GeneratedAttribute attribute : generator
+                    .getAttributes()) {
+                if ("href".equalsIgnoreCase(attribute.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Resource getResource(String href) {
+        String path = getLocalPath(href);
+        if (path == null) {
+            return null;
+        }
+        Object resource = resourcesByPath.computeIfAbsent(path, p -> {
+            Resource loaded = loadResource(p);
+            return loaded == null ? NOT_FOUND : loaded;
+        });
+        return resource == NOT_FOUND ? null : (Resource) resource;
+    }
+
+    /**
+     * Gets the servlet relative path of an href, or <code>null</code> if it
+     * doesn't refer to a local resource.
+     *
+     * @param href
+     *            the href to check
+     * @return the local path, or <code>null</code>
+     */
+    static String getLocalPath(String href) {
+        if (href.isEmpty() || href.startsWith("/") || href.indexOf(':') != -1
+                || href.indexOf('?') != -1 || href.indexOf('#') != -1) {
+            return null;
+        }
+        String path = href;
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        if (path.isEmpty() || path.endsWith("/") || path.contains("..")
+                || path.startsWith(PATH_PREFIX)) {
+            return null;
+        }
+        return path;
+    }
+
+    private Resource loadResource(String path) {
+        byte[] content;
+        try (InputStream stream = openResource(path)) {
+            if (stream == null) {
+                return null;
+            }
+            content = readFully(stream);
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not read head tag resource " + path, e);
+            return null;
+        }
+        if (content == null) {
+            getLogger().fine("Not fingerprinting " + path
+                    + " since it's larger than " + MAX_RESOURCE_SIZE
+                    + " bytes");
+            return null;
+        }
+
+        String hash = hash(content);
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String url = hash + '/' + name;
+
+        String contentType = service == null ? null : service
+                .getMimeType(name);
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+
+        Resource resource = createResource(url, hash, contentType, content);
+        resourcesByUrl.put(url, resource);
+        return resource;
+    }
+
+    private static Resource createResource(String url, String hash,
+            String contentType, byte[] content) {
+        byte[] gzipped = gzip(content);
+        if (gzipped.length >= content.length) {
+            gzipped = null;
+        }
+        return new Resource(url, '"' + hash + '"', contentType, content,
+                gzipped);
+    }
+
+    /**
+     * Adds a resource whose content is generated in the background. Requests
+     * for the resource wait until the content is available.
+     *
+     * @param url
+     *            the path of the resource relative to {@link #PATH_PREFIX}.
+     *            The path should change whenever the content changes.
+     * @param contentType
+     *            the content type of the resource
+     * @param content
+     *            the future content of the resource
+     * @return the path to use for referencing the resource, relative to the
+     *         servlet
+     */
+    String addResource(String url, String contentType,
+            CompletableFuture<byte[]> content) {
+        if (resourcesByUrl.containsKey(url)) {
+            return PATH_PREFIX + url;
+        }
+
+        CompletableFuture<Resource> resource = content.thenApply(
+                bytes -> createResource(url, hash(bytes), contentType, bytes));
+        if (pendingResources.putIfAbsent(url, resource) == null) {
+            // Completion may run right away, so register after adding
+            resource.whenComplete((r, e) -> {
+                if (r != null) {
+                    resourcesByUrl.put(url, r);
+                } else if (!(e instanceof CancellationException)) {
+                    getLogger().log(Level.WARNING,
+                            "Could not generate head tag resource " + url, e);
+                }
+                pendingResources.remove(url, resource);
+            });
+        }
+        return PATH_PREFIX + url;
+    }
+
+    /**
+     * Cancels all resources that are still being generated, so that requests
+     * waiting for them get a 404 response instead of waiting forever.
+     */
+    void cancelPending() {
+        for (CompletableFuture<Resource> resource : pendingResources
+                .values()) {
+            resource.cancel(false);
+        }
+    }
+
+    /**
+     * Opens a resource of the web application.
+     *
+     * @param path
+     *            the path of the resource, relative to the servlet
+     * @return a stream for reading the resource, or <code>null</code> if the
+     *         resource is not found
+     * @throws IOException
+     *             if the resource cannot be opened
+     */
+    InputStream openResource(String path) throws IOException {
+        URL url = findResource(path);
+        return url == null ? null : url.openStream();
+    }
+
+    /**
+     * Finds a resource of the web application.
+     *
+     * @param path
+     *            the path of the resource, relative to the servlet
+     * @return the URL of the resource, or <code>null</code> if the resource is
+     *         not found
+     */
+    URL findResource(String path) {
+        if (service instanceof VaadinServletService) {
+            ServletContext context = ((VaadinServletService) service)
+                    .getServlet().getServletContext();
+            try {
+                URL url = context.getResource("/" + path);
+                if (url != null) {
+                    return url;
+                }
+            } catch (MalformedURLException e) {
+                // Not a servlet context resource, try the class path
+            }
+        }
+
+        ClassLoader classLoader = service.getClassLoader();
+        if (classLoader == null) {
+            classLoader = HeadResources.class.getClassLoader();
+        }
+        URL url = classLoader.getResource("META-INF/resources/" + path);
+        if (url == null && path.startsWith("VAADIN/")) {
+            url = classLoader.getResource(path);
+        }
+        return url;
+    }
+
+    /**
+     * Reads a stream, returning <code>null</code> if it's larger than
+     * {@link #MAX_RESOURCE_SIZE}.
+     */
+    static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_RESOURCE_SIZE) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Computes a short hexadecimal hash of some content.
+     *
+     * @param content
+     *            the content to hash
+     * @return the hash, 20 characters long
+     */
+    static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    content);
+            StringBuilder hash = new StringBuilder();
+            // 80 bits is plenty for telling versions apart
+            for (int i = 0; i < 10; i++) {
+                hash.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+                hash.append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            // Can't happen with a byte array stream
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public boolean handleRequest(VaadinSession session, VaadinRequest request,
+            VaadinResponse response) throws IOException {
+        String url = getResourceUrl(request.getPathInfo());
+        if (url == null) {
+            return false;
+        }
+
+        Resource resource = resourcesByUrl.get(url);
+        if (resource == null) {
+            resource = awaitPending(url);
+        }
+        if (resource == null) {
+            response.sendError(404, "Resource not found");
+            return true;
+        }
+
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        response.setHeader("ETag", resource.etag);
+        response.setHeader("Vary", "Accept-Encoding");
+        if (resource.etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(304);
+            return true;
+        }
+
+        byte[] content = resource.content;
+        if (resource.gzipped != null
+                && acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("Content-Encoding", "gzip");
+            content = resource.gzipped;
+        }
+
+        response.setContentType(resource.contentType);
+        response.setContentLength(content.length);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(content);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an <code>Accept-Encoding</code> header allows a gzipped
+     * response. A coding with <code>q=0</code> is not acceptable, and
+     * <code>*</code> applies to gzip unless gzip is listed separately.
+     *
+     * @param acceptEncoding
+     *            the header value, or <code>null</code>
+     * @return <code>true</code> if gzip is acceptable, otherwise
+     *         <code>false</code>
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = getQuality(parts) > 0;
+            if ("gzip".equals(name) || "x-gzip".equals(name)) {
+                return accepted;
+            } else if ("*".equals(name)) {
+                wildcard = Boolean.valueOf(accepted);
+            }
+        }
+        return wildcard != null && wildcard.booleanValue();
+    }
+
+    private static double getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            int equals = parameters[i].indexOf('=');
+            if (equals != -1 && "q".equalsIgnoreCase(parameters[i].substring(
+                    0, equals).trim())) {
+                try {
+                    return Double.parseDouble(parameters[i].substring(
+                            equals + 1).trim());
+                } catch (NumberFormatException e) {
+                    // Invalid weight, don't risk it
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Gets the path relative to {@link #PATH_PREFIX} of the resource that a
+     * request refers to.
+     *
+     * @param pathInfo
+     *            the path info of the request, or <code>null</code>
+     * @return the resource path, or <code>null</code> if the request is not
+     *         for a resource of this handler
+     */
+    private static String getResourceUrl(String pathInfo) {
+        String prefix = "/" + PATH_PREFIX;
+        if (pathInfo == null || !pathInfo.startsWith(prefix)) {
+            return null;
+        }
+        return pathInfo.substring(prefix.length());
+    }
+
+    private Resource awaitPending(String url) {
+        CompletableFuture<Resource> pending = pendingResources.get(url);
+        if (pending == null) {
+            // Might have completed after the first lookup
+            return resourcesByUrl.get(url);
+        }
+        try {
+            return pending.join();
+        } catch (CompletionException | CancellationException e) {
+            // Already logged when the future completed
+            return null;
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(HeadResources.class.getName());
+    }
+}
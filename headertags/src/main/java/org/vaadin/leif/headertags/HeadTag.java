@@ -23,6 +23,18 @@ import com.vaadin.server.VaadinRequest;
  * <code>camelCase</code> rewritten as <code>camel-case</code>. The name mapping
  * can also be redefined using {@link HeadTagAttribute}.
  * <p>
+ * Annotation methods can also return an enum type. The attribute value is then
+ * the lower case name of the constant, with <code>_</code> replaced by
+ * <code>-</code>, unless the constant is annotated with
+ * {@link HeadTagAttribute}. See {@link CrossOrigin} for an example. Methods
+ * returning <code>boolean</code> define boolean attributes, which are
+ * included with an empty value if the method returns <code>true</code> and
+ * left out otherwise.
+ * <p>
+ * A method that returns an array of {@link Condition} does not define an
+ * attribute. Instead, the tag is only included for requests that fulfill all
+ * the conditions.
+ * <p>
  * Tag annotations can be refined further by using that annotation as a meta
  * annotation on another annotation. See {@link Viewport} for an example of this
  * usage.
@@ -31,7 +43,9 @@ import com.vaadin.server.VaadinRequest;
  * an attribute generator. Generators can be defined for a UI class using
  * {@link HeadTagGenerators}. Generator classes that are defined as inner
  * classes of a UI class are also used as generators. Methods in generator types
- * can optionally accept a parameter of type {@link VaadinRequest}.
+ * can optionally accept parameters such as {@link VaadinRequest} or
+ * {@link com.vaadin.server.VaadinSession}, see
+ * {@link HeadTagParameterResolver} for the supported types.
  * <p>
  * Support for multiple annotations of the same type can also be used by
  * defining a collection annotation where value() returns an array of compatible
@@ -59,4 +73,14 @@ public @interface HeadTag {
      * Special value used to represent attribute values that should be ignored.
      */
     public static final String NULL_VALUE = "_specialValueRepresentingNull_";
+
+    /**
+     * Special value used to represent attribute values that should be
+     * computed automatically. Supported for the <code>integrity</code>
+     * attribute of tags referencing a local resource through
+     * <code>href</code> or <code>src</code>, for which a SHA-384 digest of the
+     * resource is used. Only available when {@link HeaderTagHandler#init} is
+     * used.
+     */
+    public static final String AUTO = "_specialValueRepresentingAuto_";
 }
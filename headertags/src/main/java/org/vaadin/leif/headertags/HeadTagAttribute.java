@@ -9,18 +9,22 @@ import java.lang.annotation.Target;
 /**
  * Used on methods in annotations marked with {@link HeadTag} to override the
  * default attribute name mapping.
+ * <p>
+ * Can also be used on the constants of an enum that is used as the return type
+ * of an annotation method to override the default attribute value mapping.
  * 
  * @see HeadTag
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.METHOD)
+@Target({ ElementType.METHOD, ElementType.FIELD })
 @Documented
 public @interface HeadTagAttribute {
     /**
      * The attribute name to use for the annotation method annotated with this
-     * annotation.
+     * annotation, or the attribute value to use for the enum constant
+     * annotated with this annotation.
      * 
-     * @return the attribute name
+     * @return the attribute name or value
      */
     public String value();
 }
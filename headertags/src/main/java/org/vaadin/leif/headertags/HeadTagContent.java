@@ -0,0 +1,33 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Used on a method in an annotation marked with {@link HeadTag} to use its
+ * value as the text content of the element instead of as an attribute. The
+ * content of <code>script</code> and <code>style</code> elements is written
+ * as is, whereas the content of other elements is escaped.
+ * 
+ * <pre>
+ * &#64;HeadTag("style")
+ * &#64;Retention(RetentionPolicy.RUNTIME)
+ * public &#64;interface InlineStyle {
+ *     &#64;HeadTagContent
+ *     String value();
+ * }
+ * </pre>
+ * 
+ * Content set to {@link HeadTag#NULL_VALUE} is ignored.
+ * 
+ * @see HeadTag
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface HeadTagContent {
+    // Marker annotation
+}
@@ -17,6 +17,11 @@ import java.lang.annotation.Target;
  * instead of using annotation properties, the attribute values are found by
  * creating an instance of the generator type using the default constructor and
  * invoking its methods.
+ * <p>
+ * By default, a new generator instance is created for each request. Stateless
+ * generators can be shared between requests by defining a different
+ * {@link #scope()}, or by annotating the generator class with
+ * {@link GeneratorLifecycle}.
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
@@ -29,4 +34,12 @@ public @interface HeadTagGenerators {
      * @return an array of generator classes to use
      */
     public Class<?>[] value();
+
+    /**
+     * The scope to use for generators of the annotated UI class that don't
+     * define their own scope using {@link GeneratorLifecycle}.
+     *
+     * @return the default generator scope
+     */
+    public GeneratorScope scope() default GeneratorScope.REQUEST;
 }
@@ -0,0 +1,94 @@
+package org.vaadin.leif.headertags;
+
+import com.vaadin.ui.UI;
+
+/**
+ * Receives measurements from the head tag processing of a service. All methods
+ * have empty default implementations so that an implementation only needs to
+ * override the methods it's interested in.
+ * <p>
+ * An implementation is configured using
+ * {@link HeaderTagHandler#INSTRUMENTATION_PARAMETER}, either as the name of a
+ * class with a public no-argument constructor or as <code>jmx</code> to use
+ * {@link HeadTagStatistics}. If the implementation is also
+ * {@link AutoCloseable}, it's closed when the service is destroyed. No
+ * measurements are taken when no implementation is configured.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface HeadTagInstrumentation {
+
+    /**
+     * Instrumentation that ignores all measurements.
+     */
+    public static final HeadTagInstrumentation NOOP = new HeadTagInstrumentation() {
+    };
+
+    /**
+     * Called after the head tags of a bootstrap page have been processed.
+     *
+     * @param uiClass
+     *            the UI class of the bootstrap page
+     * @param nanos
+     *            the time spent processing head tags, in nanoseconds
+     * @param emittedTags
+     *            the number of tags added to the page
+     * @param replacedTags
+     *            the number of existing tags that were replaced
+     */
+    public default void pageProcessed(Class<? extends UI> uiClass, long nanos,
+            int emittedTags, int replacedTags) {
+        // Ignore by default
+    }
+
+    /**
+     * Called after a generator has been invoked.
+     *
+     * @param generatorClass
+     *            the generator class
+     * @param nanos
+     *            the time spent invoking the generator, in nanoseconds
+     */
+    public default void generatorInvoked(Class<?> generatorClass, long nanos) {
+        // Ignore by default
+    }
+
+    /**
+     * Called when a generator throws an exception.
+     *
+     * @param generatorClass
+     *            the generator class
+     * @param error
+     *            the thrown exception
+     */
+    public default void generatorFailed(Class<?> generatorClass,
+            Throwable error) {
+        // Ignore by default
+    }
+
+    /**
+     * Called when a parallel generator doesn't complete in time and its
+     * fallback value is used.
+     *
+     * @param generatorClass
+     *            the generator class
+     */
+    public default void generatorTimedOut(Class<?> generatorClass) {
+        // Ignore by default
+    }
+
+    /**
+     * Called when the output of a {@link CacheableGenerator} is looked up from
+     * its cache.
+     *
+     * @param generatorClass
+     *            the generator class
+     * @param hit
+     *            <code>true</code> if a cached value was found, otherwise
+     *            <code>false</code>
+     */
+    public default void generatorCacheLookup(Class<?> generatorClass,
+            boolean hit) {
+        // Ignore by default
+    }
+}
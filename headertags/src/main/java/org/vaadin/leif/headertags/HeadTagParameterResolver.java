@@ -0,0 +1,49 @@
+package org.vaadin.leif.headertags;
+
+import java.util.Locale;
+
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+
+/**
+ * Provides values for generator method parameters of a custom type. Resolvers
+ * are found using {@link java.util.ServiceLoader} with the class loader of the
+ * generator class, i.e. by listing implementation classes in
+ * <code>META-INF/services/org.vaadin.leif.headertags.HeadTagParameterResolver</code>.
+ * <p>
+ * Each parameter of a generator method is bound to a resolver based on its
+ * declared type when the plan of a UI class is compiled, so the type is not
+ * inspected again for each request. The following types are always
+ * supported and cannot be overridden by a resolver: {@link VaadinRequest},
+ * {@link VaadinSession}, {@link VaadinService}, {@link Locale},
+ * {@link BootstrapPageResponse}, {@link Class} for the UI class and
+ * {@link GeneratorContext}. Values of the built-in types may be
+ * <code>null</code> if not available, e.g. when head tags are generated
+ * without a session.
+ *
+ * @param <T>
+ *            the parameter type
+ */
+public interface HeadTagParameterResolver<T> {
+
+    /**
+     * Gets the parameter type that this resolver provides values for. The
+     * resolver is used for parameters declared with exactly this type.
+     *
+     * @return the parameter type, not <code>null</code>
+     */
+    public Class<T> getType();
+
+    /**
+     * Resolves the value of a parameter. This method may be called from a
+     * thread other than the request thread if generators are run in
+     * parallel.
+     *
+     * @param context
+     *            the context of the current bootstrap request
+     * @return the parameter value
+     */
+    public T resolve(GeneratorContext context);
+}
@@ -0,0 +1,373 @@
+package org.vaadin.leif.headertags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+
+import com.vaadin.server.VaadinRequest;
+
+/**
+ * Immutable description of all head tags that should be added to the host
+ * page of a specific UI class. A plan is compiled once for each UI class and
+ * then reused for every bootstrap request, so that only the generator based
+ * parts need to be evaluated for each request.
+ *
+ * @see HeadTagPlanCompiler
+ */
+final class HeadTagPlan {
+
+    /**
+     * Caches the compiled plan for each UI class. Using a {@link ClassValue}
+     * ensures the cache doesn't prevent UI classes from being unloaded.
+     */
+    private static final ClassValue<HeadTagPlan> plans = new ClassValue<HeadTagPlan>() {
+        @Override
+        protected HeadTagPlan computeValue(Class<?> uiClass) {
+            return HeadTagPlanCompiler.compile(uiClass);
+        }
+    };
+
+    /**
+     * Marker in the values from {@link #generateValues} for tags that should
+     * not be included for the request.
+     */
+    static final String[] EXCLUDED = new String[0];
+
+    private final List<HeadTagTemplate> tags;
+
+    private final boolean staticPlan;
+
+    /**
+     * Prebuilt head with all tags for a static plan, or <code>null</code> if
+     * the plan has generators. This element is never modified after the plan
+     * has been created, it's only used as a source for cloning.
+     */
+    private final Element staticHead;
+
+    /**
+     * Fingerprint of the annotations that the plan was compiled from, or
+     * <code>null</code> if not yet computed. The fingerprint is computed by
+     * the first call to {@link #isCurrent(Class)}, so that the reflection is
+     * only done when plans are revalidated.
+     */
+    private volatile Integer fingerprint;
+
+    HeadTagPlan(List<HeadTagTemplate> tags) {
+        this.tags = Collections
+                .unmodifiableList(new ArrayList<HeadTagTemplate>(tags));
+
+        boolean staticPlan = true;
+        for (HeadTagTemplate tag : tags) {
+            staticPlan &= tag.isStatic();
+        }
+        this.staticPlan = staticPlan;
+
+        if (staticPlan) {
+            staticHead = new Element(Tag.valueOf("head"), "");
+            for (HeadTagTemplate tag : tags) {
+                tag.appendTo(staticHead, null);
+            }
+        } else {
+            staticHead = null;
+        }
+    }
+
+    /**
+     * Gets the plan for the given UI class, compiling it if it's not already
+     * cached.
+     *
+     * @param uiClass
+     *            the UI class to get a plan for, not <code>null</code>
+     * @return the head tag plan, not <code>null</code>
+     */
+    static HeadTagPlan get(Class<?> uiClass) {
+        return plans.get(uiClass);
+    }
+
+    /**
+     * Removes the cached plan of a UI class so that it's compiled again the
+     * next time it's needed.
+     *
+     * @param uiClass
+     *            the UI class to remove the plan for, not <code>null</code>
+     */
+    static void invalidate(Class<?> uiClass) {
+        plans.remove(uiClass);
+    }
+
+    /**
+     * Computes a fingerprint of the annotations that a plan for a UI class is
+     * compiled from: the annotations of the UI class, of its nested classes
+     * and of the generators used by the plan, together with the modification
+     * time of any {@link HeadTagSource} files and {@link InlineCriticalCss}
+     * stylesheet.
+     *
+     * @param uiClass
+     *            the UI class
+     * @param tags
+     *            the tags compiled for the UI class
+     * @return the fingerprint
+     */
+    private static int computeFingerprint(Class<?> uiClass,
+            List<HeadTagTemplate> tags) {
+        int fingerprint = Arrays.hashCode(uiClass.getAnnotations());
+        for (Class<?> nestedClass : uiClass.getDeclaredClasses()) {
+            fingerprint = 31 * fingerprint + nestedClass.getName().hashCode();
+            fingerprint = 31 * fingerprint
+                    + Arrays.hashCode(nestedClass.getAnnotations());
+        }
+        for (HeadTagTemplate tag : tags) {
+            GeneratorBinding generator = tag.getGenerator();
+            if (generator != null) {
+                fingerprint = 31 * fingerprint + Arrays.hashCode(generator
+                        .getDeclaringClass().getAnnotations());
+                fingerprint = 31 * fingerprint + Arrays.hashCode(generator
+                        .getInstanceClass().getAnnotations());
+            }
+        }
+        InlineCriticalCss criticalCss = uiClass
+                .getAnnotation(InlineCriticalCss.class);
+        if (criticalCss != null) {
+            fingerprint = 31 * fingerprint + Long.hashCode(HeadTagSourceReader
+                    .getLastModified(HeadTagSourceReader.findDeclaringClass(
+                            uiClass, InlineCriticalCss.class), criticalCss
+                            .resource()));
+        }
+        HeadTagSource source = uiClass.getAnnotation(HeadTagSource.class);
+        if (source != null) {
+            Class<?> sourceClass = HeadTagSourceReader.findDeclaringClass(
+                    uiClass, HeadTagSource.class);
+            for (String location : source.value()) {
+                fingerprint = 31 * fingerprint + Long.hashCode(
+                        HeadTagSourceReader.getLastModified(sourceClass,
+                                location));
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Checks whether the annotations of the UI class and its generators, and
+     * any head tag source files, are still the same as when this plan was
+     * first checked. This is only relevant when classes are redefined at
+     * runtime, e.g. during development. The first check always returns
+     * <code>true</code>.
+     *
+     * @param uiClass
+     *            the UI class that this plan was compiled for
+     * @return <code>true</code> if the plan is up to date, otherwise
+     *         <code>false</code>
+     */
+    boolean isCurrent(Class<?> uiClass) {
+        int current = computeFingerprint(uiClass, tags);
+        Integer fingerprint = this.fingerprint;
+        if (fingerprint == null) {
+            // Compare later checks against the state at the first check
+            this.fingerprint = Integer.valueOf(current);
+            return true;
+        }
+        return fingerprint.intValue() == current;
+    }
+
+    /**
+     * Gets the tag templates of this plan, in the order in which they should
+     * be added to the head.
+     *
+     * @return an unmodifiable list of tag templates
+     */
+    List<HeadTagTemplate> getTags() {
+        return tags;
+    }
+
+    /**
+     * Checks whether the output of this plan is the same for every request,
+     * i.e. whether there are no generators.
+     *
+     * @return <code>true</code> if the plan is static, otherwise
+     *         <code>false</code>
+     */
+    boolean isStatic() {
+        return staticPlan;
+    }
+
+    /**
+     * Creates a detached head element containing the tags defined by this
+     * plan. For static plans, this is a cheap clone of a prebuilt element.
+     *
+     * @param baseUri
+     *            the base URI to use for the created elements
+     * @param context
+     *            the context to pass to generators
+     * @param environment
+     *            the generator environment of the current service
+     * @return a new head element, not <code>null</code>
+     */
+    Element createHead(String baseUri, GeneratorContext context,
+            GeneratorEnvironment environment) {
+        return createHead(baseUri, generateValues(context, environment));
+    }
+
+    /**
+     * Creates a detached head element containing the tags defined by this
+     * plan using values that have already been generated.
+     *
+     * @param baseUri
+     *            the base URI to use for the created elements
+     * @param values
+     *            the values from {@link #generateValues}
+     * @return a new head element, not <code>null</code>
+     */
+    Element createHead(String baseUri, String[][] values) {
+        if (staticHead != null) {
+            Element head = staticHead.clone();
+            if (!baseUri.equals(head.baseUri())) {
+                head.setBaseUri(baseUri);
+            }
+            return head;
+        }
+
+        Element head = new Element(Tag.valueOf("head"), baseUri);
+        for (int i = 0; i < tags.size(); i++) {
+            if (values[i] != EXCLUDED) {
+                tags.get(i).appendTo(head, values[i]);
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Counts the tags that are included for a request, i.e. the number of
+     * tags that {@link #createHead(String, String[][])} appends.
+     *
+     * @param values
+     *            the values from {@link #generateValues}
+     * @return the number of included tags
+     */
+    int countIncluded(String[][] values) {
+        int count = 0;
+        for (String[] tagValues : values) {
+            if (tagValues != EXCLUDED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates the generators of this plan for a request, either on the
+     * current thread or in parallel depending on the environment.
+     *
+     * @param context
+     *            the context to pass to generators
+     * @param environment
+     *            the generator environment of the current service
+     * @return the generated values for each tag, in plan order, with
+     *         <code>null</code> for tags without a generator and
+     *         {@link #EXCLUDED} for tags whose conditions are not fulfilled
+     */
+    String[][] generateValues(GeneratorContext context,
+            GeneratorEnvironment environment) {
+        String[][] values = new String[tags.size()][];
+        if (staticPlan) {
+            return values;
+        }
+
+        // Conditions are cheap, check them before running any generator
+        VaadinRequest request = context.getRequest();
+        for (int i = 0; i < values.length; i++) {
+            if (!tags.get(i).isIncluded(request)) {
+                values[i] = EXCLUDED;
+            }
+        }
+
+        if (!environment.isParallel()) {
+            for (int i = 0; i < values.length; i++) {
+                GeneratorBinding generator = tags.get(i).getGenerator();
+                if (generator != null && values[i] != EXCLUDED) {
+                    values[i] = generator.getValues(context, environment);
+                }
+            }
+            return values;
+        }
+
+        long start = System.nanoTime();
+
+        List<Future<String[]>> futures = new ArrayList<>(tags.size());
+        for (int i = 0; i < values.length; i++) {
+            GeneratorBinding generator = tags.get(i).getGenerator();
+            if (generator == null || values[i] == EXCLUDED) {
+                futures.add(null);
+                continue;
+            }
+            // Cached values don't need another thread
+            Object key = generator.getCacheKey(request);
+            values[i] = generator.getCachedValues(key, environment);
+            if (values[i] != null) {
+                futures.add(null);
+            } else {
+                futures.add(environment.submit(() -> generator.generateValues(
+                        key, context, environment)));
+            }
+        }
+
+        // Wait for results in plan order to keep the output deterministic
+        boolean completed = false;
+        try {
+            for (int i = 0; i < values.length; i++) {
+                Future<String[]> future = futures.get(i);
+                if (future != null) {
+                    values[i] = awaitValues(tags.get(i).getGenerator(),
+                            future, start, environment);
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // A generator failed, don't leave the others running
+                for (Future<String[]> future : futures) {
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String[] awaitValues(GeneratorBinding generator,
+            Future<String[]> future, long start,
+            GeneratorEnvironment environment) {
+        long deadline = start
+                + TimeUnit.MILLISECONDS.toNanos(generator
+                        .getTimeoutMillis(environment.getTimeoutMillis()));
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            if (environment.isInstrumented()) {
+                environment.getInstrumentation().generatorTimedOut(
+                        generator.getInstanceClass());
+            }
+            return generator.getFallbackValues();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return generator.getFallbackValues();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
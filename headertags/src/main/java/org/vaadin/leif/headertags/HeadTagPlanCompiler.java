@@ -0,0 +1,477 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the head tag annotations of a UI class and its generators into a
+ * {@link HeadTagPlan}. All reflection is done when compiling the plan so that
+ * the plan can be evaluated without walking annotations again.
+ */
+class HeadTagPlanCompiler {
+
+    /**
+     * Order for methods and nested classes, which reflection returns in an
+     * unspecified order. The annotation processor uses the same order so that
+     * a generated registry produces the same tags as reflection.
+     */
+    private static final Comparator<Method> METHOD_ORDER = Comparator
+            .comparing(Method::getName).thenComparing(Method::toString);
+
+    private static final Comparator<Class<?>> CLASS_ORDER = Comparator
+            .comparing(Class::getName);
+
+    private final List<HeadTagTemplate> tags = new ArrayList<HeadTagTemplate>();
+
+    private final GeneratorScope defaultScope;
+
+    private HeadTagPlanCompiler(GeneratorScope defaultScope) {
+        this.defaultScope = defaultScope;
+    }
+
+    /**
+     * Compiles a head tag plan for the given UI class.
+     *
+     * @param uiClass
+     *            the UI class to compile a plan for
+     * @return the compiled plan, not <code>null</code>
+     */
+    static HeadTagPlan compile(Class<?> uiClass) {
+        HeadTagGenerators generatorAnnotation = uiClass
+                .getAnnotation(HeadTagGenerators.class);
+
+        HeadTagPlanCompiler compiler = new HeadTagPlanCompiler(
+                generatorAnnotation != null ? generatorAnnotation.scope()
+                        : GeneratorScope.REQUEST);
+
+        HeadTagRegistry registry = findRegistry(uiClass);
+        if (registry != null) {
+            registry.register(compiler.new RegistryBuilder(uiClass));
+            return createPlan(uiClass, compiler.tags);
+        }
+
+        compiler.processAnnotatedType(uiClass, null);
+
+        HeadTagSource source = uiClass.getAnnotation(HeadTagSource.class);
+        if (source != null) {
+            Class<?> sourceClass = HeadTagSourceReader.findDeclaringClass(
+                    uiClass, HeadTagSource.class);
+            for (String location : source.value()) {
+                compiler.addSourceTags(sourceClass, location);
+            }
+        }
+
+        // Use a linked set to keep the order deterministic
+        Class<?>[] nestedClasses = uiClass.getDeclaredClasses();
+        Arrays.sort(nestedClasses, CLASS_ORDER);
+        Set<Class<?>> generatorCandidates = new LinkedHashSet<Class<?>>(
+                Arrays.asList(nestedClasses));
+        if (generatorAnnotation != null) {
+            generatorCandidates.addAll(Arrays.asList(generatorAnnotation
+                    .value()));
+        }
+
+        for (Class<?> generatorClass : generatorCandidates) {
+            compiler.processGeneratorClass(generatorClass);
+        }
+
+        return createPlan(uiClass, compiler.tags);
+    }
+
+    private static HeadTagPlan createPlan(Class<?> uiClass,
+            List<HeadTagTemplate> tags) {
+        JsonLd[] jsonLds = uiClass.getAnnotationsByType(JsonLd.class);
+        if (jsonLds.length != 0) {
+            HeadTagGenerators generatorAnnotation = uiClass
+                    .getAnnotation(HeadTagGenerators.class);
+            GeneratorScope defaultScope = generatorAnnotation != null
+                    ? generatorAnnotation.scope() : GeneratorScope.REQUEST;
+            for (JsonLd jsonLd : jsonLds) {
+                tags.add(JsonLdTemplate.createTag(jsonLd, defaultScope));
+            }
+        }
+
+        InlineCriticalCss criticalCss = uiClass
+                .getAnnotation(InlineCriticalCss.class);
+        if (criticalCss != null) {
+            // First so that the styles apply before anything else is loaded
+            tags.add(0, CriticalCss.createTag(HeadTagSourceReader
+                    .findDeclaringClass(uiClass, InlineCriticalCss.class),
+                    criticalCss));
+        }
+        return new HeadTagPlan(tags);
+    }
+
+    /**
+     * Finds the registry generated at build time for a UI class.
+     *
+     * @param uiClass
+     *            the UI class to find a registry for
+     * @return the registry, or <code>null</code> if there is no registry
+     */
+    private static HeadTagRegistry findRegistry(Class<?> uiClass) {
+        String name = uiClass.getName();
+        Package uiPackage = uiClass.getPackage();
+        int packageLength = uiPackage == null ? 0
+                : uiPackage.getName().length() + 1;
+        String registryName = name.substring(0, packageLength)
+                + name.substring(packageLength).replace('$', '_')
+                + HeadTagRegistry.CLASS_NAME_SUFFIX;
+
+        try {
+            Class<?> registryClass = Class.forName(registryName, true,
+                    uiClass.getClassLoader());
+            if (!HeadTagRegistry.class.isAssignableFrom(registryClass)) {
+                return null;
+            }
+            return (HeadTagRegistry) registryClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            // No registry, use reflection instead
+            return null;
+        } catch (Exception e) {
+            throw new RuntimeException("Error creating head tag registry "
+                    + registryName, e);
+        }
+    }
+
+    private void processGeneratorClass(Class<?> generatorClass) {
+        // @Inherited does not inherit from interfaces, must check manually
+        for (Class<?> iface : generatorClass.getInterfaces()) {
+            processAnnotatedType(iface, generatorClass);
+        }
+
+        processAnnotatedType(generatorClass, generatorClass);
+    }
+
+    private void processAnnotatedType(Class<?> declaringClass,
+            Class<?> instanceClass) {
+        for (Annotation annotation : declaringClass.getAnnotations()) {
+            checkHeadTagAnnotation(annotation, declaringClass, instanceClass);
+        }
+    }
+
+    private void checkHeadTagAnnotation(Annotation annotation,
+            Class<?> declaringClass, Class<?> instanceClass) {
+        // Check if a path to a HeadTag meta annotation can be found
+        List<Annotation> headTagPath = findHeadTagPath(annotation);
+        if (headTagPath != null) {
+            addHeadTag(headTagPath, declaringClass, instanceClass);
+        } else {
+            // Check for an array value annotation
+            try {
+                Method method = annotation.annotationType().getMethod("value");
+                Class<?> type = method.getReturnType();
+                if (isAnnotationArray(type)) {
+                    Object array = method.invoke(annotation);
+                    int length = Array.getLength(array);
+                    for (int i = 0; i < length; i++) {
+                        Annotation member = (Annotation) Array.get(array, i);
+                        checkHeadTagAnnotation(member, declaringClass,
+                                instanceClass);
+                    }
+                }
+            } catch (NoSuchMethodException e) {
+                // Ignore, this is simply not a tag collection annotation
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static boolean isAnnotationArray(Class<?> type) {
+        return type.isArray()
+                && Annotation.class.isAssignableFrom(type.getComponentType());
+    }
+
+    private void addHeadTag(List<Annotation> headTagPath,
+            Class<?> declaringClass, Class<?> instanceClass) {
+        // Should be at least the meta annotation and a "normal" annotation
+        assert headTagPath.size() > 1;
+
+        // The first annotation in the path just defines the tag name
+        HeadTag tag = (HeadTag) headTagPath.get(0);
+
+        // Then iterate the rest of the path to find attribute values
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        List<RequestCondition> conditions = new ArrayList<RequestCondition>();
+        String content = null;
+        for (int i = 1; i < headTagPath.size(); i++) {
+            Annotation attribAnnotation = headTagPath.get(i);
+
+            for (Method method : getSortedMethods(attribAnnotation
+                    .annotationType().getDeclaredMethods())) {
+                if (method.getReturnType() == Condition[].class) {
+                    addConditions(conditions, attribAnnotation, method);
+                } else if (method.isAnnotationPresent(HeadTagContent.class)) {
+                    content = getContent(attribAnnotation, method);
+                } else {
+                    addAttribute(attributes, attribAnnotation, method);
+                }
+            }
+        }
+
+        GeneratorBinding generator = null;
+        if (instanceClass != null) {
+            generator = createGeneratorBinding(declaringClass, instanceClass);
+        }
+
+        tags.add(new HeadTagTemplate(tag.value(), attributes, content,
+                conditions, generator));
+    }
+
+    private static String getContent(Annotation annotation, Method method) {
+        try {
+            String content = (String) method.invoke(annotation);
+            return HeadTag.NULL_VALUE.equals(content) ? null : content;
+        } catch (Exception e) {
+            throw new RuntimeException(
+                    "Error processing @HeadTagContent method "
+                            + method.getDeclaringClass().getName() + "."
+                            + method.getName(), e);
+        }
+    }
+
+    private void addSourceTags(Class<?> sourceClass, String location) {
+        HeadTagSourceReader.read(sourceClass, location,
+                (tagName, attributes, conditions) -> tags
+                        .add(new HeadTagTemplate(tagName, attributes,
+                                conditions, null)));
+    }
+
+    private static void setAttribute(Map<String, String> attributes,
+            String name, String value) {
+        if (value == null || HeadTag.NULL_VALUE.equals(value)) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    private static void addAttribute(Map<String, String> attributes,
+            Annotation annotation, Method method) {
+        try {
+            Object value = method.invoke(annotation);
+            if (value instanceof Enum) {
+                value = getEnumAttributeValue((Enum<?>) value);
+            } else if (value instanceof Boolean) {
+                // Boolean attributes are either present or not
+                value = ((Boolean) value).booleanValue() ? ""
+                        : HeadTag.NULL_VALUE;
+            }
+            setAttribute(attributes, getHeadTagAttributeName(method),
+                    (String) value);
+        } catch (Exception e) {
+            throw new RuntimeException(
+                    "Error processing @HeadTag annotation method "
+                            + method.getDeclaringClass().getName() + "."
+                            + method.getName(), e);
+        }
+    }
+
+    private static void addConditions(List<RequestCondition> conditions,
+            Annotation annotation, Method method) {
+        try {
+            for (Condition condition : (Condition[]) method
+                    .invoke(annotation)) {
+                conditions.add(RequestCondition.create(condition));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(
+                    "Error processing @HeadTag condition method "
+                            + method.getDeclaringClass().getName() + "."
+                            + method.getName(), e);
+        }
+    }
+
+    private static String getEnumAttributeValue(Enum<?> value)
+            throws NoSuchFieldException {
+        HeadTagAttribute headTagAttribute = value.getDeclaringClass()
+                .getField(value.name()).getAnnotation(HeadTagAttribute.class);
+        if (headTagAttribute != null) {
+            return headTagAttribute.value();
+        } else {
+            // USE_CREDENTIALS -> use-credentials
+            return value.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private GeneratorBinding createGeneratorBinding(
+            Class<?> declaringClass, Class<?> instanceClass) {
+        List<GeneratorBinding.GeneratedAttribute> attributes = new ArrayList<GeneratorBinding.GeneratedAttribute>();
+        ParameterResolvers resolvers = ParameterResolvers.get(instanceClass);
+        for (Method method : getSortedMethods(declaringClass.getMethods())) {
+            // Static methods, e.g. a cache key method, are not generators
+            if (method.getDeclaringClass() == Object.class
+                    || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+
+            attributes.add(new GeneratorBinding.GeneratedAttribute(
+                    getHeadTagAttributeName(method), method, resolvers));
+        }
+
+        GeneratorScope scope = defaultScope;
+        GeneratorLifecycle lifecycle = instanceClass
+                .getAnnotation(GeneratorLifecycle.class);
+        if (lifecycle != null) {
+            scope = lifecycle.value();
+        }
+
+        return new GeneratorBinding(instanceClass, declaringClass, scope,
+                attributes);
+    }
+
+    private static Method[] getSortedMethods(Method[] methods) {
+        Arrays.sort(methods, METHOD_ORDER);
+        return methods;
+    }
+
+    /**
+     * Gets the attribute name corresponding to an annotation or generator
+     * method.
+     *
+     * @param method
+     *            the method to get an attribute name for
+     * @return the attribute name
+     */
+    static String getHeadTagAttributeName(Method method) {
+        HeadTagAttribute headTagAttribute = method
+                .getAnnotation(HeadTagAttribute.class);
+        if (headTagAttribute != null) {
+            return headTagAttribute.value();
+        } else {
+            // camelCase -> camel-case
+            StringBuilder b = new StringBuilder();
+            String methodName = method.getName();
+            for (int j = 0; j < methodName.length(); j++) {
+                char c = methodName.charAt(j);
+                if (Character.isUpperCase(c)) {
+                    b.append('-');
+                    b.append(Character.toLowerCase(c));
+                } else {
+                    b.append(c);
+                }
+            }
+            return b.toString();
+        }
+    }
+
+    private static List<Annotation> findHeadTagPath(Annotation annotation) {
+        // Recursively build a path to a @HeadTag
+
+        // Terminate recursion when reaching a @HeadTag
+        if (annotation instanceof HeadTag) {
+            List<Annotation> headTagPath = new ArrayList<Annotation>();
+            headTagPath.add(annotation);
+            return headTagPath;
+        }
+
+        // Recurse all meta annotations
+        Annotation[] annotations = annotation.annotationType().getAnnotations();
+        for (Annotation metaAnnotation : annotations) {
+            // Ignore built-in annotations
+            if (metaAnnotation.annotationType().getName()
+                    .startsWith("java.lang")) {
+                continue;
+            }
+
+            List<Annotation> headTagPath = findHeadTagPath(metaAnnotation);
+            if (headTagPath != null) {
+                headTagPath.add(annotation);
+                return headTagPath;
+            }
+        }
+
+        // Return without a result if nothing found
+        return null;
+    }
+
+    /**
+     * Adds tags from a {@link HeadTagRegistry} to the compiled plan.
+     */
+    private class RegistryBuilder implements HeadTagRegistry.Builder {
+        private final Class<?> uiClass;
+
+        private final ClassLoader classLoader;
+
+        private RegistryBuilder(Class<?> uiClass) {
+            this.uiClass = uiClass;
+            classLoader = uiClass.getClassLoader();
+        }
+
+        @Override
+        public void source(String location) {
+            // The registry doesn't know which class declared the location
+            addSourceTags(HeadTagSourceReader.findDeclaringClass(uiClass,
+                    HeadTagSource.class), location);
+        }
+
+        @Override
+        public HeadTagRegistry.TagBuilder tag(String tagName) {
+            return new HeadTagRegistry.TagBuilder() {
+                private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+                private final List<RequestCondition> conditions = new ArrayList<RequestCondition>();
+                private String content;
+                private GeneratorBinding generator;
+
+                @Override
+                public HeadTagRegistry.TagBuilder attribute(String name,
+                        String value) {
+                    setAttribute(attributes, name, value);
+                    return this;
+                }
+
+                @Override
+                public HeadTagRegistry.TagBuilder content(String content) {
+                    this.content = HeadTag.NULL_VALUE.equals(content) ? null
+                            : content;
+                    return this;
+                }
+
+                @Override
+                public HeadTagRegistry.TagBuilder condition(String header,
+                        String matches, String contains, boolean negate) {
+                    conditions.add(RequestCondition.create(header, matches,
+                            contains, negate));
+                    return this;
+                }
+
+                @Override
+                public HeadTagRegistry.TagBuilder generator(
+                        String declaringClassName, String instanceClassName) {
+                    generator = createGeneratorBinding(
+                            loadClass(declaringClassName),
+                            loadClass(instanceClassName));
+                    return this;
+                }
+
+                @Override
+                public void add() {
+                    tags.add(new HeadTagTemplate(tagName, attributes,
+                            content, conditions, generator));
+                }
+            };
+        }
+
+        private Class<?> loadClass(String name) {
+            try {
+                return Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(
+                        "Generator class referenced by head tag registry not found",
+                        e);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.vaadin.leif.headertags;
+
+/**
+ * Head tag definitions of a UI class that have been resolved at build time.
+ * Implementations are generated by
+ * {@link org.vaadin.leif.headertags.processor.HeadTagProcessor} and are not
+ * intended to be written by hand.
+ * <p>
+ * A registry for a UI class <code>com.example.MyUI</code> is named
+ * <code>com.example.MyUI_HeadTags</code>. For nested UI classes, the names of
+ * all enclosing classes are joined using <code>_</code>. If no registry is
+ * found for a UI class, its head tags are resolved using reflection instead.
+ */
+public interface HeadTagRegistry {
+
+    /**
+     * Suffix added to the UI class name to get the name of its registry.
+     */
+    public static final String CLASS_NAME_SUFFIX = "_HeadTags";
+
+    /**
+     * Receives the head tags defined in a registry.
+     */
+    public interface Builder {
+        /**
+         * Starts defining a new head tag. The tag is added once
+         * {@link TagBuilder#add()} is called.
+         *
+         * @param tagName
+         *            the HTML tag name
+         * @return a builder for the tag
+         */
+        public TagBuilder tag(String tagName);
+
+        /**
+         * Adds all head tags from a file, as defined by
+         * {@link HeadTagSource}. The file is read when the registry is used
+         * rather than at build time so that it can be changed without
+         * recompiling.
+         *
+         * @param location
+         *            the location of the file, relative to the UI class or
+         *            prefixed with <code>classpath:</code>
+         */
+        public void source(String location);
+    }
+
+    /**
+     * Receives the definition of a single head tag.
+     */
+    public interface TagBuilder {
+        /**
+         * Sets an attribute value. Setting the value to
+         * {@link HeadTag#NULL_VALUE} removes any previously set value.
+         *
+         * @param name
+         *            the attribute name
+         * @param value
+         *            the attribute value
+         * @return this builder
+         */
+        public TagBuilder attribute(String name, String value);
+
+        /**
+         * Sets the text content of the element. Setting the content to
+         * {@link HeadTag#NULL_VALUE} removes any previously set content.
+         *
+         * @param content
+         *            the text content
+         * @return this builder
+         */
+        public TagBuilder content(String content);
+
+        /**
+         * Adds a condition that must be fulfilled for the tag to be included.
+         * The parameters correspond to the attributes of {@link Condition}.
+         *
+         * @param header
+         *            the name of the request header to check
+         * @param matches
+         *            a regular expression to find in the header value, or
+         *            {@link HeadTag#NULL_VALUE}
+         * @param contains
+         *            a string to find in the header value, or
+         *            {@link HeadTag#NULL_VALUE}
+         * @param negate
+         *            whether to invert the result
+         * @return this builder
+         */
+        public TagBuilder condition(String header, String matches,
+                String contains, boolean negate);
+
+        /**
+         * Defines a generator that provides additional attribute values for
+         * each request.
+         *
+         * @param declaringClassName
+         *            the binary name of the class or interface that defines
+         *            the generator methods
+         * @param instanceClassName
+         *            the binary name of the generator class to instantiate
+         * @return this builder
+         */
+        public TagBuilder generator(String declaringClassName,
+                String instanceClassName);
+
+        /**
+         * Adds the tag defined by this builder.
+         */
+        public void add();
+    }
+
+    /**
+     * Registers all head tags of the UI class to a builder, in the order in
+     * which they should be added to the page.
+     *
+     * @param builder
+     *            the builder to register tags to
+     */
+    public void register(Builder builder);
+}
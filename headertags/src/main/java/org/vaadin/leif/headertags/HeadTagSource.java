@@ -0,0 +1,53 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines files with head tags for the host page of a UI class. This is
+ * useful for long lists of similar tags, such as icons and social media meta
+ * tags, that would be unwieldy to define as annotations.
+ * <p>
+ * A location starting with <code>classpath:</code> is loaded from the root of
+ * the class path of the UI class. Other locations are resolved relative to
+ * the class that declares the annotation, which may be a superclass of the UI
+ * class, in the same way as {@link Class#getResource(String)}.
+ * <p>
+ * Files ending with <code>.json</code> contain an array of objects. Each object
+ * has a <code>tag</code> property with the tag name, and the other properties
+ * are attributes. A <code>when</code> property can define an array of
+ * conditions with the same properties as {@link Condition}:
+ *
+ * <pre>
+ * [
+ *   { "tag": "meta", "property": "og:title", "content": "My app" },
+ *   { "tag": "link", "rel": "apple-touch-icon", "href": "icon-180.png",
+ *     "when": [ { "header": "User-Agent", "contains": "iPhone" } ] }
+ * ]
+ * </pre>
+ *
+ * Files ending with <code>.properties</code> define each tag using keys
+ * prefixed with the index of the tag, e.g. <code>1.tag=meta</code> and
+ * <code>1.name=description</code>. Tags are added in the order of their index.
+ * <p>
+ * The files are read once when the head tags of the UI class are compiled.
+ * The tags are added after the tags defined by annotations on the UI class and
+ * before the tags defined by generators, in the order the locations are
+ * defined.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface HeadTagSource {
+    /**
+     * The locations of the files to read.
+     *
+     * @return the file locations
+     */
+    String[] value();
+}
@@ -0,0 +1,474 @@
+package org.vaadin.leif.headertags;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Reads head tags from the files defined by {@link HeadTagSource}. JSON files
+ * are parsed as a stream, one tag at a time, so that large files don't need
+ * to be held in memory as a whole.
+ */
+final class HeadTagSourceReader {
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
+    /**
+     * Receives the tags read from a file.
+     */
+    @FunctionalInterface
+    interface TagConsumer {
+        /**
+         * Receives a tag.
+         *
+         * @param tagName
+         *            the tag name
+         * @param attributes
+         *            the attributes of the tag, in file order
+         * @param conditions
+         *            the conditions of the tag, or an empty list
+         */
+        void accept(String tagName, Map<String, String> attributes,
+                List<RequestCondition> conditions);
+    }
+
+    private final Reader reader;
+
+    private final String location;
+
+    private int line = 1;
+
+    /**
+     * A character that has been read but not consumed, or -2 if there is
+     * none.
+     */
+    private int peeked = -2;
+
+    private HeadTagSourceReader(Reader reader, String location) {
+        this.reader = reader;
+        this.location = location;
+    }
+
+    /**
+     * Finds the URL of a head tag source file.
+     *
+     * @param uiClass
+     *            the UI class that defines the location
+     * @param location
+     *            the location of the file
+     * @return the URL of the file, or <code>null</code> if it's not found
+     */
+    static URL resolve(Class<?> uiClass, String location) {
+        if (location.startsWith(CLASSPATH_PREFIX)) {
+            String path = location.substring(CLASSPATH_PREFIX.length());
+            while (path.startsWith("/")) {
+                path = path.substring(1);
+            }
+            ClassLoader classLoader = uiClass.getClassLoader();
+            return classLoader == null ? ClassLoader.getSystemResource(path)
+                    : classLoader.getResource(path);
+        }
+        return uiClass.getResource(location);
+    }
+
+    /**
+     * Finds the class that declares an inherited annotation. Relative
+     * locations in the annotation should be resolved against that class
+     * rather than against a subclass that might be in another package.
+     *
+     * @param uiClass
+     *            the UI class that has the annotation
+     * @param annotationType
+     *            the annotation type
+     * @return the class that declares the annotation, or the UI class if no
+     *         class in its hierarchy declares it
+     */
+    static Class<?> findDeclaringClass(Class<?> uiClass,
+            Class<? extends Annotation> annotationType) {
+        for (Class<?> type = uiClass; type != null; type = type
+                .getSuperclass()) {
+            if (type.getDeclaredAnnotation(annotationType) != null) {
+                return type;
+            }
+        }
+        return uiClass;
+    }
+
+    /**
+     * Gets the modification time of a head tag source file.
+     *
+     * @param uiClass
+     *            the UI class that defines the location
+     * @param location
+     *            the location of the file
+     * @return the modification time, or 0 if it's not known
+     */
+    static long getLastModified(Class<?> uiClass, String location) {
+        URL url = resolve(uiClass, location);
+        return url == null ? 0 : getLastModified(url);
+    }
+
+    /**
+     * Gets the modification time of a resource.
+     *
+     * @param url
+     *            the URL of the resource
+     * @return the modification time, or 0 if it's not known
+     */
+    static long getLastModified(URL url) {
+        try {
+            URLConnection connection = url.openConnection();
+            // Don't keep jar files open
+            connection.setUseCaches(false);
+            long lastModified = connection.getLastModified();
+            connection.getInputStream().close();
+            return lastModified;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads all tags from a head tag source file.
+     *
+     * @param uiClass
+     *            the UI class that defines the location
+     * @param location
+     *            the location of the file
+     * @param consumer
+     *            the consumer to pass the tags to, in file order
+     */
+    static void read(Class<?> uiClass, String location, TagConsumer consumer) {
+        URL url = resolve(uiClass, location);
+        if (url == null) {
+            throw new RuntimeException("Head tag source " + location
+                    + " for " + uiClass.getName() + " not found");
+        }
+        read(url, location, consumer);
+    }
+
+    /**
+     * Reads all tags from a resolved head tag source file.
+     *
+     * @param url
+     *            the URL of the file
+     * @param location
+     *            the location of the file, used for the file type and error
+     *            messages
+     * @param consumer
+     *            the consumer to pass the tags to, in file order
+     */
+    static void read(URL url, String location, TagConsumer consumer) {
+        try (InputStream stream = url.openStream()) {
+            if (location.endsWith(".properties")) {
+                readProperties(stream, location, consumer);
+            } else if (location.endsWith(".json")) {
+                new HeadTagSourceReader(new BufferedReader(
+                        new InputStreamReader(stream, StandardCharsets.UTF_8)),
+                        location).readJson(consumer);
+            } else {
+                throw new RuntimeException("Head tag source " + location
+                        + " should be a .json or .properties file");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading head tag source "
+                    + location, e);
+        }
+    }
+
+    private static void readProperties(InputStream stream, String location,
+            TagConsumer consumer) throws IOException {
+        // Properties doesn't keep the order, but load puts keys in file order
+        Map<String, String> entries = new LinkedHashMap<>();
+        new Properties() {
+            @Override
+            public synchronized Object put(Object key, Object value) {
+                entries.put((String) key, (String) value);
+                return null;
+            }
+        }.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+
+        TreeMap<Integer, Map<String, String>> tags = new TreeMap<>();
+        for (Entry<String, String> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            int separator = key.indexOf('.');
+            Integer index;
+            try {
+                index = separator == -1 ? null : Integer.valueOf(key
+                        .substring(0, separator));
+            } catch (NumberFormatException e) {
+                index = null;
+            }
+            if (index == null) {
+                throw new RuntimeException("Key " + key + " in head tag source "
+                        + location + " should be on the form index.attribute");
+            }
+            tags.computeIfAbsent(index, i -> new LinkedHashMap<>()).put(
+                    key.substring(separator + 1), entry.getValue());
+        }
+
+        for (Entry<Integer, Map<String, String>> entry : tags.entrySet()) {
+            Map<String, String> attributes = entry.getValue();
+            String tagName = attributes.remove("tag");
+            if (tagName == null) {
+                throw new RuntimeException("Tag " + entry.getKey()
+                        + " in head tag source " + location
+                        + " has no tag name");
+            }
+            consumer.accept(tagName, attributes,
+                    new ArrayList<RequestCondition>());
+        }
+    }
+
+    private void readJson(TagConsumer consumer) throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            read();
+        } else {
+            while (true) {
+                readJsonTag(consumer);
+                if (readSeparator(']')) {
+                    break;
+                }
+            }
+        }
+
+        if (peek() != -1) {
+            throw error("unexpected content after the tag array");
+        }
+    }
+
+    private void readJsonTag(TagConsumer consumer) throws IOException {
+        String tagName = null;
+        Map<String, String> attributes = new LinkedHashMap<>();
+        List<RequestCondition> conditions = new ArrayList<>();
+
+        expect('{');
+        if (peek() == '}') {
+            read();
+        } else {
+            while (true) {
+                String key = readString();
+                expect(':');
+                if ("tag".equals(key)) {
+                    tagName = readScalar();
+                } else if ("when".equals(key)) {
+                    readConditions(conditions);
+                } else {
+                    String value = readScalar();
+                    if (value != null) {
+                        attributes.put(key, value);
+                    }
+                }
+                if (readSeparator('}')) {
+                    break;
+                }
+            }
+        }
+
+        if (tagName == null) {
+            throw error("tag has no tag name");
+        }
+        consumer.accept(tagName, attributes, conditions);
+    }
+
+    private void readConditions(List<RequestCondition> conditions)
+            throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            read();
+            return;
+        }
+        while (true) {
+            String header = null;
+            String matches = HeadTag.NULL_VALUE;
+            String contains = HeadTag.NULL_VALUE;
+            boolean negate = false;
+
+            expect('{');
+            while (true) {
+                String key = readString();
+                expect(':');
+                String value = readScalar();
+                switch (key) {
+                case "header":
+                    header = value;
+                    break;
+                case "matches":
+                    matches = value;
+                    break;
+                case "contains":
+                    contains = value;
+                    break;
+                case "negate":
+                    negate = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw error("unknown condition property " + key);
+                }
+                if (readSeparator('}')) {
+                    break;
+                }
+            }
+
+            if (header == null) {
+                throw error("condition has no header");
+            }
+            conditions.add(RequestCondition.create(header, matches, contains,
+                    negate));
+
+            if (readSeparator(']')) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads a string, number or boolean as a string, or <code>null</code> for
+     * a JSON null.
+     */
+    private String readScalar() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            return readString();
+        }
+
+        StringBuilder value = new StringBuilder();
+        while (c != -1 && c != ',' && c != '}' && c != ']'
+                && !Character.isWhitespace(c)) {
+            value.append((char) read());
+            c = reader.read();
+            peeked = c;
+        }
+        String literal = value.toString();
+        if ("null".equals(literal)) {
+            return null;
+        } else if ("true".equals(literal) || "false".equals(literal)
+                || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+            return literal;
+        }
+        throw error("unexpected value " + literal);
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = reader.read();
+            if (c == -1 || c == '\n') {
+                throw error("unterminated string");
+            } else if (c == '"') {
+                return value.toString();
+            } else if (c == '\\') {
+                c = reader.read();
+                switch (c) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    char[] hex = new char[4];
+                    for (int i = 0; i < hex.length; i++) {
+                        int h = reader.read();
+                        if (Character.digit(h, 16) == -1) {
+                            throw error("invalid unicode escape");
+                        }
+                        hex[i] = (char) h;
+                    }
+                    value.append((char) Integer.parseInt(new String(hex), 16));
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    value.append((char) c);
+                    break;
+                default:
+                    throw error("invalid escape");
+                }
+            } else {
+                value.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads either a comma or the given end character.
+     *
+     * @return <code>true</code> if the end character was read,
+     *         <code>false</code> if a comma was read
+     */
+    private boolean readSeparator(char end) throws IOException {
+        int c = read();
+        if (c == end) {
+            return true;
+        } else if (c == ',') {
+            return false;
+        }
+        throw error("expected , or " + end);
+    }
+
+    private void expect(char expected) throws IOException {
+        if (read() != expected) {
+            throw error("expected " + expected);
+        }
+    }
+
+    /**
+     * Returns the next non-whitespace character without consuming it.
+     */
+    private int peek() throws IOException {
+        int c = read();
+        peeked = c;
+        return c;
+    }
+
+    /**
+     * Consumes and returns the next non-whitespace character, or -1 at the
+     * end of the input.
+     */
+    private int read() throws IOException {
+        int c;
+        if (peeked != -2) {
+            c = peeked;
+            peeked = -2;
+        } else {
+            c = reader.read();
+        }
+        while (c != -1 && Character.isWhitespace(c)) {
+            if (c == '\n') {
+                line++;
+            }
+            c = reader.read();
+        }
+        return c;
+    }
+
+    private RuntimeException error(String message) {
+        return new RuntimeException("Invalid head tag source " + location
+                + " at line " + line + ": " + message);
+    }
+}
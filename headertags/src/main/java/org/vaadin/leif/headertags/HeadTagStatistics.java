@@ -0,0 +1,247 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.vaadin.ui.UI;
+
+/**
+ * Instrumentation that collects head tag processing statistics and exposes
+ * them as an MBean named
+ * <code>org.vaadin.leif.headertags:type=HeadTagStatistics,service=<i>name</i></code>.
+ * Enabled by setting {@link HeaderTagHandler#INSTRUMENTATION_PARAMETER} to
+ * <code>jmx</code>.
+ */
+public class HeadTagStatistics implements HeadTagInstrumentation,
+        HeadTagStatisticsMBean, AutoCloseable {
+
+    /**
+     * Statistics of a single UI or generator class.
+     */
+    private static final class ClassStatistics {
+        private final RollingHistogram times = new RollingHistogram();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+    }
+
+    private final RollingHistogram pageTimes = new RollingHistogram();
+
+    private final ConcurrentHashMap<String, ClassStatistics> uiStatistics = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, ClassStatistics> generatorStatistics = new ConcurrentHashMap<>();
+
+    private final LongAdder pageCount = new LongAdder();
+    private final LongAdder generatorInvocations = new LongAdder();
+    private final LongAdder generatorFailures = new LongAdder();
+    private final LongAdder generatorTimeouts = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheLookups = new LongAdder();
+    private final LongAdder emittedTags = new LongAdder();
+    private final LongAdder replacedTags = new LongAdder();
+
+    private ObjectName objectName;
+
+    /**
+     * Creates statistics and registers them with the platform MBean server.
+     *
+     * @param serviceName
+     *            the name of the service, used in the MBean name
+     */
+    public HeadTagStatistics(String serviceName) {
+        try {
+            ObjectName name = new ObjectName(
+                    "org.vaadin.leif.headertags:type=HeadTagStatistics,service="
+                            + ObjectName.quote(String.valueOf(serviceName)));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            Logger.getLogger(HeadTagStatistics.class.getName()).log(
+                    Level.WARNING, "Could not register head tag statistics",
+                    e);
+        }
+    }
+
+    private static ClassStatistics getStatistics(
+            ConcurrentHashMap<String, ClassStatistics> map, Class<?> type) {
+        return map.computeIfAbsent(type.getName(), n -> new ClassStatistics());
+    }
+
+    private static double toMicros(double nanos) {
+        return nanos / 1000;
+    }
+
+    @Override
+    public void pageProcessed(Class<? extends UI> uiClass, long nanos,
+            int emittedTags, int replacedTags) {
+        pageTimes.record(nanos);
+        pageCount.increment();
+        this.emittedTags.add(emittedTags);
+        this.replacedTags.add(replacedTags);
+
+        ClassStatistics statistics = getStatistics(uiStatistics, uiClass);
+        statistics.times.record(nanos);
+        statistics.count.increment();
+    }
+
+    @Override
+    public void generatorInvoked(Class<?> generatorClass, long nanos) {
+        generatorInvocations.increment();
+
+        ClassStatistics statistics = getStatistics(generatorStatistics,
+                generatorClass);
+        statistics.times.record(nanos);
+        statistics.count.increment();
+    }
+
+    @Override
+    public void generatorFailed(Class<?> generatorClass, Throwable error) {
+        generatorFailures.increment();
+        getStatistics(generatorStatistics, generatorClass).failures
+                .increment();
+    }
+
+    @Override
+    public void generatorTimedOut(Class<?> generatorClass) {
+        generatorTimeouts.increment();
+        getStatistics(generatorStatistics, generatorClass).timeouts
+                .increment();
+    }
+
+    @Override
+    public void generatorCacheLookup(Class<?> generatorClass, boolean hit) {
+        cacheLookups.increment();
+        if (hit) {
+            cacheHits.increment();
+        }
+    }
+
+    @Override
+    public long getPageCount() {
+        return pageCount.sum();
+    }
+
+    @Override
+    public double getPageTimeMean() {
+        return toMicros(pageTimes.getMean());
+    }
+
+    @Override
+    public double getPageTime50thPercentile() {
+        return toMicros(pageTimes.getPercentile(50));
+    }
+
+    @Override
+    public double getPageTime99thPercentile() {
+        return toMicros(pageTimes.getPercentile(99));
+    }
+
+    @Override
+    public double getPageTimeMax() {
+        return toMicros(pageTimes.getMax());
+    }
+
+    @Override
+    public String[] getUiStatistics() {
+        return format(uiStatistics, false);
+    }
+
+    @Override
+    public String[] getGeneratorStatistics() {
+        return format(generatorStatistics, true);
+    }
+
+    private static String[] format(
+            ConcurrentHashMap<String, ClassStatistics> map,
+            boolean includeFailures) {
+        List<String> lines = new ArrayList<>();
+        for (Entry<String, ClassStatistics> entry : map.entrySet()) {
+            ClassStatistics statistics = entry.getValue();
+            StringBuilder line = new StringBuilder(entry.getKey())
+                    .append(": count=").append(statistics.count.sum())
+                    .append(", mean=")
+                    .append(toMicros(statistics.times.getMean()))
+                    .append(", p99=")
+                    .append(toMicros(statistics.times.getPercentile(99)));
+            if (includeFailures) {
+                line.append(", failures=").append(statistics.failures.sum())
+                        .append(", timeouts=")
+                        .append(statistics.timeouts.sum());
+            }
+            lines.add(line.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public long getGeneratorInvocations() {
+        return generatorInvocations.sum();
+    }
+
+    @Override
+    public long getGeneratorFailures() {
+        return generatorFailures.sum();
+    }
+
+    @Override
+    public long getGeneratorTimeouts() {
+        return generatorTimeouts.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long lookups = cacheLookups.sum();
+        return lookups == 0 ? 0 : (double) cacheHits.sum() / lookups;
+    }
+
+    @Override
+    public long getEmittedTags() {
+        return emittedTags.sum();
+    }
+
+    @Override
+    public long getReplacedTags() {
+        return replacedTags.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { pageCount,
+                generatorInvocations, generatorFailures, generatorTimeouts,
+                cacheHits, cacheLookups, emittedTags, replacedTags }) {
+            adder.reset();
+        }
+        uiStatistics.clear();
+        generatorStatistics.clear();
+    }
+
+    /**
+     * Unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        objectName);
+            } catch (JMException e) {
+                // Already unregistered
+            }
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.vaadin.leif.headertags;
+
+/**
+ * Management interface for {@link HeadTagStatistics}. All durations are in
+ * microseconds and cover approximately the last minute, while the counters
+ * cover the whole lifetime of the service.
+ */
+public interface HeadTagStatisticsMBean {
+    /**
+     * Gets the number of processed bootstrap pages.
+     *
+     * @return the page count
+     */
+    public long getPageCount();
+
+    /**
+     * Gets the mean head tag processing time per page.
+     *
+     * @return the mean time in microseconds
+     */
+    public double getPageTimeMean();
+
+    /**
+     * Gets the 50th percentile of the head tag processing time per page.
+     *
+     * @return the median time in microseconds
+     */
+    public double getPageTime50thPercentile();
+
+    /**
+     * Gets the 99th percentile of the head tag processing time per page.
+     *
+     * @return the 99th percentile time in microseconds
+     */
+    public double getPageTime99thPercentile();
+
+    /**
+     * Gets the longest head tag processing time for a page.
+     *
+     * @return the max time in microseconds
+     */
+    public double getPageTimeMax();
+
+    /**
+     * Gets the processing time statistics of each UI class, formatted as
+     * <code>class: count=n, mean=t, p99=t</code>.
+     *
+     * @return an array of UI statistics
+     */
+    public String[] getUiStatistics();
+
+    /**
+     * Gets the invocation statistics of each generator class, formatted as
+     * <code>class: count=n, mean=t, p99=t, failures=n, timeouts=n</code>.
+     *
+     * @return an array of generator statistics
+     */
+    public String[] getGeneratorStatistics();
+
+    /**
+     * Gets the total number of generator invocations.
+     *
+     * @return the generator invocation count
+     */
+    public long getGeneratorInvocations();
+
+    /**
+     * Gets the total number of generator failures.
+     *
+     * @return the generator failure count
+     */
+    public long getGeneratorFailures();
+
+    /**
+     * Gets the total number of generator timeouts.
+     *
+     * @return the generator timeout count
+     */
+    public long getGeneratorTimeouts();
+
+    /**
+     * Gets the share of generator cache lookups that found a cached value.
+     *
+     * @return the cache hit rate between 0 and 1, or 0 if there have been no
+     *         lookups
+     */
+    public double getCacheHitRate();
+
+    /**
+     * Gets the total number of tags added to bootstrap pages.
+     *
+     * @return the emitted tag count
+     */
+    public long getEmittedTags();
+
+    /**
+     * Gets the total number of existing tags that were replaced.
+     *
+     * @return the replaced tag count
+     */
+    public long getReplacedTags();
+
+    /**
+     * Resets all counters.
+     */
+    public void reset();
+}
@@ -0,0 +1,266 @@
+package org.vaadin.leif.headertags;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Element;
+
+import com.vaadin.server.VaadinRequest;
+
+/**
+ * A single compiled head tag: the tag name, the attribute values that were
+ * resolved from annotations when compiling the plan, optional text content,
+ * conditions for including the tag and an optional generator that provides
+ * additional attribute values for each request. Generated values can
+ * alternatively be written into the content of the tag using a
+ * {@link JsonLdTemplate}.
+ */
+final class HeadTagTemplate {
+    private final String tagName;
+
+    private final Map<String, String> attributes;
+
+    /**
+     * The text content of the element, or <code>null</code> if the element
+     * has no content.
+     */
+    private final String content;
+
+    private final GeneratorBinding generator;
+
+    /**
+     * Template for content built from the generated values, or
+     * <code>null</code> if generated values are attributes.
+     */
+    private final JsonLdTemplate contentTemplate;
+
+    private final List<RequestCondition> conditions;
+
+    /**
+     * Creates a new unconditional tag template.
+     *
+     * @param tagName
+     *            the HTML tag name
+     * @param attributes
+     *            the static attribute values, in the order they should be set
+     * @param generator
+     *            the generator to use for each request, or <code>null</code>
+     *            if the tag has no dynamic attributes
+     */
+    HeadTagTemplate(String tagName, Map<String, String> attributes,
+            GeneratorBinding generator) {
+        this(tagName, attributes, Collections.emptyList(), generator);
+    }
+
+    /**
+     * Creates a new tag template.
+     *
+     * @param tagName
+     *            the HTML tag name
+     * @param attributes
+     *            the static attribute values, in the order they should be set
+     * @param conditions
+     *            the conditions that must be fulfilled for the tag to be
+     *            included
+     * @param generator
+     *            the generator to use for each request, or <code>null</code>
+     *            if the tag has no dynamic attributes
+     */
+    HeadTagTemplate(String tagName, Map<String, String> attributes,
+            List<RequestCondition> conditions, GeneratorBinding generator) {
+        this(tagName, attributes, null, conditions, generator);
+    }
+
+    /**
+     * Creates a new tag template with text content.
+     *
+     * @param tagName
+     *            the HTML tag name
+     * @param attributes
+     *            the static attribute values, in the order they should be set
+     * @param content
+     *            the text content of the element, or <code>null</code> for an
+     *            element without content
+     * @param conditions
+     *            the conditions that must be fulfilled for the tag to be
+     *            included
+     * @param generator
+     *            the generator to use for each request, or <code>null</code>
+     *            if the tag has no dynamic attributes
+     */
+    HeadTagTemplate(String tagName, Map<String, String> attributes,
+            String content, List<RequestCondition> conditions,
+            GeneratorBinding generator) {
+        this(tagName, attributes, content, conditions, generator, null);
+    }
+
+    /**
+     * Creates a new tag template with content generated for each request.
+     *
+     * @param tagName
+     *            the HTML tag name
+     * @param attributes
+     *            the static attribute values, in the order they should be set
+     * @param conditions
+     *            the conditions that must be fulfilled for the tag to be
+     *            included
+     * @param generator
+     *            the generator that provides values for the content, not
+     *            <code>null</code>
+     * @param contentTemplate
+     *            the template that writes the generated values as the raw
+     *            content of the element, not <code>null</code>
+     */
+    HeadTagTemplate(String tagName, Map<String, String> attributes,
+            List<RequestCondition> conditions, GeneratorBinding generator,
+            JsonLdTemplate contentTemplate) {
+        this(tagName, attributes, null, conditions, generator,
+                contentTemplate);
+    }
+
+    private HeadTagTemplate(String tagName, Map<String, String> attributes,
+            String content, List<RequestCondition> conditions,
+            GeneratorBinding generator, JsonLdTemplate contentTemplate) {
+        if (content != null && isRawText(tagName)
+                && content.toLowerCase(Locale.ROOT).contains(
+                        "</" + tagName.toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("The content of a <" + tagName
+                    + "> tag cannot contain </" + tagName + ">");
+        }
+        this.tagName = tagName;
+        this.attributes = Collections
+                .unmodifiableMap(new LinkedHashMap<String, String>(attributes));
+        this.content = content;
+        this.conditions = Collections
+                .unmodifiableList(new ArrayList<RequestCondition>(conditions));
+        this.generator = generator;
+        this.contentTemplate = contentTemplate;
+    }
+
+    /**
+     * Creates a copy of this template with different static attributes.
+     *
+     * @param attributes
+     *            the static attribute values to use
+     * @return a new template, not <code>null</code>
+     */
+    HeadTagTemplate withAttributes(Map<String, String> attributes) {
+        return new HeadTagTemplate(tagName, attributes, content, conditions,
+                generator, contentTemplate);
+    }
+
+    String getTagName() {
+        return tagName;
+    }
+
+    Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    String getContent() {
+        return content;
+    }
+
+    /**
+     * Checks whether the content of an element is written as is instead of
+     * being escaped, which is the case for <code>script</code> and
+     * <code>style</code>.
+     *
+     * @param tagName
+     *            the tag name to check
+     * @return <code>true</code> if the content is raw text, otherwise
+     *         <code>false</code>
+     */
+    static boolean isRawText(String tagName) {
+        return "script".equalsIgnoreCase(tagName)
+                || "style".equalsIgnoreCase(tagName);
+    }
+
+    GeneratorBinding getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Gets the template that writes generated values as the content of the
+     * element instead of as attributes.
+     *
+     * @return the content template, or <code>null</code> if generated values
+     *         are attributes
+     */
+    JsonLdTemplate getContentTemplate() {
+        return contentTemplate;
+    }
+
+    List<RequestCondition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Checks whether this tag is the same for every request, i.e. whether it
+     * has neither a generator nor any conditions.
+     *
+     * @return <code>true</code> if the tag is static, otherwise
+     *         <code>false</code>
+     */
+    boolean isStatic() {
+        return generator == null && conditions.isEmpty();
+    }
+
+    /**
+     * Checks whether this tag should be included for a request.
+     *
+     * @param request
+     *            the request to check
+     * @return <code>true</code> if all conditions are fulfilled, otherwise
+     *         <code>false</code>
+     */
+    boolean isIncluded(VaadinRequest request) {
+        for (RequestCondition condition : conditions) {
+            if (!condition.test(request)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends an element based on this template to a head element, using
+     * already generated attribute values.
+     *
+     * @param head
+     *            the element to append to
+     * @param generatedValues
+     *            the values generated by the generator of this template, or
+     *            <code>null</code> if there is no generator
+     * @return the appended element
+     */
+    Element appendTo(Element head, String[] generatedValues) {
+        Element element = head.appendElement(tagName);
+        for (Entry<String, String> entry : attributes.entrySet()) {
+            element.attr(entry.getKey(), entry.getValue());
+        }
+
+        if (contentTemplate != null) {
+            element.appendChild(new DataNode(contentTemplate
+                    .write(generatedValues), element.baseUri()));
+        } else if (generatedValues != null) {
+            generator.applyValues(element, generatedValues);
+        }
+
+        if (content != null) {
+            if (isRawText(tagName)) {
+                element.appendChild(new DataNode(content, element.baseUri()));
+            } else {
+                element.appendText(content);
+            }
+        }
+
+        return element;
+    }
+}
@@ -0,0 +1,422 @@
+package org.vaadin.leif.headertags;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Document.OutputSettings;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+
+/**
+ * Writes the tags of a plan as pre-serialized HTML instead of building an
+ * element for each tag. Consecutive tags that can never replace an existing
+ * element are written into a single {@link DataNode} whose content is output
+ * as is when the bootstrap page is serialized. Tags that might replace
+ * existing elements are still created as elements so that the
+ * {@link HeadMerger} can find them.
+ * <p>
+ * The markup for static attributes is escaped when the writer is created, so
+ * only generated values need to be escaped for each request. The markup is
+ * written with the default output settings of a jsoup document, which is what
+ * Vaadin uses for the bootstrap page. A page with other output settings must
+ * be written with elements instead, see {@link #supports(OutputSettings)}.
+ * Settings that are changed after the head tags have been added, e.g. by a
+ * bootstrap listener that runs later, can't be detected.
+ */
+final class HeadTagWriter {
+
+    /**
+     * Buffers larger than this are not kept for reuse.
+     */
+    private static final int MAX_REUSED_CAPACITY = 8192;
+
+    /**
+     * Marks the location of generated values in markup written by jsoup.
+     */
+    private static final String PLACEHOLDER = "\u0000";
+
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
+    /**
+     * Pre-serialized form of a single tag. The markup is split into literal
+     * parts around the attributes that a generator provides values for, so
+     * that generated attributes end up in the same location as with an
+     * element.
+     */
+    private static final class SerializedTag {
+        /**
+         * Literal markup, one more than the number of slots.
+         */
+        private final String[] literals;
+
+        /**
+         * Index of the generated value for each slot.
+         */
+        private final int[] slots;
+
+        /**
+         * The <code> name="</code> markup for each slot.
+         */
+        private final String[] slotPrefixes;
+
+        /**
+         * Whether each slot is a boolean attribute that is written without a
+         * value when the value is empty or the same as the name.
+         */
+        private final boolean[] collapsible;
+
+        /**
+         * Template for writing the generated values as content between the
+         * two literals, or <code>null</code> if values are written into
+         * slots.
+         */
+        private final JsonLdTemplate contentTemplate;
+
+        private SerializedTag(String[] literals, int[] slots,
+                String[] slotPrefixes, boolean[] collapsible,
+                JsonLdTemplate contentTemplate) {
+            this.literals = literals;
+            this.slots = slots;
+            this.slotPrefixes = slotPrefixes;
+            this.collapsible = collapsible;
+            this.contentTemplate = contentTemplate;
+        }
+
+        private void write(StringBuilder buffer, String[] generatedValues) {
+            buffer.append(literals[0]);
+            if (contentTemplate != null) {
+                contentTemplate.write(buffer, generatedValues);
+                buffer.append(literals[1]);
+                return;
+            }
+            for (int i = 0; i < slots.length; i++) {
+                String value = generatedValues[slots[i]];
+                if (value == null || HeadTag.NULL_VALUE.equals(value)) {
+                    // Removed, like an element attribute
+                } else if (collapsible[i] && isCollapsed(slotPrefixes[i],
+                        value)) {
+                    buffer.append(slotPrefixes[i], 0,
+                            slotPrefixes[i].length() - 2);
+                } else {
+                    buffer.append(slotPrefixes[i]);
+                    escape(value, buffer);
+                    buffer.append('"');
+                }
+                buffer.append(literals[i + 1]);
+            }
+        }
+
+        /**
+         * Checks whether jsoup writes a boolean attribute without a value.
+         *
+         * @param slotPrefix
+         *            the <code> name="</code> markup of the attribute
+         * @param value
+         *            the value of the attribute
+         */
+        private static boolean isCollapsed(String slotPrefix, String value) {
+            return value.isEmpty() || value.length() == slotPrefix.length() - 3
+                    && slotPrefix.regionMatches(true, 1, value, 0,
+                            value.length());
+        }
+    }
+
+    private final HeadTagPlan plan;
+
+    /**
+     * The settings that the markup is written with.
+     */
+    private final OutputSettings outputSettings = new OutputSettings();
+
+    /**
+     * The serialized form of each tag of the plan, or <code>null</code> for
+     * tags that are created as elements.
+     */
+    private final SerializedTag[] serializedTags;
+
+    /**
+     * Complete markup for each run of serialized static tags, indexed by the
+     * position of the first tag of the run.
+     */
+    private final String[] staticRuns;
+
+    /**
+     * Creates a writer for the tags of a plan.
+     *
+     * @param plan
+     *            the plan to write
+     * @param merger
+     *            the merger that decides which tags must remain elements
+     */
+    HeadTagWriter(HeadTagPlan plan, HeadMerger merger) {
+        this.plan = plan;
+
+        List<HeadTagTemplate> tags = plan.getTags();
+        serializedTags = new SerializedTag[tags.size()];
+        for (int i = 0; i < serializedTags.length; i++) {
+            HeadTagTemplate tag = tags.get(i);
+            if (!merger.mayReplace(tag)) {
+                serializedTags[i] = serialize(tag, outputSettings);
+            }
+        }
+
+        staticRuns = new String[serializedTags.length];
+        StringBuilder run = new StringBuilder();
+        for (int i = serializedTags.length - 1; i >= 0; i--) {
+            SerializedTag tag = serializedTags[i];
+            if (tag != null && tags.get(i).isStatic()) {
+                run.insert(0, tag.literals[0]);
+                staticRuns[i] = run.toString();
+            } else {
+                run.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Gets the plan that this writer writes.
+     *
+     * @return the plan, not <code>null</code>
+     */
+    HeadTagPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Checks whether the markup of this writer is the same as what a document
+     * with the given output settings would write for elements.
+     *
+     * @param settings
+     *            the output settings of the bootstrap page
+     * @return <code>true</code> if this writer can be used for the page,
+     *         otherwise <code>false</code>
+     */
+    boolean supports(OutputSettings settings) {
+        return settings.prettyPrint() == outputSettings.prettyPrint()
+                && settings.outline() == outputSettings.outline()
+                && settings.indentAmount() == outputSettings.indentAmount()
+                && settings.escapeMode() == outputSettings.escapeMode()
+                && settings.syntax() == outputSettings.syntax()
+                && settings.charset().equals(outputSettings.charset());
+    }
+
+    /**
+     * Creates a detached head with the tags of the plan for a request.
+     *
+     * @param baseUri
+     *            the base URI to use for the created nodes
+     * @param values
+     *            the values generated by {@link HeadTagPlan#generateValues}
+     *            for the plan of this writer
+     * @return a new head element, not <code>null</code>
+     */
+    Element createHead(String baseUri, String[][] values) {
+        Element head = new Element(Tag.valueOf("head"), baseUri);
+        List<HeadTagTemplate> tags = plan.getTags();
+
+        StringBuilder buffer = null;
+        int i = 0;
+        while (i < serializedTags.length) {
+            if (serializedTags[i] == null) {
+                if (values[i] != HeadTagPlan.EXCLUDED) {
+                    tags.get(i).appendTo(head, values[i]);
+                }
+                i++;
+            } else if (staticRuns[i] != null && !continuesAfter(i)) {
+                // Nothing to combine with, use the precomputed markup as is
+                head.appendChild(new DataNode(staticRuns[i], baseUri));
+                i = endOfRun(i);
+            } else {
+                if (buffer == null) {
+                    buffer = buffers.get();
+                }
+                buffer.setLength(0);
+                while (i < serializedTags.length && serializedTags[i] != null) {
+                    if (staticRuns[i] != null) {
+                        buffer.append(staticRuns[i]);
+                        i = endOfRun(i);
+                    } else {
+                        if (values[i] != HeadTagPlan.EXCLUDED) {
+                            serializedTags[i].write(buffer, values[i]);
+                        }
+                        i++;
+                    }
+                }
+                if (buffer.length() != 0) {
+                    head.appendChild(new DataNode(buffer.toString(), baseUri));
+                }
+            }
+        }
+
+        if (buffer != null && buffer.capacity() > MAX_REUSED_CAPACITY) {
+            buffers.remove();
+        }
+
+        return head;
+    }
+
+    private int endOfRun(int index) {
+        while (index < staticRuns.length && staticRuns[index] != null) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether the serialized tags starting from the given static run
+     * continue with a generated tag after the run ends.
+     */
+    private boolean continuesAfter(int index) {
+        int end = endOfRun(index);
+        return end < serializedTags.length && serializedTags[end] != null;
+    }
+
+    private static SerializedTag serialize(HeadTagTemplate template,
+            OutputSettings settings) {
+        if (containsPlaceholder(template)) {
+            // Can't be told apart from generated values
+            return null;
+        }
+        GeneratorBinding generator = template.getGenerator();
+
+        JsonLdTemplate contentTemplate = template.getContentTemplate();
+        if (contentTemplate != null) {
+            // Generated values are content, only static attributes
+            String markup = render(new HeadTagTemplate(
+                    template.getTagName(), template.getAttributes(),
+                    PLACEHOLDER, Collections.emptyList(), null), null,
+                    settings);
+            int index = markup.indexOf(PLACEHOLDER);
+            return new SerializedTag(new String[] {
+                    markup.substring(0, index),
+                    markup.substring(index + PLACEHOLDER.length()) },
+                    new int[0], new String[0], new boolean[0],
+                    contentTemplate);
+        }
+
+        String[] placeholders = null;
+        if (generator != null) {
+            List<GeneratorBinding.GeneratedAttribute> attributes = generator
+                    .getAttributes();
+            Set<String> names = new HashSet<>();
+            placeholders = new String[attributes.size()];
+            for (int i = 0; i < placeholders.length; i++) {
+                if (!names.add(attributes.get(i).getName().toLowerCase(
+                        Locale.ROOT))) {
+                    // Order depends on the values, let jsoup deal with it
+                    return null;
+                }
+                placeholders[i] = PLACEHOLDER + i + PLACEHOLDER;
+            }
+        }
+
+        /*
+         * Let jsoup write the tag with a placeholder for each generated value
+         * and split the markup around the placeholders, so that everything
+         * but the generated values is exactly what an element would produce.
+         */
+        String markup = render(template, placeholders, settings);
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<String> slotPrefixes = new ArrayList<>();
+        int position = 0;
+        int index;
+        while ((index = markup.indexOf(PLACEHOLDER, position)) != -1) {
+            int end = markup.indexOf(PLACEHOLDER, index + 1);
+            int slot = Integer.parseInt(markup.substring(index + 1, end));
+
+            // The value is preceded by ' name="' and followed by '"'
+            int prefixStart = markup.lastIndexOf(' ', index);
+            literals.add(markup.substring(position, prefixStart));
+            slots.add(Integer.valueOf(slot));
+            slotPrefixes.add(markup.substring(prefixStart, index));
+            position = end + 2;
+        }
+        literals.add(markup.substring(position));
+
+        int[] slotIndexes = new int[slots.size()];
+        boolean[] collapsible = new boolean[slots.size()];
+        for (int i = 0; i < slotIndexes.length; i++) {
+            slotIndexes[i] = slots.get(i).intValue();
+            String prefix = slotPrefixes.get(i);
+            String name = prefix.substring(1, prefix.length() - 2);
+            collapsible[i] = new Attribute(name, "").html().equals(name);
+        }
+
+        return new SerializedTag(literals.toArray(new String[literals.size()]),
+                slotIndexes, slotPrefixes.toArray(new String[slotPrefixes
+                        .size()]), collapsible, null);
+    }
+
+    private static boolean containsPlaceholder(HeadTagTemplate template) {
+        String content = template.getContent();
+        if (content != null && content.contains(PLACEHOLDER)) {
+            return true;
+        }
+        for (String value : template.getAttributes().values()) {
+            if (value.contains(PLACEHOLDER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a tag in the same way as it would be written as a child of the
+     * head of a bootstrap page, including the indentation.
+     */
+    private static String render(HeadTagTemplate template,
+            String[] generatedValues, OutputSettings settings) {
+        Document document = Document.createShell("");
+        document.outputSettings(settings.clone());
+        template.appendTo(document.head(), generatedValues);
+        String html = document.outerHtml();
+        int start = html.indexOf("<head>") + "<head>".length();
+        int end = html.indexOf("</head>");
+        while (Character.isWhitespace(html.charAt(end - 1))) {
+            end--;
+        }
+        return html.substring(start, end);
+    }
+
+    /**
+     * Escapes an attribute value for use inside double quotes in the same way
+     * as jsoup does for attributes of elements.
+     *
+     * @param value
+     *            the value to escape
+     * @param buffer
+     *            the buffer to write to
+     */
+    static void escape(String value, StringBuilder buffer) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                buffer.append("&amp;");
+                break;
+            case '"':
+                buffer.append("&quot;");
+                break;
+            case '\u00A0':
+                buffer.append("&nbsp;");
+                break;
+            default:
+                buffer.append(c);
+            }
+        }
+    }
+}
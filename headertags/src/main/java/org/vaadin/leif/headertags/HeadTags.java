@@ -0,0 +1,314 @@
+package org.vaadin.leif.headertags;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.jsoup.nodes.Element;
+
+import com.vaadin.server.VaadinSession;
+
+/**
+ * Head tags defined at runtime, e.g. for branding in a multi-tenant
+ * application. The tags of the instance used by a session are added to each
+ * bootstrap page of the session after the tags defined by annotations.
+ * <p>
+ * Tags are grouped by a replacement key on the form
+ * <code>tag[attribute=value]</code>, e.g.
+ * <code>meta[name=theme-color]</code>. The tag name and the key attribute of
+ * each tag are taken from its key. Tags for a key replace any elements with
+ * the same key in the bootstrap page, including elements created from
+ * annotations, in their original location:
+ *
+ * <pre>
+ * HeadTags.forSession(session).put("meta[name=theme-color]",
+ *         Collections.singletonMap("content", tenant.getColor()));
+ * </pre>
+ *
+ * An instance can be used from any thread. Changes are applied to an
+ * immutable snapshot that is replaced atomically, so that bootstrap requests
+ * can read the current tags without locking. A single instance can be shared
+ * by many sessions, e.g. one instance for each tenant, using
+ * {@link #setForSession(VaadinSession, HeadTags)}.
+ */
+public final class HeadTags implements Serializable {
+
+    /**
+     * Immutable state of the tags. The plan and merger are derived from the
+     * definitions when the snapshot is created so that bootstrap requests
+     * can use them as is.
+     */
+    static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(
+                Collections.emptyMap());
+
+        /**
+         * Attributes of each tag by replacement key, including the key
+         * attribute.
+         */
+        private final Map<String, List<Map<String, String>>> definitions;
+
+        private final HeadTagPlan plan;
+
+        private final HeadMerger merger;
+
+        private Snapshot(Map<String, List<Map<String, String>>> definitions) {
+            this.definitions = Collections.unmodifiableMap(definitions);
+
+            List<HeadTagTemplate> tags = new ArrayList<>();
+            for (Entry<String, List<Map<String, String>>> entry : definitions
+                    .entrySet()) {
+                String tagName = HeadMerger.parseKey(entry.getKey())[0];
+                for (Map<String, String> attributes : entry.getValue()) {
+                    tags.add(new HeadTagTemplate(tagName, attributes, null));
+                }
+            }
+            plan = new HeadTagPlan(tags);
+            merger = new HeadMerger(String.join(",", definitions.keySet()));
+        }
+
+        /**
+         * Gets the number of tags.
+         *
+         * @return the number of tags
+         */
+        int getTagCount() {
+            return plan.getTags().size();
+        }
+
+        /**
+         * Checks whether any of these tags might replace an element created
+         * from the tags of a plan.
+         *
+         * @param other
+         *            the plan to check
+         * @return <code>true</code> if the tags of the plan must be created
+         *         as elements, otherwise <code>false</code>
+         */
+        boolean mayReplace(HeadTagPlan other) {
+            if (definitions.isEmpty()) {
+                return false;
+            }
+            for (HeadTagTemplate tag : other.getTags()) {
+                if (merger.mayReplace(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Merges these tags into the head of a bootstrap page.
+         *
+         * @param realHead
+         *            the head element of the bootstrap page
+         * @param context
+         *            the context of the bootstrap request
+         * @param environment
+         *            the generator environment of the current service
+         * @return the number of existing elements that were replaced
+         */
+        int merge(Element realHead, GeneratorContext context,
+                GeneratorEnvironment environment) {
+            if (definitions.isEmpty()) {
+                return 0;
+            }
+            return merger.merge(realHead, plan.createHead(realHead.baseUri(),
+                    context, environment));
+        }
+    }
+
+    private transient AtomicReference<Snapshot> snapshot = new AtomicReference<>(
+            Snapshot.EMPTY);
+
+    /**
+     * Creates an empty set of head tags. The instance is not used for any
+     * session until it's set using
+     * {@link #setForSession(VaadinSession, HeadTags)}.
+     */
+    public HeadTags() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Gets the head tags used by a session, creating and setting an empty
+     * instance if there is none.
+     *
+     * @param session
+     *            the session to get head tags for, not <code>null</code>
+     * @return the head tags of the session, not <code>null</code>
+     */
+    public static HeadTags forSession(VaadinSession session) {
+        session.lock();
+        try {
+            HeadTags tags = session.getAttribute(HeadTags.class);
+            if (tags == null) {
+                tags = new HeadTags();
+                session.setAttribute(HeadTags.class, tags);
+            }
+            return tags;
+        } finally {
+            session.unlock();
+        }
+    }
+
+    /**
+     * Sets the head tags to use for a session. The same instance can be used
+     * by multiple sessions.
+     *
+     * @param session
+     *            the session to set head tags for, not <code>null</code>
+     * @param tags
+     *            the head tags to use, or <code>null</code> to not add any
+     *            tags for the session
+     */
+    public static void setForSession(VaadinSession session, HeadTags tags) {
+        session.lock();
+        try {
+            session.setAttribute(HeadTags.class, tags);
+        } finally {
+            session.unlock();
+        }
+    }
+
+    /**
+     * Gets the head tags of a session without creating an instance. The
+     * session must be locked.
+     *
+     * @param session
+     *            the session to get head tags for
+     * @return the head tags, or <code>null</code> if there are none
+     */
+    static HeadTags find(VaadinSession session) {
+        return session == null ? null : session.getAttribute(HeadTags.class);
+    }
+
+    /**
+     * Sets the tags for a replacement key, replacing any previous tags for
+     * the same key. Keys are matched in the same way as elements, so the tag
+     * name, the attribute name and the attribute value are not case
+     * sensitive. The key attribute is added to each tag, the other
+     * attributes are added in iteration order.
+     *
+     * @param key
+     *            the replacement key on the form
+     *            <code>tag[attribute=value]</code>, not <code>null</code>
+     * @param tags
+     *            the attributes of each tag to add for the key
+     * @throws IllegalArgumentException
+     *             if the key is not valid or if the attributes of a tag
+     *             define another value for the key attribute
+     */
+    @SafeVarargs
+    public final void put(String key, Map<String, String>... tags) {
+        String[] parts = HeadMerger.parseKey(key);
+        if (key.indexOf(',') != -1) {
+            throw new IllegalArgumentException(
+                    "Replacement key cannot contain a comma: " + key);
+        }
+
+        List<Map<String, String>> definitions = new ArrayList<>();
+        for (Map<String, String> attributes : tags) {
+            Map<String, String> definition = new LinkedHashMap<>();
+            definition.put(parts[1], parts[2]);
+            for (Entry<String, String> attribute : attributes.entrySet()) {
+                if (!parts[1].equalsIgnoreCase(attribute.getKey())) {
+                    definition.put(attribute.getKey(), attribute.getValue());
+                } else if (!parts[2].equals(attribute.getValue())) {
+                    throw new IllegalArgumentException("The attribute "
+                            + attribute.getKey() + "=" + attribute.getValue()
+                            + " doesn't match the replacement key " + key);
+                }
+            }
+            definitions.add(Collections.unmodifiableMap(definition));
+        }
+        String normalizedKey = HeadMerger.normalizeKey(key);
+        update(map -> map.put(normalizedKey,
+                Collections.unmodifiableList(definitions)));
+    }
+
+    /**
+     * Removes the tags for a replacement key.
+     *
+     * @param key
+     *            the replacement key of the tags to remove, matched in the
+     *            same way as by {@link #put(String, Map...)}
+     * @throws IllegalArgumentException
+     *             if the key is not valid
+     */
+    public void remove(String key) {
+        String normalizedKey = HeadMerger.normalizeKey(key);
+        update(map -> map.remove(normalizedKey));
+    }
+
+    /**
+     * Removes all tags.
+     */
+    public void clear() {
+        snapshot.set(Snapshot.EMPTY);
+    }
+
+    /**
+     * Checks whether there are any tags.
+     *
+     * @return <code>true</code> if there are no tags, otherwise
+     *         <code>false</code>
+     */
+    public boolean isEmpty() {
+        return snapshot.get().definitions.isEmpty();
+    }
+
+    private void update(
+            Consumer<Map<String, List<Map<String, String>>>> change) {
+        snapshot.updateAndGet(current -> {
+            Map<String, List<Map<String, String>>> definitions = new LinkedHashMap<>(
+                    current.definitions);
+            change.accept(definitions);
+            return definitions.isEmpty() ? Snapshot.EMPTY
+                    : new Snapshot(definitions);
+        });
+    }
+
+    /**
+     * Gets the current tags. The snapshot is not affected by later changes,
+     * so that a bootstrap request uses the same tags throughout.
+     *
+     * @return the current snapshot, not <code>null</code>
+     */
+    Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Map<String, List<Map<String, String>>> definitions = new LinkedHashMap<>();
+        for (Entry<String, List<Map<String, String>>> entry : snapshot.get().definitions
+                .entrySet()) {
+            List<Map<String, String>> tags = new ArrayList<>();
+            for (Map<String, String> attributes : entry.getValue()) {
+                tags.add(new LinkedHashMap<>(attributes));
+            }
+            definitions.put(entry.getKey(), tags);
+        }
+        out.writeObject(definitions);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        Map<String, List<Map<String, String>>> definitions = (Map<String, List<Map<String, String>>>) in
+                .readObject();
+        snapshot = new AtomicReference<>(definitions.isEmpty() ? Snapshot.EMPTY
+                : new Snapshot(definitions));
+    }
+}
@@ -1,285 +1,544 @@
 package org.vaadin.leif.headertags;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Array;
-import java.lang.reflect.Method;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.jsoup.nodes.Element;
-import org.jsoup.parser.Tag;
-import org.jsoup.select.Elements;
 
 import com.vaadin.server.BootstrapFragmentResponse;
 import com.vaadin.server.BootstrapListener;
 import com.vaadin.server.BootstrapPageResponse;
-import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.DeploymentConfiguration;
+import com.vaadin.server.ServiceInitEvent;
+import com.vaadin.server.VaadinResponse;
 import com.vaadin.server.VaadinService;
 import com.vaadin.ui.UI;
 
 public class HeaderTagHandler implements BootstrapListener {
 
     /**
-     * Keeps track the {@link VaadinService} instances for which the handler has
-     * been inited.
+     * Init parameter for defining which elements replace existing elements in
+     * their original location instead of being added to the end of the head
+     * tag. The value is a comma separated list of keys on the form
+     * <code>tag[attribute=value]</code>. The default is
+     * <code>meta[http-equiv=Content-Type], meta[http-equiv=X-UA-Compatible],
+     * link[rel=shortcut icon], link[rel=icon]</code>.
      */
-    private static final ConcurrentHashMap<VaadinService, Boolean> initedServices = new ConcurrentHashMap<>();
+    public static final String REPLACE_IN_PLACE_PARAMETER = "headertags.replaceInPlace";
 
-    @Override
-    public void modifyBootstrapFragment(BootstrapFragmentResponse response) {
-        // Nothing to do here
-    }
+    /**
+     * The handler of each {@link VaadinService} for which the handler has been
+     * inited. Both keys and values are weakly referenced so that the map
+     * doesn't prevent an undeployed application from being unloaded even if
+     * its service is never destroyed.
+     */
+    private static final Map<VaadinService, WeakReference<HeaderTagHandler>> handlers = Collections
+            .synchronizedMap(new WeakHashMap<>());
 
-    @Override
-    public void modifyBootstrapPage(BootstrapPageResponse response) {
-        Class<? extends UI> uiClass = response.getUiClass();
+    /**
+     * Init parameter for running the generators of a UI in parallel instead of
+     * sequentially on the request thread. Default is <code>false</code>.
+     * Generators run in parallel do not have access to thread local
+     * instances such as {@link VaadinService#getCurrent()}.
+     */
+    public static final String PARALLEL_GENERATORS_PARAMETER = "headertags.parallelGenerators";
 
-        /*
-         * Append to a fake head tag so we can distinguish between original and
-         * new head tags.
-         */
-        Element fakeHead = new Element(Tag.valueOf("head"), response
-                .getDocument().baseUri());
+    /**
+     * Init parameter defining the executor for parallel generators. The value
+     * is either a number of threads or <code>virtual</code> to use virtual
+     * threads when running on a JDK that supports them. Defaults to the
+     * number of available processors.
+     */
+    public static final String GENERATOR_EXECUTOR_PARAMETER = "headertags.generatorExecutor";
 
-        appendHeadTagAnnotations(fakeHead, uiClass, response.getRequest());
+    /**
+     * Init parameter defining the number of milliseconds to wait for a
+     * parallel generator that doesn't define its own
+     * {@link GeneratorTimeout}. Default is 1000.
+     */
+    public static final String GENERATOR_TIMEOUT_PARAMETER = "headertags.generatorTimeout";
 
-        Element realHead = response.getDocument().head();
+    /**
+     * Init parameter for measuring head tag processing. The value is either
+     * <code>jmx</code> to expose statistics through {@link HeadTagStatistics}
+     * or the name of a {@link HeadTagInstrumentation} implementation class. No
+     * measurements are taken by default.
+     */
+    public static final String INSTRUMENTATION_PARAMETER = "headertags.instrumentation";
 
-        // Replace some specific elements into specific location
-        replaceIfPresent("meta[http-equiv=Content-Type]", realHead, fakeHead);
-        replaceIfPresent("meta[http-equiv=X-UA-Compatible]", realHead, fakeHead);
-        replaceIfPresent("link[rel=shortcut icon]", realHead, fakeHead);
-        replaceIfPresent("link[rel=icon]", realHead, fakeHead);
+    /**
+     * Init parameter for writing head tags as pre-serialized HTML instead of
+     * creating an element for each tag. Default is <code>false</code>. When
+     * enabled, tags that don't match a replacement key are not available as
+     * elements to other bootstrap listeners. The pre-serialized HTML assumes
+     * the default jsoup output settings, so elements are still created if an
+     * earlier listener has changed the output settings of the page, but a
+     * later listener must not change them.
+     */
+    public static final String STREAMING_OUTPUT_PARAMETER = "headertags.streamingOutput";
 
-        // Dump remaining elements to the end of the head tag
-        for (Element element : fakeHead.children()) {
-            realHead.appendChild(element);
-        }
-    }
+    /**
+     * Init parameter for serving local resources referenced by
+     * <code>link</code> tags from URLs that contain a hash of the content, so
+     * that browsers can cache them forever. Default is <code>false</code>.
+     */
+    public static final String FINGERPRINT_RESOURCES_PARAMETER = "headertags.fingerprintResources";
 
-    private void replaceIfPresent(String selector, Element realHead,
-            Element fakeHead) {
-        Elements newElements = fakeHead.select(selector);
-        if (!newElements.isEmpty()) {
-            Elements oldElements = realHead.select(selector);
-            if (!oldElements.isEmpty()) {
-                for (Element element : newElements) {
-                    oldElements.first().before(element);
-                }
-                oldElements.remove();
+    /**
+     * Init parameter for mirroring static <code>link</code> tags into
+     * <code>Link</code> headers of the bootstrap response. The value is a
+     * comma separated list of <code>rel</code> values to mirror, or
+     * <code>true</code> for <code>preload</code>, <code>modulepreload</code>,
+     * <code>preconnect</code> and <code>dns-prefetch</code>. Default is
+     * <code>false</code>.
+     */
+    public static final String LINK_HEADERS_PARAMETER = "headertags.linkHeaders";
+
+    /**
+     * Init parameter for sending the <code>Link</code> headers defined by
+     * {@link #LINK_HEADERS_PARAMETER} as a <code>103 Early Hints</code>
+     * response before the head tags have been generated. The hints are sent
+     * from the bootstrap listener, so Vaadin has already built its part of
+     * the bootstrap page by then, but the page has not yet been written. Only
+     * has an effect on servlet containers with a
+     * <code>sendEarlyHints()</code> method in their response implementation.
+     * Default is <code>false</code>.
+     */
+    public static final String EARLY_HINTS_PARAMETER = "headertags.earlyHints";
+
+    /**
+     * Init parameter for checking on each request whether the annotations of
+     * a UI class or its generators, or resources with automatic integrity
+     * values, have changed since its head tags were compiled, for use with
+     * tools that redefine classes at runtime during development. The check
+     * reflects over all annotations of the UI class on each request, so it
+     * should not be enabled in production. Default is <code>false</code>.
+     */
+    public static final String REVALIDATE_PLANS_PARAMETER = "headertags.revalidatePlans";
+
+    /**
+     * Generator instances and executor of the service. There is one handler
+     * instance per service.
+     */
+    private final GeneratorEnvironment generatorEnvironment;
+
+    private final HeadMerger merger;
+
+    /**
+     * Resources served by the handler, or <code>null</code> if the handler
+     * isn't bound to a service.
+     */
+    private final HeadResources resources;
+
+    private final boolean fingerprintResources;
+
+    /**
+     * Computes automatic integrity values using the resources of the
+     * service.
+     */
+    private final ResourceIntegrity integrity;
+
+    /**
+     * Generated icons, or <code>null</code> if the handler isn't bound to a
+     * service.
+     */
+    private final IconSets iconSets;
+
+    /**
+     * The plan of each UI class with any service specific changes applied.
+     */
+    private final ClassValue<HeadTagPlan> plans = new ClassValue<HeadTagPlan>() {
+        @Override
+        protected HeadTagPlan computeValue(Class<?> uiClass) {
+            HeadTagPlan plan = integrity.apply(HeadTagPlan.get(uiClass));
+            if (fingerprintResources) {
+                plan = resources.rewrite(plan);
+            }
+            if (iconSets != null) {
+                plan = iconSets.addTags(plan, uiClass);
+            } else if (uiClass.isAnnotationPresent(IconSet.class)) {
+                getLogger().warning("Ignoring @IconSet of "
+                        + uiClass.getName()
+                        + " since the handler is not bound to a service");
             }
+            return plan;
         }
-    }
+    };
 
-    private void appendHeadTagAnnotations(Element head,
-            Class<? extends UI> uiClass, VaadinRequest request) {
-        processAnnotatedType(head, request, uiClass, null);
-
-        Set<Class<?>> generatorCandidates = new HashSet<Class<?>>(
-                Arrays.asList(uiClass.getDeclaredClasses()));
-        HeadTagGenerators generatorAnnotation = uiClass
-                .getAnnotation(HeadTagGenerators.class);
-        if (generatorAnnotation != null) {
-            generatorCandidates.addAll(Arrays.asList(generatorAnnotation
-                    .value()));
-        }
+    /**
+     * The <code>Link</code> header for each UI class, or <code>null</code> if
+     * no headers are added.
+     */
+    private final ClassValue<Optional<String>> linkHeaders;
 
-        for (Class<?> generatorClass : generatorCandidates) {
-            processGeneratorClass(head, request, generatorClass);
-        }
+    private final boolean earlyHints;
+
+    /**
+     * Writers for the plan of each UI class, or <code>null</code> if head tags
+     * are created as elements. The writers depend on the replacement keys of
+     * this handler, so they can't be shared between services.
+     */
+    private final ClassValue<HeadTagWriter> writers;
+
+    private final boolean revalidatePlans;
+
+    /**
+     * Creates a handler that uses the default replacement keys, runs
+     * generators sequentially and creates elements for all head tags.
+     */
+    public HeaderTagHandler() {
+        this(null, GeneratorEnvironment.createSequential(), null);
     }
 
-    private void processGeneratorClass(Element head, VaadinRequest request,
-            Class<?> generatorClass) {
-        // @Inherited does not inherit from interfaces, must check manually
-        for (Class<?> iface : generatorClass.getInterfaces()) {
-            processAnnotatedType(head, request, iface, generatorClass);
-        }
+    /**
+     * Creates a handler configured using init parameters.
+     *
+     * @param configuration
+     *            the configuration to read init parameters from, or
+     *            <code>null</code> to use the defaults
+     * @param generatorEnvironment
+     *            the generator environment of the service
+     * @param resources
+     *            the resources served for the service, or <code>null</code>
+     *            if there is no service
+     */
+    private HeaderTagHandler(DeploymentConfiguration configuration,
+            GeneratorEnvironment generatorEnvironment,
+            HeadResources resources) {
+        merger = new HeadMerger(getParameter(configuration,
+                REPLACE_IN_PLACE_PARAMETER, HeadMerger.DEFAULT_REPLACE_KEYS));
+        this.generatorEnvironment = generatorEnvironment;
+        this.resources = resources;
+        fingerprintResources = resources != null
+                && Boolean.parseBoolean(getParameter(configuration,
+                        FINGERPRINT_RESOURCES_PARAMETER, "false"));
+        iconSets = resources == null ? null : new IconSets(resources);
+        integrity = new ResourceIntegrity(resources);
+
+        Set<String> linkHeaderRels = LinkHeaders.parseRels(getParameter(
+                configuration, LINK_HEADERS_PARAMETER, "false"));
+        linkHeaders = linkHeaderRels == null ? null
+                : new ClassValue<Optional<String>>() {
+                    @Override
+                    protected Optional<String> computeValue(Class<?> uiClass) {
+                        return Optional.ofNullable(LinkHeaders.createHeader(
+                                plans.get(uiClass), linkHeaderRels));
+                    }
+                };
+        earlyHints = Boolean.parseBoolean(getParameter(configuration,
+                EARLY_HINTS_PARAMETER, "false"));
+
+        boolean streamingOutput = Boolean.parseBoolean(getParameter(
+                configuration, STREAMING_OUTPUT_PARAMETER, "false"));
+        writers = streamingOutput ? new ClassValue<HeadTagWriter>() {
+            @Override
+            protected HeadTagWriter computeValue(Class<?> uiClass) {
+                return new HeadTagWriter(plans.get(uiClass), merger);
+            }
+        } : null;
 
-        processAnnotatedType(head, request, generatorClass, generatorClass);
+        revalidatePlans = Boolean.parseBoolean(getParameter(configuration,
+                REVALIDATE_PLANS_PARAMETER, "false"));
     }
 
-    private void processAnnotatedType(Element head, VaadinRequest request,
-            Class<?> declaringClass, Class<?> instanceClass) {
-        for (Annotation annotation : declaringClass.getAnnotations()) {
-            checkHeadTagAnnotation(head, annotation, request, declaringClass,
-                    instanceClass);
+    private static String getParameter(DeploymentConfiguration configuration,
+            String name, String defaultValue) {
+        if (configuration == null) {
+            return defaultValue;
         }
+        return configuration.getApplicationOrSystemProperty(name,
+                defaultValue);
     }
 
-    private void checkHeadTagAnnotation(Element head, Annotation annotation,
-            VaadinRequest request, Class<?> declaringClass,
-            Class<?> instanceClass) {
-        // Check if a path to a HeadTag meta annotation can be found
-        List<Annotation> headTagPath = findHeadTagPath(annotation);
-        if (headTagPath != null) {
-            appendHeadTag(head, headTagPath, request, declaringClass,
-                    instanceClass);
-        } else {
-            // Check for an array value annotation
-            try {
-                Method method = annotation.annotationType().getMethod("value");
-                Class<?> type = method.getReturnType();
-                if (isAnnotationArray(type)) {
-                    Object array = method.invoke(annotation);
-                    int length = Array.getLength(array);
-                    for (int i = 0; i < length; i++) {
-                        Annotation member = (Annotation) Array.get(array, i);
-                        checkHeadTagAnnotation(head, member, request,
-                                declaringClass, instanceClass);
-                    }
+    @Override
+    public void modifyBootstrapFragment(BootstrapFragmentResponse response) {
+        // Nothing to do here
+    }
+
+    @Override
+    public void modifyBootstrapPage(BootstrapPageResponse response) {
+        Class<? extends UI> uiClass = response.getUiClass();
+
+        if (revalidatePlans) {
+            HeadTagPlan compiledPlan = HeadTagPlan.get(uiClass);
+            if (!compiledPlan.isCurrent(uiClass)) {
+                getLogger().info("Head tags of " + uiClass.getName()
+                        + " have changed, compiling again");
+                invalidate(uiClass);
+            } else if (!integrity.isCurrent(compiledPlan)) {
+                getLogger().info("Resources referenced by " + uiClass.getName()
+                        + " have changed, updating integrity values");
+                if (fingerprintResources) {
+                    // The URLs must change together with the integrity values
+                    resources.reload();
                 }
-            } catch (NoSuchMethodException e) {
-                // Ignore, this is simply not a tag collection annotation
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                removeCaches(uiClass);
+            } else if (fingerprintResources
+                    && !resources.isServed(plans.get(uiClass))) {
+                // Resources were reloaded for another UI class
+                removeCaches(uiClass);
             }
         }
 
-    }
+        boolean instrumented = generatorEnvironment.isInstrumented();
+        long start = instrumented ? System.nanoTime() : 0;
 
-    private static boolean isAnnotationArray(Class<?> type) {
-        return type.isArray()
-                && Annotation.class.isAssignableFrom(type.getComponentType());
-    }
+        // Resources of this handler are served from the servlet root
+        String pathToRoot = resources == null ? "" : HeadResources
+                .getPathToRoot(response.getRequest().getPathInfo());
 
-    private void appendHeadTag(Element head, List<Annotation> headTagPath,
-            VaadinRequest request, Class<?> declaringClass,
-            Class<?> instanceClass) {
-        // Should be at least the meta annotation and a "normal" annotation
-        assert headTagPath.size() > 1;
+        if (linkHeaders != null) {
+            linkHeaders.get(uiClass).ifPresent(header -> addLinkHeader(
+                    response, header, pathToRoot));
+        }
 
-        // The first annotation in the path just defines the tag name
-        HeadTag tag = (HeadTag) headTagPath.get(0);
-        Element element = head.appendElement(tag.value());
+        /*
+         * Append to a fake head tag so we can distinguish between original and
+         * new head tags.
+         */
+        String baseUri = response.getDocument().baseUri();
+        GeneratorContext context = new GeneratorContext(response);
+        HeadTags sessionTags = HeadTags.find(response.getSession());
+        HeadTags.Snapshot runtimeTags = sessionTags != null ? sessionTags
+                .getSnapshot() : null;
+        HeadTagWriter writer = writers != null ? writers.get(uiClass) : null;
+        if (writer != null && runtimeTags != null
+                && runtimeTags.mayReplace(writer.getPlan())) {
+            // Runtime tags can't replace pre-serialized tags, use elements
+            writer = null;
+        } else if (writer != null && !writer.supports(response.getDocument()
+                .outputSettings())) {
+            // Another listener has changed how the page is written
+            writer = null;
+        } else if (!pathToRoot.isEmpty()) {
+            // Links in pre-serialized tags can't be adjusted
+            writer = null;
+        }
+        HeadTagPlan plan = writer != null ? writer.getPlan()
+                : plans.get(uiClass);
+        String[][] values = plan.generateValues(context,
+                generatorEnvironment);
+        Element fakeHead;
+        if (writer != null) {
+            fakeHead = writer.createHead(baseUri, values);
+        } else {
+            fakeHead = plan.createHead(baseUri, values);
+        }
+        if (!pathToRoot.isEmpty()) {
+            HeadResources.resolveFromRoot(fakeHead, pathToRoot);
+        }
 
-        // Then iterate the rest of the path to find attribute values
-        for (int i = 1; i < headTagPath.size(); i++) {
-            Annotation attribAnnotation = headTagPath.get(i);
+        int emittedTags = plan.countIncluded(values);
+        int replacedTags = merger.merge(response.getDocument().head(),
+                fakeHead);
 
-            for (Method method : attribAnnotation.annotationType()
-                    .getDeclaredMethods()) {
-                appendAttribute(request, element, attribAnnotation, method);
-            }
+        // Runtime tags last so that they can replace tags from annotations
+        if (runtimeTags != null) {
+            emittedTags += runtimeTags.getTagCount();
+            replacedTags += runtimeTags.merge(response.getDocument().head(),
+                    context, generatorEnvironment);
         }
 
-        if (instanceClass != null) {
-            try {
-                Object instance = instanceClass.newInstance();
-                Method[] methods = declaringClass.getMethods();
-                for (Method method : methods) {
-                    if (method.getDeclaringClass() == Object.class) {
-                        continue;
-                    }
-                    appendAttribute(request, element, instance, method);
-                }
+        AutoResourceHints hints = uiClass
+                .getAnnotation(AutoResourceHints.class);
+        if (hints != null) {
+            BootstrapResourceHints.addHints(response.getDocument(), hints);
+        }
 
-            } catch (Exception e) {
-                throw new RuntimeException("Error processing annotated type "
-                        + declaringClass.getCanonicalName(), e);
-            }
+        if (instrumented) {
+            generatorEnvironment.getInstrumentation().pageProcessed(uiClass,
+                    System.nanoTime() - start, emittedTags, replacedTags);
         }
     }
 
-    private void appendAttribute(VaadinRequest request, Element element,
-            Object targetInstance, Method method) {
-        try {
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            Object[] parameters = new Object[parameterTypes.length];
-
-            for (int i = 0; i < parameterTypes.length; i++) {
-                Class<?> type = parameterTypes[i];
-                if (type == VaadinRequest.class) {
-                    parameters[i] = request;
-                } else {
-                    throw new RuntimeException(
-                            "Unsupported generator parameter type: "
-                                    + type.getCanonicalName());
-                }
-            }
-
-            String value = (String) method.invoke(targetInstance, parameters);
+    /**
+     * Adds to the <code>Link</code> header of a response. The header value
+     * contains all links of the UI class, so it's set once per response.
+     */
+    private void addLinkHeader(BootstrapPageResponse response, String header,
+            String pathToRoot) {
+        if (!pathToRoot.isEmpty()) {
+            header = header.replace("<" + HeadResources.PATH_PREFIX, "<"
+                    + pathToRoot + HeadResources.PATH_PREFIX);
+        }
+        VaadinResponse currentResponse = VaadinService.getCurrentResponse();
+        header = LinkHeaders.combine(currentResponse, header);
+        if (earlyHints) {
+            LinkHeaders.sendEarlyHints(currentResponse, header);
+        }
+        response.setHeader("Link", header);
+    }
 
-            String name = getHeadTagAttributeName(method);
+    /**
+     * Removes all cached head tag information for a UI class, so that its
+     * annotations are read again the next time a bootstrap page for the UI is
+     * generated. This is intended for tools that redefine classes at runtime.
+     *
+     * @param uiClass
+     *            the UI class to invalidate, not <code>null</code>
+     */
+    public static void invalidate(Class<? extends UI> uiClass) {
+        HeadTagPlan.invalidate(uiClass);
 
-            if (value == null || HeadTag.NULL_VALUE.equals(value)) {
-                element.removeAttr(name);
-            } else {
-                element.attr(name, value);
+        List<WeakReference<HeaderTagHandler>> references;
+        synchronized (handlers) {
+            references = new ArrayList<>(handlers.values());
+        }
+        for (WeakReference<HeaderTagHandler> reference : references) {
+            HeaderTagHandler handler = reference.get();
+            if (handler != null) {
+                handler.removeCaches(uiClass);
             }
-        } catch (Exception e) {
-            throw new RuntimeException(
-                    "Error processing @HeadTag annotation method "
-                            + method.getDeclaringClass().getName() + "."
-                            + method.getName(), e);
         }
     }
 
-    private String getHeadTagAttributeName(Method method) {
-        HeadTagAttribute headTagAttribute = method
-                .getAnnotation(HeadTagAttribute.class);
-        if (headTagAttribute != null) {
-            return headTagAttribute.value();
-        } else {
-            // camelCase -> camel-case
-            StringBuilder b = new StringBuilder();
-            String methodName = method.getName();
-            for (int j = 0; j < methodName.length(); j++) {
-                char c = methodName.charAt(j);
-                if (Character.isUpperCase(c)) {
-                    b.append('-');
-                    b.append(Character.toLowerCase(c));
-                } else {
-                    b.append(c);
-                }
-            }
-            return b.toString();
+    private void removeCaches(Class<?> uiClass) {
+        plans.remove(uiClass);
+        if (iconSets != null) {
+            iconSets.invalidate(uiClass);
+        }
+        if (linkHeaders != null) {
+            linkHeaders.remove(uiClass);
+        }
+        if (writers != null) {
+            writers.remove(uiClass);
         }
     }
 
-    private List<Annotation> findHeadTagPath(Annotation annotation) {
-        // Recursively build a path to a @HeadTag
+    /**
+     * Adds head tags to all bootstrap pages of a service that has already
+     * been initialized. Resources such as fingerprinted links and icons are
+     * served by a request handler of each session, since request handlers
+     * can no longer be added to the service. Use
+     * {@link #init(ServiceInitEvent)} from a
+     * {@link com.vaadin.server.VaadinServiceInitListener} when possible.
+     *
+     * @param service
+     *            the service to add head tags for, not <code>null</code>
+     */
+    public static void init(VaadinService service) {
+        init(service, null);
+    }
 
-        // Terminate recursion when reaching a @HeadTag
-        if (annotation instanceof HeadTag) {
-            List<Annotation> headTagPath = new ArrayList<Annotation>();
-            headTagPath.add(annotation);
-            return headTagPath;
-        }
+    /**
+     * Adds head tags to all bootstrap pages of a service that is being
+     * initialized. Resources such as fingerprinted links and icons are served
+     * by a single request handler of the service.
+     *
+     * @param event
+     *            the init event of the service, not <code>null</code>
+     */
+    public static void init(ServiceInitEvent event) {
+        init(event.getSource(), event);
+    }
 
-        // Recurse all meta annotations
-        Annotation[] annotations = annotation.annotationType().getAnnotations();
-        for (Annotation metaAnnotation : annotations) {
-            // Ignore built-in annotations
-            if (metaAnnotation.annotationType().getName()
-                    .startsWith("java.lang")) {
-                continue;
+    private static void init(VaadinService service, ServiceInitEvent event) {
+        HeaderTagHandler[] created = new HeaderTagHandler[1];
+        handlers.computeIfAbsent(service, s -> {
+            DeploymentConfiguration configuration = s
+                    .getDeploymentConfiguration();
+            final HeaderTagHandler listener = new HeaderTagHandler(
+                    configuration,
+                    GeneratorEnvironment.create(configuration,
+                            s.getServiceName()),
+                    new HeadResources(s));
+            if (event != null) {
+                event.addRequestHandler(listener.resources);
             }
+            s.addSessionInitListener(sessionEvent -> {
+                sessionEvent.getSession().addBootstrapListener(listener);
+                if (event == null) {
+                    sessionEvent.getSession().addRequestHandler(
+                            listener.resources);
+                }
+            });
+            s.addServiceDestroyListener(e -> {
+                handlers.remove(s);
+                listener.generatorEnvironment.destroy();
+                listener.iconSets.destroy();
+            });
 
-            List<Annotation> headTagPath = findHeadTagPath(metaAnnotation);
-            if (headTagPath != null) {
-                headTagPath.add(annotation);
-                return headTagPath;
-            }
+            created[0] = listener;
+
+            // The service keeps the handler alive through its listeners
+            return new WeakReference<>(listener);
+        });
+
+        DeploymentConfiguration configuration = service
+                .getDeploymentConfiguration();
+        if (created[0] != null && !Boolean.parseBoolean(configuration
+                .getApplicationOrSystemProperty(
+                        HeaderTagInitListener.EAGER_INIT_PARAMETER, "false"))) {
+            /*
+             * Not while holding the lock of the handlers map, reading
+             * resources might take a while. With eager init, the init
+             * listener prepares in the background instead.
+             */
+            created[0].prepare(service, configuration.getUIClassName());
+        }
+    }
+
+    /**
+     * Prepares the head tags of the UI class configured for the servlet so
+     * that resources such as icons are ready before the first request.
+     */
+    private void prepare(VaadinService service, String uiClassName) {
+        if (uiClassName == null) {
+            return;
+        }
+        ClassLoader classLoader = service.getClassLoader();
+        if (classLoader == null) {
+            classLoader = HeaderTagHandler.class.getClassLoader();
+        }
+        try {
+            prepare(Class.forName(uiClassName, true, classLoader));
+        } catch (ClassNotFoundException | RuntimeException e) {
+            // Will be reported by Vaadin or when the UI is used
+            getLogger().log(Level.FINE,
+                    "Could not prepare head tags of " + uiClassName, e);
+        }
+    }
+
+    /**
+     * Populates all caches of this handler for a UI class, so that the first
+     * bootstrap of the UI doesn't have to compile its head tags, compute
+     * integrity values or generate icons.
+     *
+     * @param uiClass
+     *            the UI class to prepare, not <code>null</code>
+     */
+    void prepare(Class<?> uiClass) {
+        plans.get(uiClass);
+        if (linkHeaders != null) {
+            linkHeaders.get(uiClass);
         }
+        if (writers != null) {
+            writers.get(uiClass);
+        }
+    }
 
-        // Return without a result if nothing found
-        return null;
+    /**
+     * Finds the handler that has been inited for a service.
+     *
+     * @param service
+     *            the service to find the handler for, not <code>null</code>
+     * @return the handler of the service, or <code>null</code> if the handler
+     *         hasn't been inited for the service
+     */
+    static HeaderTagHandler find(VaadinService service) {
+        WeakReference<HeaderTagHandler> reference = handlers.get(service);
+        return reference != null ? reference.get() : null;
     }
 
-    public static void init(VaadinService service) {
-        initedServices.computeIfAbsent(service, s -> {
-            final BootstrapListener listener = new HeaderTagHandler();
-            s.addSessionInitListener(
-                    event -> event.getSession().addBootstrapListener(listener));
-            s.addServiceDestroyListener(e -> initedServices.remove(s));
-
-            // Dummy value, using the Map as a Set
-            return Boolean.TRUE;
-        });
+    private static Logger getLogger() {
+        return Logger.getLogger(HeaderTagHandler.class.getName());
     }
 }
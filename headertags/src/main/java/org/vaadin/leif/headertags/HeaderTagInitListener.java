@@ -1,11 +1,137 @@
 package org.vaadin.leif.headertags;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.DeploymentConfiguration;
 import com.vaadin.server.ServiceInitEvent;
+import com.vaadin.server.VaadinService;
 import com.vaadin.server.VaadinServiceInitListener;
+import com.vaadin.ui.UI;
 
 public class HeaderTagInitListener implements VaadinServiceInitListener {
+
+    /**
+     * Init parameter for enabling eager compilation of head tag plans in the
+     * background when the service is initialized. The handler of the service
+     * is prepared for each UI class, including integrity values, fingerprinted
+     * resources and icons. Default is <code>false</code>, which means that
+     * only the UI class configured for the servlet is prepared, while the
+     * service is being initialized.
+     */
+    public static final String EAGER_INIT_PARAMETER = "headertags.eagerInit";
+
+    /**
+     * Init parameter for the maximum number of threads to use for eager
+     * compilation. Defaults to the number of available processors.
+     */
+    public static final String EAGER_INIT_THREADS_PARAMETER = "headertags.eagerInitThreads";
+
+    /**
+     * Init parameter with a comma separated list of additional UI class names
+     * to compile eagerly, e.g. UI classes provided by a custom
+     * {@link com.vaadin.server.UIProvider}. The UI class configured for the
+     * servlet is always included.
+     */
+    public static final String EAGER_INIT_UI_CLASSES_PARAMETER = "headertags.uiClasses";
+
     @Override
     public void serviceInit(ServiceInitEvent event) {
-        HeaderTagHandler.init(event.getSource());
+        VaadinService service = event.getSource();
+        HeaderTagHandler.init(event);
+
+        DeploymentConfiguration configuration = service
+                .getDeploymentConfiguration();
+        if (Boolean.parseBoolean(configuration
+                .getApplicationOrSystemProperty(EAGER_INIT_PARAMETER, "false"))) {
+            compileEagerly(service, configuration);
+        }
+    }
+
+    private static void compileEagerly(VaadinService service,
+            DeploymentConfiguration configuration) {
+        HeaderTagHandler handler = HeaderTagHandler.find(service);
+        if (handler == null) {
+            return;
+        }
+
+        Set<String> uiClassNames = new LinkedHashSet<>();
+        String uiClassName = configuration.getUIClassName();
+        if (uiClassName != null) {
+            uiClassNames.add(uiClassName.trim());
+        }
+        for (String name : configuration.getApplicationOrSystemProperty(
+                EAGER_INIT_UI_CLASSES_PARAMETER, "").split(",")) {
+            if (!name.trim().isEmpty()) {
+                uiClassNames.add(name.trim());
+            }
+        }
+
+        if (uiClassNames.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(uiClassNames.size(), Integer.parseInt(
+                configuration.getApplicationOrSystemProperty(
+                        EAGER_INIT_THREADS_PARAMETER, String.valueOf(Runtime
+                                .getRuntime().availableProcessors()))));
+
+        ClassLoader classLoader = service.getClassLoader();
+        if (classLoader == null) {
+            classLoader = HeaderTagInitListener.class.getClassLoader();
+        }
+
+        /*
+         * Prepare in the background so that service initialization isn't
+         * delayed. A request for a UI class that is still being prepared will
+         * prepare it again, which is harmless.
+         */
+        ExecutorService executor = createExecutor(Math.max(1, threads));
+        for (String name : uiClassNames) {
+            final ClassLoader loader = classLoader;
+            executor.execute(() -> compile(handler, name, loader));
+        }
+        executor.shutdown();
+    }
+
+    private static void compile(HeaderTagHandler handler, String uiClassName,
+            ClassLoader classLoader) {
+        try {
+            Class<?> uiClass = Class.forName(uiClassName, true, classLoader);
+            if (UI.class.isAssignableFrom(uiClass)) {
+                handler.prepare(uiClass);
+            } else {
+                getLogger().warning(uiClassName
+                        + " is not a UI class, skipping eager compilation");
+            }
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING,
+                    "Could not compile head tags of " + uiClassName, e);
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "headertags-init-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(HeaderTagInitListener.class.getName());
     }
 }
@@ -0,0 +1,66 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates favicons and touch icons of different sizes from a single source
+ * image. The resized PNG images are created in the background when the UI
+ * class is first used, or when the service is initialized for the UI class
+ * configured for the servlet. The images are held in memory and served from
+ * URLs containing a hash of the source image so that browsers can cache them
+ * forever.
+ * <p>
+ * A <code>link</code> tag is added for each size: the 180 pixel icon is added
+ * as <code>apple-touch-icon</code> and the others as <code>icon</code>. The
+ * smallest icon is also added as <code>shortcut icon</code>, so with the
+ * default replacement keys of {@link HeaderTagHandler}, the icon links replace
+ * the favicon links of the theme in their original location. A web app
+ * manifest listing all icons can also be added.
+ * <p>
+ * Icon sets are only available when {@link HeaderTagHandler#init} is used.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface IconSet {
+    /**
+     * The path of the source image, relative to the servlet. The image is
+     * looked up in the same way as fingerprinted resources: as a servlet
+     * context resource, from <code>META-INF/resources</code> or, for
+     * <code>VAADIN</code> resources, from the root of the class path. The
+     * image should be square and at least as large as the largest size.
+     *
+     * @return the path of the source image
+     */
+    String source();
+
+    /**
+     * The sizes to generate, in pixels. Each icon is square.
+     *
+     * @return the icon sizes
+     */
+    int[] sizes() default { 16, 32, 180, 192, 512 };
+
+    /**
+     * Whether to add a <code>link</code> to a web app manifest that lists the
+     * generated icons.
+     *
+     * @return <code>true</code> to add a manifest, otherwise
+     *         <code>false</code>
+     */
+    boolean manifest() default true;
+
+    /**
+     * The application name to define in the web app manifest, or an empty
+     * string to not define a name.
+     *
+     * @return the application name
+     */
+    String name() default "";
+}
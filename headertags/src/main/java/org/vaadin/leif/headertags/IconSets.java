@@ -0,0 +1,321 @@
+package org.vaadin.leif.headertags;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generates the icons defined by {@link IconSet} annotations and the tags
+ * that reference them. Icons are resized on a background thread and served
+ * by {@link HeadResources}, which makes requests for an icon wait until it
+ * has been generated.
+ */
+final class IconSets {
+
+    /**
+     * The size that is used for <code>apple-touch-icon</code> instead of
+     * <code>icon</code>.
+     */
+    private static final int APPLE_TOUCH_ICON_SIZE = 180;
+
+    private static final String PATH_PREFIX = "icons/";
+
+    private final HeadResources resources;
+
+    /**
+     * Single thread for resizing images. The thread is only kept alive while
+     * there is work to do.
+     */
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "headertags-icons");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The tags of each icon set. Annotations are compared by value, so UI
+     * classes with identical icon sets share the same icons.
+     */
+    private final ConcurrentHashMap<IconSet, List<HeadTagTemplate>> tags = new ConcurrentHashMap<>();
+
+    /**
+     * The icon set that was used for each UI class, so that its tags can be
+     * removed even after the annotation of a redefined class has changed.
+     */
+    private final ClassValue<Optional<IconSet>> iconSets = new ClassValue<Optional<IconSet>>() {
+        @Override
+        protected Optional<IconSet> computeValue(Class<?> uiClass) {
+            return Optional.ofNullable(uiClass.getAnnotation(IconSet.class));
+        }
+    };
+
+    /**
+     * Creates an icon generator that serves icons using the given resources.
+     *
+     * @param resources
+     *            the resources to add generated icons to
+     */
+    IconSets(HeadResources resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * Adds the icon tags of a UI class to a plan. Icons are generated in the
+     * background the first time an icon set is used.
+     *
+     * @param plan
+     *            the plan to add tags to
+     * @param uiClass
+     *            the UI class that might define an icon set
+     * @return a plan with the icon tags, or the original plan if the UI class
+     *         has no icon set
+     */
+    HeadTagPlan addTags(HeadTagPlan plan, Class<?> uiClass) {
+        IconSet iconSet = iconSets.get(uiClass).orElse(null);
+        if (iconSet == null) {
+            return plan;
+        }
+
+        List<HeadTagTemplate> iconTags = tags.computeIfAbsent(iconSet,
+                this::createTags);
+        if (iconTags.isEmpty()) {
+            return plan;
+        }
+
+        List<HeadTagTemplate> allTags = new ArrayList<>(plan.getTags());
+        allTags.addAll(iconTags);
+        return new HeadTagPlan(allTags);
+    }
+
+    /**
+     * Removes the icons of a UI class so that the source image is read again
+     * the next time the icons are needed.
+     *
+     * @param uiClass
+     *            the UI class to remove icons for
+     */
+    void invalidate(Class<?> uiClass) {
+        iconSets.get(uiClass).ifPresent(tags::remove);
+        iconSets.remove(uiClass);
+    }
+
+    /**
+     * Stops generating icons. Icons that have not yet been generated are
+     * cancelled.
+     */
+    void destroy() {
+        executor.shutdownNow();
+        // Dropped tasks would never complete the resources waiting for them
+        resources.cancelPending();
+    }
+
+    private List<HeadTagTemplate> createTags(IconSet iconSet) {
+        String source = iconSet.source();
+        byte[] content;
+        try (InputStream stream = resources.openResource(source)) {
+            content = stream == null ? null : HeadResources.readFully(stream);
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not read icon source " + source, e);
+            return Collections.emptyList();
+        }
+        if (content == null) {
+            getLogger().warning("Icon source " + source
+                    + " not found or too large, no icons added");
+            return Collections.emptyList();
+        }
+
+        String hash = HeadResources.hash(content);
+        CompletableFuture<BufferedImage> image = CompletableFuture
+                .supplyAsync(() -> decode(content, source), executor);
+
+        int[] sizes = iconSet.sizes();
+        int smallest = Integer.MAX_VALUE;
+        Map<Integer, String> hrefs = new LinkedHashMap<>();
+        for (int size : sizes) {
+            if (size <= 0) {
+                throw new RuntimeException("Invalid icon size " + size
+                        + " for " + source);
+            }
+            String url = PATH_PREFIX + hash + "/" + getFileName(size);
+            hrefs.put(Integer.valueOf(size), resources.addResource(url,
+                    "image/png", image.thenApplyAsync(
+                            i -> toPng(resize(i, size)), executor)));
+            smallest = Math.min(smallest, size);
+        }
+
+        List<HeadTagTemplate> iconTags = new ArrayList<>();
+        if (!hrefs.isEmpty()) {
+            iconTags.add(createLink("shortcut icon", hrefs.get(Integer
+                    .valueOf(smallest)), smallest));
+        }
+        for (Map.Entry<Integer, String> entry : hrefs.entrySet()) {
+            int size = entry.getKey().intValue();
+            iconTags.add(createLink(size == APPLE_TOUCH_ICON_SIZE
+                    ? "apple-touch-icon" : "icon", entry.getValue(), size));
+        }
+
+        if (iconSet.manifest()) {
+            byte[] manifest = createManifest(iconSet, hash, hrefs.keySet());
+            String url = PATH_PREFIX + HeadResources.hash(manifest)
+                    + "/manifest.webmanifest";
+            Map<String, String> attributes = new LinkedHashMap<>();
+            attributes.put("rel", "manifest");
+            attributes.put("href", resources.addResource(url,
+                    "application/manifest+json",
+                    CompletableFuture.completedFuture(manifest)));
+            iconTags.add(new HeadTagTemplate("link", attributes, null));
+        }
+
+        return Collections.unmodifiableList(iconTags);
+    }
+
+    private static String getFileName(int size) {
+        return "icon-" + size + "x" + size + ".png";
+    }
+
+    private static HeadTagTemplate createLink(String rel, String href,
+            int size) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("rel", rel);
+        attributes.put("type", "image/png");
+        attributes.put("sizes", size + "x" + size);
+        attributes.put("href", href);
+        return new HeadTagTemplate("link", attributes, null);
+    }
+
+    private static byte[] createManifest(IconSet iconSet, String hash,
+            Iterable<Integer> sizes) {
+        StringBuilder json = new StringBuilder("{\n");
+        if (!iconSet.name().isEmpty()) {
+            json.append("  \"name\": ");
+            appendJsonString(json, iconSet.name());
+            json.append(",\n  \"short_name\": ");
+            appendJsonString(json, iconSet.name());
+            json.append(",\n");
+        }
+        json.append("  \"icons\": [");
+        String separator = "\n";
+        for (Integer size : sizes) {
+            // Relative to the manifest, which is in a sibling directory
+            json.append(separator).append("    { \"src\": ");
+            appendJsonString(json, "../" + hash + "/" + getFileName(size
+                    .intValue()));
+            json.append(", \"sizes\": \"").append(size).append('x')
+                    .append(size)
+                    .append("\", \"type\": \"image/png\" }");
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static BufferedImage decode(byte[] content, String source) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                    content));
+            if (image == null) {
+                throw new RuntimeException("Unsupported image format in "
+                        + source);
+            }
+            return image;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not decode " + source, e);
+        }
+    }
+
+    /**
+     * Scales an image to fit in a square of the given size, keeping the
+     * aspect ratio and centering the image.
+     */
+    private static BufferedImage resize(BufferedImage source, int size) {
+        double scale = Math.min((double) size / source.getWidth(),
+                (double) size / source.getHeight());
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        // Halve in steps to avoid aliasing when scaling down a lot
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= width
+                && current.getHeight() / 2 >= height) {
+            BufferedImage half = new BufferedImage(current.getWidth() / 2,
+                    current.getHeight() / 2, BufferedImage.TYPE_INT_ARGB);
+            draw(current, half, 0, 0, half.getWidth(), half.getHeight());
+            current = half;
+        }
+
+        BufferedImage result = new BufferedImage(size, size,
+                BufferedImage.TYPE_INT_ARGB);
+        draw(current, result, (size - width) / 2, (size - height) / 2, width,
+                height);
+        return result;
+    }
+
+    private static void draw(BufferedImage source, BufferedImage target,
+            int x, int y, int width, int height) {
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, x, y, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    private static byte[] toPng(BufferedImage image) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(image, "png", out)) {
+                throw new RuntimeException("No PNG writer available");
+            }
+        } catch (IOException e) {
+            // Can't happen with a byte array stream
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(IconSets.class.getName());
+    }
+}
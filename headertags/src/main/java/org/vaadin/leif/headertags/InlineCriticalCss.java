@@ -0,0 +1,43 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Inlines critical CSS into a <code>style</code> element in the head of the
+ * host page, so that styles needed for the first paint arrive with the page
+ * instead of waiting for the theme to load. The stylesheet is loaded and
+ * minified once when the head tags of the UI class are compiled, and the
+ * element is added before any other head tags of the UI class.
+ * <p>
+ * The SHA-256 hash needed for allowing the inlined style in a
+ * <code>Content-Security-Policy</code> is logged when the stylesheet is
+ * loaded.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface InlineCriticalCss {
+    /**
+     * The location of the stylesheet, resolved in the same way as the
+     * locations of {@link HeadTagSource}: relative to the class that
+     * declares the annotation, or from the root of the class path with a
+     * <code>classpath:</code> prefix.
+     *
+     * @return the stylesheet location
+     */
+    String resource();
+
+    /**
+     * The <code>media</code> attribute of the <code>style</code> element, or
+     * {@link HeadTag#NULL_VALUE} to not set any media.
+     *
+     * @return the media query
+     */
+    String media() default HeadTag.NULL_VALUE;
+}
@@ -0,0 +1,84 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a <code>&lt;script type="application/ld+json"&gt;</code> tag with
+ * structured data for the host page of a UI class. The static members are
+ * serialized once when the plan is compiled. Members that depend on the
+ * request can be provided by a generator class, whose values are written
+ * into the serialized JSON for each request without building an intermediate
+ * object:
+ *
+ * <pre>
+ * &#64;JsonLd(type = "Organization", properties = {
+ *         &#64;JsonLdProperty(name = "name", value = "Acme"),
+ *         &#64;JsonLdProperty(name = "logo", value = "https://acme.example/logo.png") },
+ *         generator = OrganizationGenerator.class)
+ * </pre>
+ *
+ * Each public non-static method of the generator class provides a member with
+ * the method name as the key, without any <code>get</code> prefix, unless
+ * another name is defined using {@link HeadTagAttribute}. The methods should
+ * return a String and may accept the same parameters as other generator
+ * methods. A member is left out if its method returns <code>null</code> or
+ * {@link HeadTag#NULL_VALUE}. {@link GeneratorLifecycle},
+ * {@link CacheableGenerator} and {@link GeneratorTimeout} can be used on the
+ * generator class in the same way as for other generators.
+ * <p>
+ * All strings are escaped so that the JSON can be safely embedded in a
+ * script element.
+ * <p>
+ * To add multiple tags, use {@link JsonLdTags}
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(JsonLdTags.class)
+public @interface JsonLd {
+    /**
+     * The schema type of the described item, e.g. <code>Organization</code>.
+     *
+     * @return the <code>@type</code> value
+     */
+    String type();
+
+    /**
+     * The vocabulary of the type and the members.
+     *
+     * @return the <code>@context</code> value, or an empty string to leave
+     *         out the context
+     */
+    String context() default "https://schema.org";
+
+    /**
+     * Members with static values, in the order they should be written.
+     *
+     * @return the static members
+     */
+    JsonLdProperty[] properties() default {};
+
+    /**
+     * A generator class that provides members with dynamic values. The
+     * generated members are written after the static members.
+     *
+     * @return the generator class, or <code>Object.class</code> to not use a
+     *         generator
+     */
+    Class<?> generator() default Object.class;
+
+    /**
+     * Conditions that must all be fulfilled for the tag to be included.
+     * Default is to always include the tag.
+     *
+     * @return the conditions
+     */
+    Condition[] when() default {};
+}
@@ -0,0 +1,28 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a member with a static string value in a {@link JsonLd} tag.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface JsonLdProperty {
+    /**
+     * The key of the member.
+     *
+     * @return the member key
+     */
+    String name();
+
+    /**
+     * The string value of the member.
+     *
+     * @return the member value
+     */
+    String value();
+}
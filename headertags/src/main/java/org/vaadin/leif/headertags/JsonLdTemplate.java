@@ -0,0 +1,243 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Pre-serialized JSON for a {@link JsonLd} tag. The static members are
+ * serialized when the plan is compiled, and the values of the generated
+ * members are appended directly to the output buffer for each request.
+ */
+final class JsonLdTemplate {
+
+    private static final Map<String, String> ATTRIBUTES = Collections
+            .singletonMap("type", "application/ld+json");
+
+    /**
+     * The opening brace followed by all static members. There is always at
+     * least the <code>@type</code> member, so each generated member starts
+     * with a comma.
+     */
+    private final String prefix;
+
+    /**
+     * The comma, serialized key and colon for each generated member, in the
+     * same order as the attributes of the generator.
+     */
+    private final String[] memberPrefixes;
+
+    private JsonLdTemplate(String prefix, String[] memberPrefixes) {
+        this.prefix = prefix;
+        this.memberPrefixes = memberPrefixes;
+    }
+
+    /**
+     * Creates a tag for a JSON-LD definition.
+     *
+     * @param annotation
+     *            the definition
+     * @param defaultScope
+     *            the generator scope to use unless the generator class
+     *            defines its own scope
+     * @return the script tag, not <code>null</code>
+     */
+    static HeadTagTemplate createTag(JsonLd annotation,
+            GeneratorScope defaultScope) {
+        StringBuilder prefix = new StringBuilder("{");
+        if (!annotation.context().isEmpty()) {
+            appendMember(prefix, "@context", annotation.context());
+        }
+        appendMember(prefix, "@type", annotation.type());
+        for (JsonLdProperty property : annotation.properties()) {
+            appendMember(prefix, property.name(), property.value());
+        }
+
+        List<RequestCondition> conditions = new ArrayList<>();
+        for (Condition condition : annotation.when()) {
+            conditions.add(RequestCondition.create(condition));
+        }
+
+        Class<?> generatorClass = annotation.generator();
+        if (generatorClass == Object.class) {
+            return new HeadTagTemplate("script", ATTRIBUTES, prefix.append(
+                    '}').toString(), conditions, null);
+        }
+
+        GeneratorBinding generator = createGeneratorBinding(generatorClass,
+                defaultScope);
+        String[] memberPrefixes = new String[generator.getAttributes()
+                .size()];
+        for (int i = 0; i < memberPrefixes.length; i++) {
+            StringBuilder memberPrefix = new StringBuilder(",");
+            appendString(memberPrefix, generator.getAttributes().get(i)
+                    .getName());
+            memberPrefixes[i] = memberPrefix.append(':').toString();
+        }
+
+        return new HeadTagTemplate("script", ATTRIBUTES, conditions,
+                generator, new JsonLdTemplate(prefix.toString(),
+                        memberPrefixes));
+    }
+
+    private static GeneratorBinding createGeneratorBinding(
+            Class<?> generatorClass, GeneratorScope defaultScope) {
+        // Sorted by member name since the method order is not defined
+        Map<String, Method> methods = new TreeMap<>();
+        for (Method method : generatorClass.getMethods()) {
+            if (method.getDeclaringClass() == Object.class
+                    || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            Method previous = methods.put(getMemberName(method), method);
+            if (previous != null) {
+                throw new RuntimeException("Both " + previous.getName()
+                        + " and " + method.getName() + " in "
+                        + generatorClass.getName()
+                        + " define the same JSON-LD member");
+            }
+        }
+
+        ParameterResolvers resolvers = ParameterResolvers.get(generatorClass);
+        List<GeneratorBinding.GeneratedAttribute> members = new ArrayList<>();
+        for (Entry<String, Method> entry : methods.entrySet()) {
+            members.add(new GeneratorBinding.GeneratedAttribute(entry
+                    .getKey(), entry.getValue(), resolvers));
+        }
+
+        GeneratorLifecycle lifecycle = generatorClass
+                .getAnnotation(GeneratorLifecycle.class);
+        return new GeneratorBinding(generatorClass, generatorClass,
+                lifecycle != null ? lifecycle.value() : defaultScope, members);
+    }
+
+    /**
+     * Gets the member name for a generator method: the value of
+     * {@link HeadTagAttribute} if present, otherwise the method name without
+     * any <code>get</code> prefix, e.g. <code>getDateModified</code> &rarr;
+     * <code>dateModified</code>.
+     */
+    private static String getMemberName(Method method) {
+        HeadTagAttribute headTagAttribute = method
+                .getAnnotation(HeadTagAttribute.class);
+        if (headTagAttribute != null) {
+            return headTagAttribute.value();
+        }
+        String name = method.getName();
+        if (name.length() > 3 && name.startsWith("get")
+                && Character.isUpperCase(name.charAt(3))) {
+            name = name.substring(3, 4).toLowerCase(Locale.ROOT)
+                    + name.substring(4);
+        }
+        return name;
+    }
+
+    /**
+     * Writes the JSON for a request.
+     *
+     * @param buffer
+     *            the buffer to write to
+     * @param generatedValues
+     *            the values generated for the members, in the same order as
+     *            the attributes of the generator
+     */
+    void write(StringBuilder buffer, String[] generatedValues) {
+        buffer.append(prefix);
+        for (int i = 0; i < memberPrefixes.length; i++) {
+            String value = generatedValues[i];
+            if (value != null && !HeadTag.NULL_VALUE.equals(value)) {
+                buffer.append(memberPrefixes[i]);
+                appendString(buffer, value);
+            }
+        }
+        buffer.append('}');
+    }
+
+    /**
+     * Writes the JSON for a request into a new string.
+     *
+     * @param generatedValues
+     *            the values generated for the members
+     * @return the JSON
+     */
+    String write(String[] generatedValues) {
+        StringBuilder buffer = new StringBuilder(prefix.length() + 16
+                * memberPrefixes.length + 1);
+        write(buffer, generatedValues);
+        return buffer.toString();
+    }
+
+    private static void appendMember(StringBuilder buffer, String name,
+            String value) {
+        if (buffer.length() > 1) {
+            buffer.append(',');
+        }
+        appendString(buffer, name);
+        buffer.append(':');
+        appendString(buffer, value);
+    }
+
+    /**
+     * Appends a JSON string literal that is also safe to embed in a
+     * <code>script</code> element: characters that could end the element or
+     * start a comment, and line separators that are not valid in older
+     * JavaScript parsers, are written as unicode escapes.
+     *
+     * @param buffer
+     *            the buffer to write to
+     * @param value
+     *            the string to write
+     */
+    static void appendString(StringBuilder buffer, String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                buffer.append("\\\"");
+                break;
+            case '\\':
+                buffer.append("\\\\");
+                break;
+            case '\n':
+                buffer.append("\\n");
+                break;
+            case '\r':
+                buffer.append("\\r");
+                break;
+            case '\t':
+                buffer.append("\\t");
+                break;
+            case '<':
+            case '>':
+            case '&':
+            case '\u2028':
+            case '\u2029':
+                appendUnicodeEscape(buffer, c);
+                break;
+            default:
+                if (c < 0x20) {
+                    appendUnicodeEscape(buffer, c);
+                } else {
+                    buffer.append(c);
+                }
+            }
+        }
+        buffer.append('"');
+    }
+
+    private static void appendUnicodeEscape(StringBuilder buffer, char c) {
+        String hex = Integer.toHexString(c);
+        buffer.append("\\u");
+        for (int i = hex.length(); i < 4; i++) {
+            buffer.append('0');
+        }
+        buffer.append(hex);
+    }
+}
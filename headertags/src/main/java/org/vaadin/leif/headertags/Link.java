@@ -61,4 +61,20 @@ public @interface Link {
      * @return the sizes attribute
      */
     public String title() default HeadTag.NULL_VALUE;
+
+    /**
+     * The integrity attribute value of the link tag. Use {@link HeadTag#AUTO}
+     * to compute the value from the content of a local resource.
+     *
+     * @return the integrity attribute
+     */
+    public String integrity() default HeadTag.NULL_VALUE;
+
+    /**
+     * Conditions that must all be fulfilled for the tag to be included.
+     * Default is to always include the tag.
+     *
+     * @return the conditions
+     */
+    public Condition[] when() default {};
 }
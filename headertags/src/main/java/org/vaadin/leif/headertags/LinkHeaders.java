@@ -0,0 +1,215 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinServletResponse;
+
+/**
+ * Mirrors <code>link</code> tags into HTTP <code>Link</code> response headers
+ * so that the browser can act on them before parsing the page. The headers
+ * can also be sent as a <code>103 Early Hints</code> informational response
+ * on servlet containers that support it.
+ */
+final class LinkHeaders {
+
+    /**
+     * The <code>rel</code> values that are mirrored unless something else is
+     * configured.
+     */
+    static final Set<String> DEFAULT_RELS = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList("preload",
+                    "modulepreload", "preconnect", "dns-prefetch")));
+
+    private static final Pattern TOKEN_PATTERN = Pattern
+            .compile("[!#$%&'*+.^_`|~0-9A-Za-z-]+");
+
+    /**
+     * The <code>sendEarlyHints</code> method of each servlet response class,
+     * if there is one.
+     */
+    private static final ClassValue<Optional<Method>> earlyHintsMethods = new ClassValue<Optional<Method>>() {
+        @Override
+        protected Optional<Method> computeValue(Class<?> responseClass) {
+            try {
+                return Optional.of(responseClass.getMethod("sendEarlyHints"));
+            } catch (NoSuchMethodException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    private LinkHeaders() {
+        // Only static helpers
+    }
+
+    /**
+     * Parses the configured <code>rel</code> values.
+     *
+     * @param definition
+     *            a comma separated list of <code>rel</code> values, or
+     *            <code>true</code> to use {@link #DEFAULT_RELS}
+     * @return the set of <code>rel</code> values, or <code>null</code> if no
+     *         headers should be added
+     */
+    static Set<String> parseRels(String definition) {
+        definition = definition.trim();
+        if (definition.isEmpty() || "false".equalsIgnoreCase(definition)) {
+            return null;
+        } else if ("true".equalsIgnoreCase(definition)) {
+            return DEFAULT_RELS;
+        }
+
+        Set<String> rels = new HashSet<>();
+        for (String rel : definition.split(",")) {
+            if (!rel.trim().isEmpty()) {
+                rels.add(rel.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return rels;
+    }
+
+    /**
+     * Creates a <code>Link</code> header value for the static
+     * <code>link</code> tags of a plan. Tags with a generator are not
+     * included since their attributes are only known when the page is
+     * generated.
+     *
+     * @param plan
+     *            the plan to get tags from
+     * @param rels
+     *            the <code>rel</code> values of the tags to include
+     * @return the header value, or <code>null</code> if there are no matching
+     *         tags
+     */
+    static String createHeader(HeadTagPlan plan, Set<String> rels) {
+        StringBuilder header = new StringBuilder();
+        for (HeadTagTemplate tag : plan.getTags()) {
+            if (!tag.isStatic() || !"link".equalsIgnoreCase(tag.getTagName())) {
+                continue;
+            }
+            String rel = tag.getAttributes().get("rel");
+            String href = tag.getAttributes().get("href");
+            if (rel == null || href == null
+                    || !rels.contains(rel.toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+
+            if (header.length() != 0) {
+                header.append(", ");
+            }
+            header.append('<').append(href).append('>');
+            for (Entry<String, String> entry : tag.getAttributes().entrySet()) {
+                if (!"href".equals(entry.getKey())) {
+                    appendParameter(header, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return header.length() == 0 ? null : header.toString();
+    }
+
+    private static void appendParameter(StringBuilder header, String name,
+            String value) {
+        header.append("; ").append(name);
+        if (value.isEmpty()) {
+            // Boolean attribute, e.g. crossorigin
+            return;
+        }
+        header.append('=');
+        if (TOKEN_PATTERN.matcher(value).matches()) {
+            header.append(value);
+        } else {
+            header.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    header.append('\\');
+                }
+                header.append(c);
+            }
+            header.append('"');
+        }
+    }
+
+    /**
+     * Combines a <code>Link</code> header value with the <code>Link</code>
+     * headers already set on the servlet response, since setting a header on
+     * the bootstrap response replaces any previous value. Headers set by
+     * other bootstrap listeners through {@link BootstrapPageResponse} are not
+     * visible here and are still replaced.
+     *
+     * @param response
+     *            the response of the bootstrap request, or <code>null</code>
+     * @param header
+     *            the <code>Link</code> header value to add
+     * @return the combined <code>Link</code> header value
+     */
+    static String combine(VaadinResponse response, String header) {
+        if (!(response instanceof VaadinServletResponse)) {
+            return header;
+        }
+        Collection<String> existing = ((VaadinServletResponse) response)
+                .getHttpServletResponse().getHeaders("Link");
+        if (existing == null || existing.isEmpty()) {
+            return header;
+        }
+
+        StringBuilder combined = new StringBuilder();
+        for (String value : existing) {
+            if (!value.trim().isEmpty()) {
+                combined.append(value).append(", ");
+            }
+        }
+        return combined.append(header).toString();
+    }
+
+    /**
+     * Sends a <code>Link</code> header as a <code>103 Early Hints</code>
+     * response if the servlet container supports it. The header is also set
+     * on the final response, which the container may use when sending the
+     * informational response.
+     *
+     * @param response
+     *            the response of the bootstrap request
+     * @param header
+     *            the <code>Link</code> header value
+     * @return <code>true</code> if early hints were sent, otherwise
+     *         <code>false</code>
+     */
+    static boolean sendEarlyHints(VaadinResponse response, String header) {
+        if (!(response instanceof VaadinServletResponse)) {
+            return false;
+        }
+        HttpServletResponse servletResponse = ((VaadinServletResponse) response)
+                .getHttpServletResponse();
+        Optional<Method> method = earlyHintsMethods.get(servletResponse
+                .getClass());
+        if (!method.isPresent()) {
+            return false;
+        }
+
+        servletResponse.setHeader("Link", header);
+        try {
+            method.get().invoke(servletResponse);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            Logger.getLogger(LinkHeaders.class.getName()).log(Level.FINE,
+                    "Could not send early hints", e);
+            return false;
+        }
+    }
+}
@@ -52,4 +52,12 @@ public @interface Meta {
      * @return the itemprop attribute
      */
     public String itemprop() default HeadTag.NULL_VALUE;
+
+    /**
+     * Conditions that must all be fulfilled for the tag to be included.
+     * Default is to always include the tag.
+     *
+     * @return the conditions
+     */
+    public Condition[] when() default {};
 }
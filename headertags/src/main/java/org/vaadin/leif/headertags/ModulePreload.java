@@ -0,0 +1,38 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a &lt;link rel="modulepreload"&gt; tag that makes the browser fetch
+ * and compile a JavaScript module and its dependencies before it's needed.
+ * <p>
+ * To add multiple tags, use {@link ModulePreloadTags}
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(ModulePreloadTags.class)
+@Link(rel = "modulepreload", href = HeadTag.NULL_VALUE)
+public @interface ModulePreload {
+    /**
+     * The URL of the resource.
+     *
+     * @return the href attribute
+     */
+    @HeadTagAttribute("href")
+    String value();
+
+    /**
+     * The CORS mode to use when fetching the resource.
+     *
+     * @return the crossorigin attribute
+     */
+    CrossOrigin crossorigin() default CrossOrigin.UNSPECIFIED;
+}
@@ -0,0 +1,132 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.logging.Logger;
+
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+
+/**
+ * The parameter types supported for the generator methods of a generator
+ * class. Each supported type is mapped to a filter method handle of the type
+ * <code>(GeneratorContext)T</code> that extracts the parameter value from the
+ * context, so that generator methods can be adapted to a uniform type when
+ * the plan is compiled.
+ */
+final class ParameterResolvers {
+
+    private static final MethodHandle RESOLVE;
+
+    private static final Map<Class<?>, MethodHandle> builtInFilters;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            RESOLVE = lookup.findVirtual(HeadTagParameterResolver.class,
+                    "resolve", MethodType.methodType(Object.class,
+                            GeneratorContext.class));
+
+            Map<Class<?>, MethodHandle> filters = new HashMap<>();
+            filters.put(VaadinRequest.class, findGetter(lookup, "getRequest",
+                    VaadinRequest.class));
+            filters.put(BootstrapPageResponse.class, findGetter(lookup,
+                    "getResponse", BootstrapPageResponse.class));
+            filters.put(VaadinSession.class, findGetter(lookup, "getSession",
+                    VaadinSession.class));
+            filters.put(VaadinService.class, findGetter(lookup, "getService",
+                    VaadinService.class));
+            filters.put(Locale.class, findGetter(lookup, "getLocale",
+                    Locale.class));
+            filters.put(Class.class, findGetter(lookup, "getUiClass",
+                    Class.class));
+            filters.put(GeneratorContext.class, MethodHandles
+                    .identity(GeneratorContext.class));
+            builtInFilters = Collections.unmodifiableMap(filters);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The resolvers available for each generator class.
+     */
+    private static final ClassValue<ParameterResolvers> resolvers = new ClassValue<ParameterResolvers>() {
+        @Override
+        protected ParameterResolvers computeValue(Class<?> generatorClass) {
+            return new ParameterResolvers(generatorClass.getClassLoader());
+        }
+    };
+
+    private final Map<Class<?>, MethodHandle> filters;
+
+    private ParameterResolvers(ClassLoader classLoader) {
+        Map<Class<?>, MethodHandle> filters = new HashMap<>(builtInFilters);
+        @SuppressWarnings("rawtypes")
+        ServiceLoader<HeadTagParameterResolver> loader = ServiceLoader.load(
+                HeadTagParameterResolver.class, classLoader);
+        for (HeadTagParameterResolver<?> resolver : loader) {
+            Class<?> type = resolver.getType();
+            if (builtInFilters.containsKey(type)) {
+                getLogger().warning("Ignoring "
+                        + resolver.getClass().getName()
+                        + " since parameters of type " + type.getName()
+                        + " are always supported");
+                continue;
+            }
+            MethodHandle filter = RESOLVE.bindTo(resolver).asType(
+                    MethodType.methodType(type, GeneratorContext.class));
+            MethodHandle previous = filters.putIfAbsent(type, filter);
+            if (previous != null) {
+                getLogger().warning("Ignoring "
+                        + resolver.getClass().getName()
+                        + " since another resolver is already registered for "
+                        + type.getName());
+            }
+        }
+        this.filters = filters;
+    }
+
+    private static MethodHandle findGetter(MethodHandles.Lookup lookup,
+            String name, Class<?> type) throws NoSuchMethodException,
+            IllegalAccessException {
+        return lookup.findVirtual(GeneratorContext.class, name,
+                MethodType.methodType(type));
+    }
+
+    /**
+     * Gets the parameter resolvers available for a generator class.
+     *
+     * @param generatorClass
+     *            the generator class
+     * @return the resolvers, not <code>null</code>
+     */
+    static ParameterResolvers get(Class<?> generatorClass) {
+        return resolvers.get(generatorClass);
+    }
+
+    /**
+     * Gets a method handle that extracts a parameter value of the given type
+     * from a {@link GeneratorContext}.
+     *
+     * @param type
+     *            the declared parameter type
+     * @return a method handle of the type <code>(GeneratorContext)T</code>,
+     *         or <code>null</code> if the type is not supported
+     */
+    MethodHandle getFilter(Class<?> type) {
+        return filters.get(type);
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ParameterResolvers.class.getName());
+    }
+}
@@ -0,0 +1,40 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a &lt;link rel="preconnect"&gt; tag that makes the browser open a
+ * connection to an origin that the page will load resources from.
+ * <p>
+ * To add multiple tags, use {@link PreconnectTags}
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(PreconnectTags.class)
+@Link(rel = "preconnect", href = HeadTag.NULL_VALUE)
+public @interface Preconnect {
+    /**
+     * The origin to connect to, e.g. <code>https://fonts.example.com</code>.
+     *
+     * @return the href attribute
+     */
+    @HeadTagAttribute("href")
+    String value();
+
+    /**
+     * The CORS mode to use when fetching the resource. Connections are not
+     * shared between CORS and non-CORS requests, so this should match how the
+     * resources from the origin are fetched.
+     *
+     * @return the crossorigin attribute
+     */
+    CrossOrigin crossorigin() default CrossOrigin.UNSPECIFIED;
+}
@@ -0,0 +1,63 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a &lt;link rel="preload"&gt; tag that makes the browser fetch a
+ * resource that the page will need soon, before it's discovered by the
+ * browser.
+ * <p>
+ * To add multiple tags, use {@link PreloadTags}
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(PreloadTags.class)
+@Link(rel = "preload", href = HeadTag.NULL_VALUE)
+public @interface Preload {
+    /**
+     * The URL of the resource.
+     *
+     * @return the href attribute
+     */
+    @HeadTagAttribute("href")
+    String value();
+
+    /**
+     * The type of content being loaded.
+     *
+     * @return the as attribute
+     */
+    ResourceType as();
+
+    /**
+     * The MIME type of the resource, allowing the browser to skip the preload
+     * if the type is not supported.
+     *
+     * @return the type attribute
+     */
+    String type() default HeadTag.NULL_VALUE;
+
+    /**
+     * The media query that should match for the resource to be preloaded.
+     *
+     * @return the media attribute
+     */
+    String media() default HeadTag.NULL_VALUE;
+
+    /**
+     * The CORS mode to use when fetching the resource. Fonts are always fetched
+     * in CORS mode, so preloaded fonts should use
+     * {@link CrossOrigin#ANONYMOUS} for the preload to be used.
+     *
+     * @return the crossorigin attribute
+     */
+    CrossOrigin crossorigin() default CrossOrigin.UNSPECIFIED;
+}
@@ -0,0 +1,112 @@
+package org.vaadin.leif.headertags;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.vaadin.server.VaadinRequest;
+
+/**
+ * A compiled {@link Condition}. Instances are held by the tags of a plan, so
+ * they are released together with the plan.
+ */
+final class RequestCondition {
+
+    private final String header;
+
+    /**
+     * The compiled regular expression, or <code>null</code> if not used.
+     */
+    private final Pattern pattern;
+
+    /**
+     * The string to look for, or <code>null</code> if not used.
+     */
+    private final String contains;
+
+    private final boolean negate;
+
+    private RequestCondition(String header, Pattern pattern, String contains,
+            boolean negate) {
+        this.header = header;
+        this.pattern = pattern;
+        this.contains = contains;
+        this.negate = negate;
+    }
+
+    /**
+     * Compiles a condition annotation.
+     *
+     * @param condition
+     *            the condition annotation
+     * @return a compiled condition, not <code>null</code>
+     */
+    static RequestCondition create(Condition condition) {
+        return create(condition.header(), condition.matches(),
+                condition.contains(), condition.negate());
+    }
+
+    /**
+     * Compiles a condition.
+     *
+     * @param header
+     *            the name of the header to check
+     * @param matches
+     *            a regular expression to find in the header value, or
+     *            {@link HeadTag#NULL_VALUE}
+     * @param contains
+     *            a string to find in the header value, or
+     *            {@link HeadTag#NULL_VALUE}
+     * @param negate
+     *            whether to invert the result
+     * @return a compiled condition, not <code>null</code>
+     * @throws IllegalArgumentException
+     *             if both <code>matches</code> and <code>contains</code> are
+     *             defined or if the pattern is not valid
+     */
+    static RequestCondition create(String header, String matches,
+            String contains, boolean negate) {
+        boolean hasPattern = !HeadTag.NULL_VALUE.equals(matches);
+        boolean hasContains = !HeadTag.NULL_VALUE.equals(contains);
+        if (hasPattern && hasContains) {
+            throw new IllegalArgumentException("Condition for header "
+                    + header + " cannot define both matches and contains");
+        }
+
+        Pattern pattern = null;
+        if (hasPattern) {
+            try {
+                pattern = Pattern.compile(matches);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException(
+                        "Invalid pattern in condition for header " + header,
+                        e);
+            }
+        }
+
+        return new RequestCondition(header, pattern,
+                hasContains ? contains : null, negate);
+    }
+
+    /**
+     * Checks whether a request fulfills this condition.
+     *
+     * @param request
+     *            the request to check
+     * @return <code>true</code> if the condition is fulfilled, otherwise
+     *         <code>false</code>
+     */
+    boolean test(VaadinRequest request) {
+        String value = request.getHeader(header);
+        boolean result;
+        if (value == null) {
+            result = false;
+        } else if (pattern != null) {
+            result = pattern.matcher(value).find();
+        } else if (contains != null) {
+            result = value.contains(contains);
+        } else {
+            result = true;
+        }
+        return result != negate;
+    }
+}
@@ -0,0 +1,223 @@
+package org.vaadin.leif.headertags;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes Subresource Integrity values for tags with the <code>integrity</code>
+ * attribute set to {@link HeadTag#AUTO}. Digests are cached by resource path
+ * together with the modification time of the resource, so that a digest is
+ * only computed again if the resource changes.
+ */
+final class ResourceIntegrity {
+
+    private static final String ATTRIBUTE = "integrity";
+
+    /**
+     * A computed digest and the modification time of the resource it was
+     * computed from.
+     */
+    private static final class Digest {
+        private final long lastModified;
+        private final String value;
+
+        private Digest(long lastModified, String value) {
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The resources to compute digests for, or <code>null</code> if the
+     * handler isn't bound to a service.
+     */
+    private final HeadResources resources;
+
+    private final ConcurrentHashMap<String, Digest> digests = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an integrity calculator for the resources of a service.
+     *
+     * @param resources
+     *            the resources of the service, or <code>null</code> to not
+     *            compute any values
+     */
+    ResourceIntegrity(HeadResources resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * Creates a copy of a plan in which each {@link HeadTag#AUTO} integrity
+     * value is replaced by the digest of the referenced resource. The
+     * attribute is removed if the resource cannot be found.
+     *
+     * @param plan
+     *            the plan to update
+     * @return the updated plan, or the original plan if there are no
+     *         automatic integrity values
+     */
+    HeadTagPlan apply(HeadTagPlan plan) {
+        List<HeadTagTemplate> tags = new ArrayList<>(plan.getTags());
+        boolean changed = false;
+        for (int i = 0; i < tags.size(); i++) {
+            HeadTagTemplate tag = tags.get(i);
+            if (!HeadTag.AUTO.equals(tag.getAttributes().get(ATTRIBUTE))) {
+                continue;
+            }
+
+            String path = getPath(tag);
+            String value = path == null ? null : getIntegrity(path);
+            if (value == null) {
+                getLogger().warning("Cannot compute integrity for <"
+                        + tag.getTagName() + "> with attributes "
+                        + tag.getAttributes()
+                        + " since it doesn't reference a local resource");
+            }
+
+            Map<String, String> attributes = new LinkedHashMap<>(
+                    tag.getAttributes());
+            if (value == null) {
+                attributes.remove(ATTRIBUTE);
+            } else {
+                attributes.put(ATTRIBUTE, value);
+            }
+            tags.set(i, tag.withAttributes(attributes));
+            changed = true;
+        }
+        return changed ? new HeadTagPlan(tags) : plan;
+    }
+
+    /**
+     * Checks whether the integrity values computed for a plan are still
+     * valid, i.e. whether none of the resources have been modified since.
+     *
+     * @param plan
+     *            the plan that was passed to {@link #apply(HeadTagPlan)},
+     *            with the {@link HeadTag#AUTO} values and the original URLs
+     * @return <code>true</code> if all values are up to date, otherwise
+     *         <code>false</code>
+     */
+    boolean isCurrent(HeadTagPlan plan) {
+        for (HeadTagTemplate tag : plan.getTags()) {
+            if (!HeadTag.AUTO.equals(tag.getAttributes().get(ATTRIBUTE))) {
+                continue;
+            }
+            String path = getPath(tag);
+            Digest digest = path == null ? null : digests.get(path);
+            if (digest != null && digest.lastModified != getLastModified(path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long getLastModified(String path) {
+        URL url = resources.findResource(path);
+        return url == null ? 0 : HeadTagSourceReader.getLastModified(url);
+    }
+
+    /**
+     * Gets the local path of the resource referenced by a tag, or
+     * <code>null</code> if the tag doesn't reference a local resource.
+     */
+    private static String getPath(HeadTagTemplate tag) {
+        String url = tag.getAttributes().get("href");
+        if (url == null) {
+            url = tag.getAttributes().get("src");
+        }
+        if (url == null) {
+            return null;
+        }
+
+        GeneratorBinding generator = tag.getGenerator();
+        if (generator != null) {
+            for (GeneratorBinding.GeneratedAttribute attribute : generator
+                    .getAttributes()) {
+                if ("href".equalsIgnoreCase(attribute.getName())
+                        || "src".equalsIgnoreCase(attribute.getName())) {
+                    return null;
+                }
+            }
+        }
+        return HeadResources.getLocalPath(url);
+    }
+
+    private String getIntegrity(String path) {
+        if (resources == null) {
+            return null;
+        }
+        URL url = resources.findResource(path);
+        if (url == null) {
+            return null;
+        }
+
+        long lastModified = HeadTagSourceReader.getLastModified(url);
+        Digest digest = digests.get(path);
+        if (digest == null || digest.lastModified != lastModified) {
+            try {
+                digest = new Digest(lastModified, "sha384-"
+                        + Base64.getEncoder().encodeToString(digest(url)));
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING,
+                        "Could not read " + path + " for computing integrity",
+                        e);
+                return null;
+            }
+            digests.put(path, digest);
+        }
+        return digest.value;
+    }
+
+    private static byte[] digest(URL url) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-384");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(
+                    Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(8192);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+                return digest.digest();
+            } catch (URISyntaxException e) {
+                // Fall back to reading through the URL
+            }
+        }
+
+        try (InputStream stream = url.openStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ResourceIntegrity.class.getName());
+    }
+}
@@ -0,0 +1,68 @@
+package org.vaadin.leif.headertags;
+
+/**
+ * Values for the <code>as</code> attribute of {@link Preload}, defining the
+ * type of content being loaded so that the browser can apply the right
+ * priority, headers and content security policy.
+ */
+public enum ResourceType {
+    /**
+     * Used for an audio file.
+     */
+    AUDIO,
+
+    /**
+     * Used for an HTML document for embedding in a frame.
+     */
+    DOCUMENT,
+
+    /**
+     * Used for a resource for an &lt;embed&gt; element.
+     */
+    EMBED,
+
+    /**
+     * Used for a resource loaded using <code>fetch</code> or XHR.
+     */
+    FETCH,
+
+    /**
+     * Used for a font file.
+     */
+    FONT,
+
+    /**
+     * Used for an image.
+     */
+    IMAGE,
+
+    /**
+     * Used for a resource for an &lt;object&gt; element.
+     */
+    OBJECT,
+
+    /**
+     * Used for a JavaScript file.
+     */
+    SCRIPT,
+
+    /**
+     * Used for a style sheet.
+     */
+    STYLE,
+
+    /**
+     * Used for a WebVTT file.
+     */
+    TRACK,
+
+    /**
+     * Used for a video file.
+     */
+    VIDEO,
+
+    /**
+     * Used for a web worker or shared worker script.
+     */
+    WORKER;
+}
@@ -0,0 +1,170 @@
+package org.vaadin.leif.headertags;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of recent durations. Values are recorded in power of two buckets
+ * in a ring of time slices, so that only values from the last
+ * {@link #SLICES} &times; {@link #SLICE_SECONDS} seconds are included in the
+ * statistics. Recording is lock free; statistics are approximate.
+ */
+final class RollingHistogram {
+
+    static final int SLICES = 6;
+
+    static final int SLICE_SECONDS = 10;
+
+    private static final int BUCKETS = 64;
+
+    /**
+     * Counts for a single time slice.
+     */
+    private static final class Slice {
+        private final AtomicLong epoch = new AtomicLong(-1);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private void reset(long newEpoch) {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+            epoch.set(newEpoch);
+        }
+    }
+
+    private final Slice[] slices = new Slice[SLICES];
+
+    RollingHistogram() {
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new Slice();
+        }
+    }
+
+    private static long currentEpoch() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime())
+                / SLICE_SECONDS;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *            the value to record, negative values are recorded as 0
+     */
+    void record(long value) {
+        value = Math.max(0, value);
+        long epoch = currentEpoch();
+        Slice slice = slices[(int) (epoch % SLICES)];
+        long sliceEpoch = slice.epoch.get();
+        if (sliceEpoch != epoch) {
+            synchronized (slice) {
+                if (slice.epoch.get() != epoch) {
+                    slice.reset(epoch);
+                }
+            }
+        }
+
+        // Bucket i contains values from 2^i to 2^(i+1) - 1, 0 is in bucket 0
+        slice.buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(value | 1));
+        slice.count.incrementAndGet();
+        slice.sum.addAndGet(value);
+        long max;
+        do {
+            max = slice.max.get();
+        } while (value > max && !slice.max.compareAndSet(max, value));
+    }
+
+    /**
+     * Gets the number of values recorded in the window.
+     *
+     * @return the number of values
+     */
+    long getCount() {
+        long count = 0;
+        long epoch = currentEpoch();
+        for (Slice slice : slices) {
+            if (isCurrent(slice, epoch)) {
+                count += slice.count.get();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the mean of the values recorded in the window.
+     *
+     * @return the mean, or 0 if there are no values
+     */
+    double getMean() {
+        long count = 0;
+        long sum = 0;
+        long epoch = currentEpoch();
+        for (Slice slice : slices) {
+            if (isCurrent(slice, epoch)) {
+                count += slice.count.get();
+                sum += slice.sum.get();
+            }
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Gets the largest value recorded in the window.
+     *
+     * @return the max value, or 0 if there are no values
+     */
+    long getMax() {
+        long max = 0;
+        long epoch = currentEpoch();
+        for (Slice slice : slices) {
+            if (isCurrent(slice, epoch)) {
+                max = Math.max(max, slice.max.get());
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets an approximate percentile of the values recorded in the window. The
+     * result is the upper bound of the bucket containing the percentile.
+     *
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the approximate percentile value, or 0 if there are no values
+     */
+    long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        long epoch = currentEpoch();
+        for (Slice slice : slices) {
+            if (isCurrent(slice, epoch)) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    long count = slice.buckets.get(i);
+                    counts[i] += count;
+                    total += count;
+                }
+            }
+        }
+
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold && seen > 0) {
+                return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isCurrent(Slice slice, long epoch) {
+        return epoch - slice.epoch.get() < SLICES;
+    }
+}
@@ -0,0 +1,77 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a &lt;script&gt; tag that loads an external script for the host page
+ * of a UI class.
+ * <p>
+ * To add multiple tags, use {@link ScriptTags}
+ */
+@HeadTag("script")
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Documented
+@Inherited
+@Repeatable(ScriptTags.class)
+public @interface Script {
+    /**
+     * The URL of the script.
+     *
+     * @return the src attribute
+     */
+    @HeadTagAttribute("src")
+    public String value();
+
+    /**
+     * The type of the script, e.g. <code>module</code>.
+     *
+     * @return the type attribute
+     */
+    public String type() default HeadTag.NULL_VALUE;
+
+    /**
+     * Whether the script should be run as soon as it's loaded instead of
+     * blocking parsing of the page.
+     *
+     * @return the async attribute
+     */
+    public boolean async() default false;
+
+    /**
+     * Whether the script should be run after the page has been parsed.
+     *
+     * @return the defer attribute
+     */
+    public boolean defer() default false;
+
+    /**
+     * The CORS mode to use when fetching the script.
+     *
+     * @return the crossorigin attribute
+     */
+    public CrossOrigin crossorigin() default CrossOrigin.UNSPECIFIED;
+
+    /**
+     * The integrity attribute value of the script tag. Use
+     * {@link HeadTag#AUTO} to compute the value from the content of a local
+     * script.
+     *
+     * @return the integrity attribute
+     */
+    public String integrity() default HeadTag.NULL_VALUE;
+
+    /**
+     * Conditions that must all be fulfilled for the tag to be included.
+     * Default is to always include the tag.
+     *
+     * @return the conditions
+     */
+    public Condition[] when() default {};
+}
@@ -0,0 +1,702 @@
+package org.vaadin.leif.headertags.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+import org.vaadin.leif.headertags.Condition;
+import org.vaadin.leif.headertags.GeneratorContext;
+import org.vaadin.leif.headertags.HeadTag;
+import org.vaadin.leif.headertags.HeadTagAttribute;
+import org.vaadin.leif.headertags.HeadTagContent;
+import org.vaadin.leif.headertags.HeadTagGenerators;
+import org.vaadin.leif.headertags.HeadTagParameterResolver;
+import org.vaadin.leif.headertags.HeadTagRegistry;
+import org.vaadin.leif.headertags.HeadTagSource;
+
+/**
+ * Annotation processor that resolves the head tags of UI classes at build
+ * time and generates a {@link HeadTagRegistry} for each UI class that defines
+ * head tags. The generated registry is used at runtime instead of inspecting
+ * annotations using reflection.
+ * <p>
+ * The processor also validates generator classes, reporting generator methods
+ * with unsupported parameter or return types as compilation errors. UI classes
+ * with definitions that cannot be resolved at build time are skipped, which
+ * means that their head tags are resolved using reflection at runtime.
+ * <p>
+ * The processor only runs for compilations that use any annotation of this
+ * add-on. A UI class that only uses custom annotations defined in another
+ * library is resolved using reflection at runtime.
+ */
+@SupportedAnnotationTypes("org.vaadin.leif.headertags.*")
+public class HeadTagProcessor extends AbstractProcessor {
+
+    private static final String UI_CLASS = "com.vaadin.ui.UI";
+
+    /**
+     * Generator parameter types that are always supported. Other types need a
+     * {@link HeadTagParameterResolver}, which can only be found at runtime.
+     */
+    private static final Set<String> BUILT_IN_PARAMETER_TYPES = new HashSet<>(
+            Arrays.asList("com.vaadin.server.VaadinRequest",
+                    "com.vaadin.server.VaadinSession",
+                    "com.vaadin.server.VaadinService",
+                    "com.vaadin.server.BootstrapPageResponse",
+                    Locale.class.getName(), Class.class.getName(),
+                    GeneratorContext.class.getName()));
+
+    /**
+     * Thrown when a head tag definition cannot be resolved at build time.
+     */
+    private static class UnsupportedDefinitionException extends Exception {
+        private UnsupportedDefinitionException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A head tag resolved from annotations.
+     */
+    private static class ConditionModel {
+        private String header;
+        private String matches = HeadTag.NULL_VALUE;
+        private String contains = HeadTag.NULL_VALUE;
+        private boolean negate;
+    }
+
+    private static class TagModel {
+        private final String tagName;
+        private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+        private final List<ConditionModel> conditions = new ArrayList<ConditionModel>();
+        private String content;
+        private TypeElement declaringClass;
+        private String declaringClassName;
+        private String instanceClassName;
+
+        /**
+         * The location of a {@link HeadTagSource} file to read tags from when
+         * the registry is used, or <code>null</code> for a regular tag.
+         */
+        private String sourceLocation;
+
+        private TagModel(String tagName) {
+            this.tagName = tagName;
+        }
+    }
+
+    private Elements elements;
+
+    private Types types;
+
+    private Messager messager;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations,
+            RoundEnvironment roundEnv) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        messager = processingEnv.getMessager();
+
+        TypeElement uiType = elements.getTypeElement(UI_CLASS);
+        if (uiType == null) {
+            // Vaadin not on the classpath, nothing to do
+            return false;
+        }
+
+        for (TypeElement type : ElementFilter.typesIn(roundEnv
+                .getRootElements())) {
+            processType(type, uiType);
+        }
+
+        // Never claim any annotations
+        return false;
+    }
+
+    private void processType(TypeElement type, TypeElement uiType) {
+        if (type.getKind() == ElementKind.CLASS
+                && !type.getModifiers().contains(Modifier.ABSTRACT)
+                && types.isSubtype(types.erasure(type.asType()),
+                        types.erasure(uiType.asType()))) {
+            processUiClass(type);
+        }
+
+        for (TypeElement member : ElementFilter.typesIn(type
+                .getEnclosedElements())) {
+            processType(member, uiType);
+        }
+    }
+
+    private void processUiClass(TypeElement uiClass) {
+        List<TagModel> tags = new ArrayList<TagModel>();
+        boolean valid;
+        try {
+            valid = collectTags(uiClass, tags);
+        } catch (UnsupportedDefinitionException e) {
+            messager.printMessage(Kind.NOTE, "Head tags of "
+                    + uiClass.getQualifiedName()
+                    + " will be resolved at runtime: " + e.getMessage(),
+                    uiClass);
+            return;
+        }
+
+        if (valid && !tags.isEmpty()) {
+            writeRegistry(uiClass, tags);
+        }
+    }
+
+    /**
+     * Collects the tags of a UI class in the same order as they would be
+     * found using reflection.
+     *
+     * @return <code>true</code> if all generators are valid, otherwise
+     *         <code>false</code>
+     */
+    private boolean collectTags(TypeElement uiClass, List<TagModel> tags)
+            throws UnsupportedDefinitionException {
+        processAnnotatedType(uiClass, null, tags);
+
+        AnnotationMirror source = findAnnotation(
+                elements.getAllAnnotationMirrors(uiClass),
+                HeadTagSource.class.getName());
+        if (source != null) {
+            for (AnnotationValue value : getArray(source, "value")) {
+                TagModel tag = new TagModel(null);
+                tag.sourceLocation = (String) value.getValue();
+                tags.add(tag);
+            }
+        }
+
+        // Sorted by binary name like Class.getDeclaredClasses at runtime
+        List<TypeElement> nestedClasses = new ArrayList<TypeElement>(
+                ElementFilter.typesIn(uiClass.getEnclosedElements()));
+        Collections.sort(nestedClasses, Comparator.comparing(
+                type -> elements.getBinaryName(type).toString()));
+        Set<TypeElement> generatorCandidates = new LinkedHashSet<TypeElement>(
+                nestedClasses);
+        AnnotationMirror generators = findAnnotation(
+                elements.getAllAnnotationMirrors(uiClass),
+                HeadTagGenerators.class.getName());
+        if (generators != null) {
+            for (AnnotationValue value : getArray(generators, "value")) {
+                TypeMirror generatorType = (TypeMirror) value.getValue();
+                if (generatorType.getKind() != TypeKind.DECLARED) {
+                    throw new UnsupportedDefinitionException(
+                            "Unresolved generator class " + generatorType);
+                }
+                generatorCandidates.add((TypeElement) types
+                        .asElement(generatorType));
+            }
+        }
+
+        boolean valid = true;
+        for (TypeElement generatorClass : generatorCandidates) {
+            int tagCount = tags.size();
+
+            // @Inherited does not inherit from interfaces, must check manually
+            for (TypeMirror iface : generatorClass.getInterfaces()) {
+                processAnnotatedType((TypeElement) types.asElement(iface),
+                        generatorClass, tags);
+            }
+            processAnnotatedType(generatorClass, generatorClass, tags);
+
+            for (TagModel tag : tags.subList(tagCount, tags.size())) {
+                valid &= validateGenerator(generatorClass,
+                        tag.declaringClass);
+            }
+        }
+
+        return valid;
+    }
+
+    private void processAnnotatedType(TypeElement declaringClass,
+            TypeElement instanceClass, List<TagModel> tags)
+            throws UnsupportedDefinitionException {
+        for (AnnotationMirror annotation : elements
+                .getAllAnnotationMirrors(declaringClass)) {
+            checkHeadTagAnnotation(annotation, declaringClass, instanceClass,
+                    tags);
+        }
+    }
+
+    private void checkHeadTagAnnotation(AnnotationMirror annotation,
+            TypeElement declaringClass, TypeElement instanceClass,
+            List<TagModel> tags) throws UnsupportedDefinitionException {
+        List<AnnotationMirror> headTagPath = findHeadTagPath(annotation,
+                new LinkedHashSet<String>());
+        if (headTagPath != null) {
+            tags.add(createTag(headTagPath, declaringClass, instanceClass));
+            return;
+        }
+
+        // Check for an array value annotation
+        for (ExecutableElement method : ElementFilter.methodsIn(annotation
+                .getAnnotationType().asElement().getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals("value")
+                    && isAnnotationArray(method.getReturnType())) {
+                for (AnnotationValue member : getArray(annotation, "value")) {
+                    checkHeadTagAnnotation((AnnotationMirror) member.getValue(),
+                            declaringClass, instanceClass, tags);
+                }
+            }
+        }
+    }
+
+    private static boolean isAnnotationArray(TypeMirror type) {
+        if (type.getKind() != TypeKind.ARRAY) {
+            return false;
+        }
+        TypeMirror componentType = ((ArrayType) type).getComponentType();
+        return componentType.getKind() == TypeKind.DECLARED
+                && ((DeclaredType) componentType).asElement().getKind() == ElementKind.ANNOTATION_TYPE;
+    }
+
+    private List<AnnotationMirror> findHeadTagPath(AnnotationMirror annotation,
+            Set<String> visited) {
+        TypeElement annotationType = (TypeElement) annotation
+                .getAnnotationType().asElement();
+        String name = annotationType.getQualifiedName().toString();
+
+        // Terminate recursion when reaching a @HeadTag
+        if (name.equals(HeadTag.class.getName())) {
+            List<AnnotationMirror> headTagPath = new ArrayList<AnnotationMirror>();
+            headTagPath.add(annotation);
+            return headTagPath;
+        }
+
+        if (!visited.add(name)) {
+            return null;
+        }
+
+        // Recurse all meta annotations, ignoring built-in annotations
+        for (AnnotationMirror metaAnnotation : annotationType
+                .getAnnotationMirrors()) {
+            if (getName(metaAnnotation).startsWith("java.lang")) {
+                continue;
+            }
+
+            List<AnnotationMirror> headTagPath = findHeadTagPath(
+                    metaAnnotation, visited);
+            if (headTagPath != null) {
+                headTagPath.add(annotation);
+                return headTagPath;
+            }
+        }
+
+        return null;
+    }
+
+    private TagModel createTag(List<AnnotationMirror> headTagPath,
+            TypeElement declaringClass, TypeElement instanceClass)
+            throws UnsupportedDefinitionException {
+        TagModel tag = new TagModel(
+                (String) getValue(headTagPath.get(0), "value").getValue());
+
+        for (AnnotationMirror annotation : headTagPath.subList(1,
+                headTagPath.size())) {
+            // Sorted by method name like the annotation methods at runtime
+            List<Entry<? extends ExecutableElement, ? extends AnnotationValue>> entries = new ArrayList<>(
+                    elements.getElementValuesWithDefaults(annotation)
+                            .entrySet());
+            Collections.sort(entries, Comparator.comparing(
+                    entry -> entry.getKey().getSimpleName().toString()));
+            for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : entries) {
+                Object value = entry.getValue().getValue();
+                if (isConditionArray(entry.getKey().getReturnType())) {
+                    @SuppressWarnings("unchecked")
+                    List<? extends AnnotationValue> members = (List<? extends AnnotationValue>) value;
+                    for (AnnotationValue member : members) {
+                        tag.conditions.add(createCondition(
+                                (AnnotationMirror) member.getValue(),
+                                declaringClass, annotation));
+                    }
+                    continue;
+                }
+                if (value instanceof VariableElement) {
+                    value = getEnumAttributeValue((VariableElement) value);
+                } else if (value instanceof Boolean) {
+                    value = ((Boolean) value).booleanValue() ? ""
+                            : HeadTag.NULL_VALUE;
+                }
+                if (!(value instanceof String)) {
+                    throw new UnsupportedDefinitionException(
+                            "Attribute method " + getName(annotation) + "."
+                                    + entry.getKey().getSimpleName()
+                                    + " does not return a String, a boolean or an enum");
+                }
+                if (entry.getKey().getAnnotation(HeadTagContent.class) != null) {
+                    tag.content = HeadTag.NULL_VALUE.equals(value) ? null
+                            : (String) value;
+                    continue;
+                }
+                String name = getAttributeName(entry.getKey());
+                if (HeadTag.NULL_VALUE.equals(value)) {
+                    tag.attributes.remove(name);
+                } else {
+                    tag.attributes.put(name, (String) value);
+                }
+            }
+        }
+
+        if (instanceClass != null) {
+            tag.declaringClass = declaringClass;
+            tag.declaringClassName = elements.getBinaryName(declaringClass)
+                    .toString();
+            tag.instanceClassName = elements.getBinaryName(instanceClass)
+                    .toString();
+        }
+
+        return tag;
+    }
+
+    private boolean isConditionArray(TypeMirror type) {
+        return type.getKind() == TypeKind.ARRAY
+                && isType(((ArrayType) type).getComponentType(),
+                        Condition.class.getName());
+    }
+
+    private ConditionModel createCondition(AnnotationMirror condition,
+            TypeElement declaringClass, AnnotationMirror annotation) {
+        ConditionModel model = new ConditionModel();
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements
+                .getElementValuesWithDefaults(condition).entrySet()) {
+            Object value = entry.getValue().getValue();
+            switch (entry.getKey().getSimpleName().toString()) {
+            case "header":
+                model.header = (String) value;
+                break;
+            case "matches":
+                model.matches = (String) value;
+                break;
+            case "contains":
+                model.contains = (String) value;
+                break;
+            case "negate":
+                model.negate = ((Boolean) value).booleanValue();
+                break;
+            default:
+                break;
+            }
+        }
+
+        if (!HeadTag.NULL_VALUE.equals(model.matches)) {
+            if (!HeadTag.NULL_VALUE.equals(model.contains)) {
+                messager.printMessage(Kind.ERROR,
+                        "Condition cannot define both matches and contains",
+                        declaringClass, annotation);
+            }
+            try {
+                Pattern.compile(model.matches);
+            } catch (PatternSyntaxException e) {
+                messager.printMessage(Kind.ERROR,
+                        "Invalid condition pattern: " + e.getMessage(),
+                        declaringClass, annotation);
+            }
+        }
+
+        return model;
+    }
+
+    private boolean validateGenerator(TypeElement instanceClass,
+            TypeElement declaringClass) {
+        boolean valid = true;
+
+        if (instanceClass.getKind() != ElementKind.CLASS
+                || instanceClass.getModifiers().contains(Modifier.ABSTRACT)) {
+            messager.printMessage(Kind.ERROR,
+                    "Head tag generator must be a non-abstract class",
+                    instanceClass);
+            valid = false;
+        } else if (instanceClass.getNestingKind().isNested()
+                && !instanceClass.getModifiers().contains(Modifier.STATIC)) {
+            messager.printMessage(Kind.ERROR,
+                    "Head tag generator nested in another class must be static",
+                    instanceClass);
+            valid = false;
+        } else if (!hasDefaultConstructor(instanceClass)) {
+            messager.printMessage(Kind.ERROR,
+                    "Head tag generator must have a no-argument constructor",
+                    instanceClass);
+            valid = false;
+        }
+
+        TypeMirror stringType = elements.getTypeElement(
+                String.class.getName()).asType();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements
+                .getAllMembers(declaringClass))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC)
+                    || modifiers.contains(Modifier.STATIC)
+                    || isObjectMethod(method)) {
+                continue;
+            }
+
+            for (VariableElement parameter : method.getParameters()) {
+                TypeMirror type = types.erasure(parameter.asType());
+                if (type.getKind() != TypeKind.DECLARED) {
+                    messager.printMessage(Kind.ERROR,
+                            "Unsupported generator parameter type: " + type,
+                            parameter);
+                    valid = false;
+                } else if (!BUILT_IN_PARAMETER_TYPES.contains(
+                        ((TypeElement) types.asElement(type))
+                                .getQualifiedName().toString())) {
+                    messager.printMessage(Kind.NOTE, "Generator parameter type "
+                            + type + " requires a registered "
+                            + HeadTagParameterResolver.class.getSimpleName(),
+                            parameter);
+                }
+            }
+
+            if (!types.isAssignable(stringType, method.getReturnType())) {
+                messager.printMessage(Kind.ERROR,
+                        "Generator method must return a String", method);
+                valid = false;
+            }
+        }
+
+        return valid;
+    }
+
+    private static boolean hasDefaultConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter
+                .constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isObjectMethod(ExecutableElement method) {
+        return ((TypeElement) method.getEnclosingElement()).getQualifiedName()
+                .contentEquals(Object.class.getName());
+    }
+
+    private boolean isType(TypeMirror type, String className) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) types.asElement(type)).getQualifiedName()
+                        .contentEquals(className);
+    }
+
+    private static String getAttributeName(ExecutableElement method) {
+        AnnotationMirror headTagAttribute = findAnnotation(
+                method.getAnnotationMirrors(),
+                HeadTagAttribute.class.getName());
+        if (headTagAttribute != null) {
+            return (String) getValue(headTagAttribute, "value").getValue();
+        }
+
+        // camelCase -> camel-case
+        StringBuilder b = new StringBuilder();
+        String methodName = method.getSimpleName().toString();
+        for (int j = 0; j < methodName.length(); j++) {
+            char c = methodName.charAt(j);
+            if (Character.isUpperCase(c)) {
+                b.append('-');
+                b.append(Character.toLowerCase(c));
+            } else {
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+    private static String getEnumAttributeValue(VariableElement constant) {
+        AnnotationMirror headTagAttribute = findAnnotation(
+                constant.getAnnotationMirrors(),
+                HeadTagAttribute.class.getName());
+        if (headTagAttribute != null) {
+            return (String) getValue(headTagAttribute, "value").getValue();
+        }
+
+        // USE_CREDENTIALS -> use-credentials
+        return constant.getSimpleName().toString().toLowerCase(Locale.ROOT)
+                .replace('_', '-');
+    }
+
+    private static String getName(AnnotationMirror annotation) {
+        return ((TypeElement) annotation.getAnnotationType().asElement())
+                .getQualifiedName().toString();
+    }
+
+    private static AnnotationMirror findAnnotation(
+            List<? extends AnnotationMirror> annotations, String name) {
+        for (AnnotationMirror annotation : annotations) {
+            if (getName(annotation).equals(name)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static AnnotationValue getValue(AnnotationMirror annotation,
+            String name) {
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation
+                .getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private List<? extends AnnotationValue> getArray(
+            AnnotationMirror annotation, String name) {
+        for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements
+                .getElementValuesWithDefaults(annotation).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                @SuppressWarnings("unchecked")
+                List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry
+                        .getValue().getValue();
+                return values;
+            }
+        }
+        return new ArrayList<AnnotationValue>();
+    }
+
+    private void writeRegistry(TypeElement uiClass, List<TagModel> tags) {
+        PackageElement uiPackage = elements.getPackageOf(uiClass);
+        String packageName = uiPackage.isUnnamed() ? ""
+                : uiPackage.getQualifiedName().toString();
+
+        StringBuilder simpleName = new StringBuilder();
+        for (Element e = uiClass; e.getKind() != ElementKind.PACKAGE; e = e
+                .getEnclosingElement()) {
+            if (simpleName.length() != 0) {
+                simpleName.insert(0, '_');
+            }
+            simpleName.insert(0, e.getSimpleName());
+        }
+        simpleName.append(HeadTagRegistry.CLASS_NAME_SUFFIX);
+
+        String qualifiedName = packageName.isEmpty() ? simpleName.toString()
+                : packageName + "." + simpleName;
+
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(qualifiedName, uiClass).openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Head tags of " + uiClass.getQualifiedName()
+                    + ", generated by " + getClass().getName() + ".");
+            out.println(" */");
+            out.println("public final class " + simpleName + " implements "
+                    + HeadTagRegistry.class.getName() + " {");
+            out.println("    @Override");
+            out.println("    public void register(Builder builder) {");
+            for (TagModel tag : tags) {
+                if (tag.sourceLocation != null) {
+                    out.println("        builder.source("
+                            + literal(tag.sourceLocation) + ");");
+                    continue;
+                }
+                out.println("        builder.tag(" + literal(tag.tagName) + ")");
+                for (Entry<String, String> attribute : tag.attributes
+                        .entrySet()) {
+                    out.println("                .attribute("
+                            + literal(attribute.getKey()) + ", "
+                            + literal(attribute.getValue()) + ")");
+                }
+                if (tag.content != null) {
+                    out.println("                .content("
+                            + literal(tag.content) + ")");
+                }
+                for (ConditionModel condition : tag.conditions) {
+                    out.println("                .condition("
+                            + literal(condition.header) + ", "
+                            + literal(condition.matches) + ", "
+                            + literal(condition.contains) + ", "
+                            + condition.negate + ")");
+                }
+                if (tag.instanceClassName != null) {
+                    out.println("                .generator("
+                            + literal(tag.declaringClassName) + ", "
+                            + literal(tag.instanceClassName) + ")");
+                }
+                out.println("                .add();");
+            }
+            out.println("    }");
+            out.println("}");
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR,
+                    "Could not write head tag registry " + qualifiedName
+                            + ": " + e.getMessage(), uiClass);
+        }
+    }
+
+    private static String literal(String value) {
+        StringBuilder b = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                b.append("\\\"");
+                break;
+            case '\\':
+                b.append("\\\\");
+                break;
+            case '\n':
+                b.append("\\n");
+                break;
+            case '\r':
+                b.append("\\r");
+                break;
+            case '\t':
+                b.append("\\t");
+                break;
+            default:
+                if (c < 0x20 || c > 0x7e) {
+                    b.append(String.format("\\u%04x", (int) c));
+                } else {
+                    b.append(c);
+                }
+            }
+        }
+        return b.append('"').toString();
+    }
+}
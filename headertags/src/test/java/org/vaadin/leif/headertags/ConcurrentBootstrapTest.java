@@ -0,0 +1,193 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import com.vaadin.server.BootstrapPageResponse;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.communication.ServletBootstrapHandler;
+import com.vaadin.ui.UI;
+
+/**
+ * Checks that a handler shared by many threads produces the same pages as a
+ * single thread, also while its per UI class caches are being populated.
+ * Throughput at higher thread counts is measured by the
+ * <code>ConcurrentBootstrapHarness</code> in the benchmarks module.
+ */
+public class ConcurrentBootstrapTest extends TestCase {
+
+    private static final int THREADS = 4;
+
+    private static final int CALLS = 400;
+
+    private static final int ROUNDS = 5;
+
+    private static final String BOOTSTRAP_PAGE = "<!DOCTYPE html><html><head>"
+            + "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\">"
+            + "<meta http-equiv=\"X-UA-Compatible\" content=\"IE=11\">"
+            + "<link rel=\"shortcut icon\" href=\"VAADIN/themes/valo/favicon.ico\">"
+            + "</head><body></body></html>";
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (iPhone) Mobile Safari",
+            "Mozilla/5.0 (Windows NT 10.0) Firefox" };
+
+    public abstract static class TestUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Never initialized
+        }
+    }
+
+    @Viewport("width=device-width, initial-scale=1")
+    @Meta(httpEquiv = "X-UA-Compatible", content = "IE=edge")
+    @Meta(name = "description", content = "Static")
+    @Link(rel = "stylesheet", href = "styles.css")
+    @Script(value = "app.js", defer = true)
+    public static class StaticUI extends TestUI {
+    }
+
+    @Meta(name = "mobile", content = "yes", when = @Condition(header = "User-Agent", contains = "Mobile"))
+    @Link(rel = "canonical", href = "https://example.com/")
+    public static class ConditionalUI extends TestUI {
+        @Meta(name = "agent")
+        public static class AgentGenerator {
+            public String content(VaadinRequest request) {
+                return request.getHeader("User-Agent");
+            }
+        }
+    }
+
+    @Meta(name = "cached")
+    @CacheableGenerator(headers = "User-Agent")
+    public static class CachedGenerator {
+        public String content(VaadinRequest request, Locale locale) {
+            return locale + " " + request.getHeader("User-Agent");
+        }
+    }
+
+    public static class ArticleGenerator {
+        public String getHeadline(VaadinRequest request) {
+            return request.getHeader("User-Agent").contains("Mobile")
+                    ? "Mobile" : "Desktop";
+        }
+    }
+
+    @JsonLd(type = "Article", generator = ArticleGenerator.class)
+    @HeadTagGenerators(CachedGenerator.class)
+    public static class GeneratorUI extends TestUI {
+    }
+
+    private static final List<Class<? extends UI>> UI_CLASSES = new ArrayList<>();
+    static {
+        UI_CLASSES.add(StaticUI.class);
+        UI_CLASSES.add(ConditionalUI.class);
+        UI_CLASSES.add(GeneratorUI.class);
+    }
+
+    private final Document template = Jsoup.parse(BOOTSTRAP_PAGE);
+
+    private final List<Class<? extends UI>> uiClasses = new ArrayList<>();
+
+    private final List<VaadinRequest> requests = new ArrayList<>();
+
+    private final List<String> expectedHeads = new ArrayList<>();
+
+    @Override
+    protected void setUp() {
+        HeaderTagHandler handler = new HeaderTagHandler();
+        for (Class<? extends UI> uiClass : UI_CLASSES) {
+            for (String userAgent : USER_AGENTS) {
+                VaadinRequest request = createRequest(userAgent);
+                uiClasses.add(uiClass);
+                requests.add(request);
+                expectedHeads.add(bootstrap(handler, uiClass, request));
+            }
+        }
+    }
+
+    public void testConcurrentPagesMatchSingleThreaded() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            // A new handler so that its caches are populated concurrently
+            HeaderTagHandler handler = new HeaderTagHandler();
+            AtomicInteger nextCall = new AtomicInteger();
+            CountDownLatch startSignal = new CountDownLatch(1);
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    futures.add(executor.submit(() -> {
+                        startSignal.await();
+                        int call;
+                        while ((call = nextCall.getAndIncrement()) < CALLS) {
+                            int index = call % uiClasses.size();
+                            assertEquals(expectedHeads.get(index), bootstrap(
+                                    handler, uiClasses.get(index), requests
+                                            .get(index)));
+                        }
+                        return null;
+                    }));
+                }
+
+                startSignal.countDown();
+                for (Future<?> future : futures) {
+                    // Propagates any assertion error from the threads
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    private String bootstrap(HeaderTagHandler handler,
+            Class<? extends UI> uiClass, VaadinRequest request) {
+        Document document;
+        synchronized (template) {
+            document = template.clone();
+        }
+        handler.modifyBootstrapPage(new BootstrapPageResponse(
+                new ServletBootstrapHandler(), request, null, uiClass,
+                document, new HashMap<String, Object>(), null));
+        return document.head().outerHtml();
+    }
+
+    private static VaadinRequest createRequest(String userAgent) {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                ConcurrentBootstrapTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getHeader":
+                        return "User-Agent".equalsIgnoreCase((String) args[0])
+                                ? userAgent : null;
+                    case "getLocale":
+                        return Locale.ENGLISH;
+                    case "getPathInfo":
+                        return "/";
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,45 @@
+package org.vaadin.leif.headertags;
+
+import junit.framework.TestCase;
+
+public class CriticalCssTest extends TestCase {
+
+    public void testCommentsAndWhitespaceRemoved() {
+        assertEquals("body{margin:0;color:red}h1,h2>a{padding:0 1em}",
+                CriticalCss.minify("/* reset */\nbody {\n  margin: 0;\n"
+                        + "  color: red;\n}\n\nh1, h2 > a { padding: 0  1em; }"));
+    }
+
+    public void testLastSemicolonRemoved() {
+        assertEquals("a{color:red}", CriticalCss.minify("a { color: red; }"));
+    }
+
+    public void testDescendantSelectorKeepsSpace() {
+        assertEquals("nav a{color:red}",
+                CriticalCss.minify("nav\n\ta { color: red }"));
+    }
+
+    public void testSpaceBeforePseudoClassKept() {
+        // "a :hover" is not the same selector as "a:hover"
+        assertEquals("a :hover{color:red}",
+                CriticalCss.minify("a :hover { color : red }"));
+    }
+
+    public void testCommentBetweenWordsKeepsSpace() {
+        assertEquals("a b{x:y}", CriticalCss.minify("a/**/b{x:y}"));
+    }
+
+    public void testStringsKeptAsIs() {
+        assertEquals("a:after{content:\"  /* not a comment */  \"}",
+                CriticalCss.minify(
+                        "a:after { content: \"  /* not a comment */  \"; }"));
+        assertEquals("a{font-family:'It\\'s  here'}",
+                CriticalCss.minify("a { font-family: 'It\\'s  here' }"));
+    }
+
+    public void testUnterminatedCommentAndString() {
+        assertEquals("a{b:c}", CriticalCss.minify("a{b:c}/* open"));
+        assertEquals("a{content:\"open", CriticalCss.minify(
+                "a{content:\"open"));
+    }
+}
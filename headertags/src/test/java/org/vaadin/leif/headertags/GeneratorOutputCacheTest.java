@@ -0,0 +1,167 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import com.vaadin.server.VaadinRequest;
+
+public class GeneratorOutputCacheTest extends TestCase {
+
+    @CacheableGenerator(headers = "User-Agent", locale = true, keyMethod = "key")
+    public static class KeyedGenerator {
+        public static String key(VaadinRequest request) {
+            return request.getParameter("v");
+        }
+    }
+
+    @CacheableGenerator(maxSize = 2)
+    public static class SmallGenerator {
+    }
+
+    @CacheableGenerator(maxSize = 10)
+    public static class ConcurrentGenerator {
+    }
+
+    @CacheableGenerator(ttlSeconds = 1)
+    public static class ShortLivedGenerator {
+    }
+
+    @CacheableGenerator(maxSize = 0)
+    public static class DisabledGenerator {
+    }
+
+    @CacheableGenerator(maxSize = -1)
+    public static class NegativeSizeGenerator {
+    }
+
+    @CacheableGenerator(ttlSeconds = 0)
+    public static class NoTtlGenerator {
+    }
+
+    @CacheableGenerator(keyMethod = "missing")
+    public static class MissingKeyMethodGenerator {
+    }
+
+    public void testKeyContainsAllDimensions() {
+        GeneratorOutputCache cache = createCache(KeyedGenerator.class);
+
+        Object key = cache.createKey(createRequest("Firefox", Locale.ENGLISH,
+                "1"));
+        assertEquals(key, cache.createKey(createRequest("Firefox",
+                Locale.ENGLISH, "1")));
+        assertFalse(key.equals(cache.createKey(createRequest("Chrome",
+                Locale.ENGLISH, "1"))));
+        assertFalse(key.equals(cache.createKey(createRequest("Firefox",
+                Locale.GERMAN, "1"))));
+        assertFalse(key.equals(cache.createKey(createRequest("Firefox",
+                Locale.ENGLISH, "2"))));
+    }
+
+    public void testKeyWithoutDimensionsIsShared() {
+        GeneratorOutputCache cache = createCache(SmallGenerator.class);
+
+        assertEquals(cache.createKey(createRequest("Firefox", Locale.ENGLISH,
+                "1")), cache.createKey(createRequest("Chrome", Locale.GERMAN,
+                "2")));
+    }
+
+    public void testExpiredValueIsRemoved() throws InterruptedException {
+        GeneratorOutputCache cache = createCache(ShortLivedGenerator.class);
+        String[] values = { "a" };
+        cache.put("key", values);
+        assertSame(values, cache.get("key"));
+
+        Thread.sleep(1100);
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws InterruptedException {
+        GeneratorOutputCache cache = createCache(SmallGenerator.class);
+        cache.put("a", new String[] { "a" });
+        Thread.sleep(2);
+        cache.put("b", new String[] { "b" });
+        Thread.sleep(2);
+        assertNotNull(cache.get("a"));
+        Thread.sleep(2);
+
+        cache.put("c", new String[] { "c" });
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    public void testConcurrentPutsDontEvictTooMuch()
+            throws InterruptedException {
+        GeneratorOutputCache cache = createCache(ConcurrentGenerator.class);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    cache.put(thread + "-" + i, new String[0]);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10, cache.size());
+    }
+
+    public void testZeroSizeDisablesCaching() {
+        GeneratorOutputCache cache = createCache(DisabledGenerator.class);
+        cache.put("key", new String[] { "a" });
+
+        assertNull(cache.get("key"));
+    }
+
+    public void testInvalidDefinitionsAreRejected() {
+        for (Class<?> generator : new Class<?>[] {
+                NegativeSizeGenerator.class, NoTtlGenerator.class,
+                MissingKeyMethodGenerator.class }) {
+            try {
+                createCache(generator);
+                fail(generator.getSimpleName() + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+        }
+    }
+
+    private static GeneratorOutputCache createCache(Class<?> generator) {
+        return new GeneratorOutputCache(generator,
+                generator.getAnnotation(CacheableGenerator.class));
+    }
+
+    private static VaadinRequest createRequest(String userAgent,
+            Locale locale, String parameter) {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                GeneratorOutputCacheTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getHeader":
+                        return "User-Agent".equalsIgnoreCase((String) args[0])
+                                ? userAgent : null;
+                    case "getLocale":
+                        return locale;
+                    case "getParameter":
+                        return "v".equals(args[0]) ? parameter : null;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,103 @@
+package org.vaadin.leif.headertags;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Tag;
+
+public class HeadMergerTest extends TestCase {
+
+    private static final String PAGE = "<html><head>"
+            + "<meta http-equiv=\"Content-Type\" content=\"text/html\">"
+            + "<link rel=\"ICON\" href=\"old-1.ico\">"
+            + "<title>Title</title>"
+            + "<link rel=\"icon\" href=\"old-2.ico\">"
+            + "</head><body></body></html>";
+
+    private final HeadMerger merger = new HeadMerger(
+            HeadMerger.DEFAULT_REPLACE_KEYS);
+
+    public void testReplacesInOriginalLocation() {
+        Document document = Jsoup.parse(PAGE);
+        Element newHead = new Element(Tag.valueOf("head"), "");
+        newHead.appendElement("link").attr("rel", "icon").attr("href",
+                "new.png");
+
+        assertEquals(2, merger.merge(document.head(), newHead));
+
+        assertEquals("meta,link,title", getTagNames(document.head()));
+        assertEquals("new.png", document.head().child(1).attr("href"));
+        assertEquals(0, newHead.childNodeSize());
+    }
+
+    public void testAppendsOtherElementsAndNodes() {
+        Document document = Jsoup.parse(PAGE);
+        Element newHead = new Element(Tag.valueOf("head"), "");
+        newHead.appendElement("meta").attr("name", "description");
+        newHead.appendChild(new DataNode("<link rel=\"icon\" href=\"x\">",
+                ""));
+
+        assertEquals(0, merger.merge(document.head(), newHead));
+
+        assertEquals("meta,link,title,link,meta",
+                getTagNames(document.head()));
+        assertEquals(6, document.head().childNodeSize());
+    }
+
+    public void testNoKeysAlwaysAppends() {
+        Document document = Jsoup.parse(PAGE);
+        Element newHead = new Element(Tag.valueOf("head"), "");
+        newHead.appendElement("link").attr("rel", "icon");
+
+        assertEquals(0, new HeadMerger("").merge(document.head(), newHead));
+        assertEquals(5, document.head().children().size());
+    }
+
+    public void testMayReplace() {
+        assertTrue(merger.mayReplace(createTag("link", "rel", " Icon ")));
+        assertFalse(merger.mayReplace(createTag("link", "rel", "stylesheet")));
+        assertFalse(merger.mayReplace(createTag("script", "rel", "icon")));
+    }
+
+    public void testParseKey() {
+        String[] parts = HeadMerger.parseKey(" Link[REL=Shortcut Icon] ");
+        assertEquals("link", parts[0]);
+        assertEquals("rel", parts[1]);
+        assertEquals("Shortcut Icon", parts[2]);
+    }
+
+    public void testInvalidKey() {
+        try {
+            new HeadMerger("link[rel]");
+            fail("Should not accept a key without a value");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    private static HeadTagTemplate createTag(String tagName, String name,
+            String value) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put(name, value);
+        return new HeadTagTemplate(tagName, attributes,
+                Collections.emptyList(), null);
+    }
+
+    private static String getTagNames(Element head) {
+        StringBuilder names = new StringBuilder();
+        for (Element child : head.children()) {
+            if (names.length() != 0) {
+                names.append(',');
+            }
+            names.append(child.tagName());
+        }
+        return names.toString();
+    }
+}
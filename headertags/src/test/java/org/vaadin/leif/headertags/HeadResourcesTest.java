@@ -0,0 +1,218 @@
+package org.vaadin.leif.headertags;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+
+public class HeadResourcesTest extends TestCase {
+
+    /**
+     * The result of a request to the handler.
+     */
+    private static final class Response {
+        private boolean handled;
+        private int status = 200;
+        private final Map<String, String> headers = new HashMap<>();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    }
+
+    private File directory;
+
+    private HeadResources resources;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("resources").toFile();
+        resources = new HeadResources(null) {
+            @Override
+            URL findResource(String path) {
+                File file = new File(directory, path);
+                try {
+                    return file.exists() ? file.toURI().toURL() : null;
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testAcceptsGzip() {
+        assertTrue(HeadResources.acceptsGzip("gzip"));
+        assertTrue(HeadResources.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(HeadResources.acceptsGzip("br, *"));
+        assertTrue(HeadResources.acceptsGzip("x-gzip; q=1"));
+
+        assertFalse(HeadResources.acceptsGzip(null));
+        assertFalse(HeadResources.acceptsGzip(""));
+        assertFalse(HeadResources.acceptsGzip("gzip;q=0"));
+        assertFalse(HeadResources.acceptsGzip("gzip; Q=0.000, *"));
+        assertFalse(HeadResources.acceptsGzip("*;q=0"));
+        assertFalse(HeadResources.acceptsGzip("br, deflate"));
+        assertFalse(HeadResources.acceptsGzip("gzip;q=invalid"));
+    }
+
+    public void testGzipOnlyWhenAccepted() throws IOException {
+        String content = repeat("body{margin:0}", 100);
+        String url = rewrite("styles.css", content);
+
+        Response gzipped = request("/" + url, "gzip, deflate");
+        assertEquals("gzip", gzipped.headers.get("Content-Encoding"));
+        assertTrue(gzipped.content.size() < content.length());
+
+        Response plain = request("/" + url, "gzip;q=0, deflate");
+        assertNull(plain.headers.get("Content-Encoding"));
+        assertEquals(content, plain.content.toString("UTF-8"));
+    }
+
+    public void testOnlyPathsBelowServletRootAreHandled() throws IOException {
+        String url = rewrite("styles.css", "body{margin:0}");
+
+        assertEquals(200, request("/" + url, null).status);
+        assertFalse(request("/view/" + url, null).handled);
+        assertFalse(request("/styles.css", null).handled);
+
+        Response unknown = request("/" + HeadResources.PATH_PREFIX
+                + "unknown/styles.css", null);
+        assertTrue(unknown.handled);
+        assertEquals(404, unknown.status);
+    }
+
+    public void testLinksResolvedFromRoot() {
+        assertEquals("", HeadResources.getPathToRoot(null));
+        assertEquals("", HeadResources.getPathToRoot("/"));
+        assertEquals("", HeadResources.getPathToRoot("/view"));
+        assertEquals("../", HeadResources.getPathToRoot("/view/"));
+        assertEquals("../../", HeadResources.getPathToRoot("/a/b/c"));
+
+        Element head = Jsoup.parse("<link rel=stylesheet href="
+                + "headertags/abc/a.css><link rel=stylesheet href=b.css>")
+                .head();
+        HeadResources.resolveFromRoot(head, "../");
+
+        assertEquals("../headertags/abc/a.css", head.child(0).attr("href"));
+        assertEquals("b.css", head.child(1).attr("href"));
+    }
+
+    public void testReloadForgetsOldUrls() throws IOException {
+        File file = write("app.css", "one");
+        HeadTagPlan plan = createPlan("app.css");
+        HeadTagPlan rewritten = resources.rewrite(plan);
+        String oldUrl = rewritten.getTags().get(0).getAttributes().get("href");
+        assertTrue(resources.isServed(rewritten));
+
+        Files.write(file.toPath(), "two".getBytes(StandardCharsets.UTF_8));
+        resources.reload();
+
+        assertFalse(resources.isServed(rewritten));
+        assertEquals(404, request("/" + oldUrl, null).status);
+
+        HeadTagPlan reloaded = resources.rewrite(plan);
+        String newUrl = reloaded.getTags().get(0).getAttributes().get("href");
+        assertFalse(newUrl.equals(oldUrl));
+        assertTrue(resources.isServed(reloaded));
+        assertEquals("two", request("/" + newUrl, null).content.toString(
+                "UTF-8"));
+
+        // Reloading an unchanged resource gives the same URL again
+        resources.reload();
+        assertEquals(newUrl, resources.rewrite(plan).getTags().get(0)
+                .getAttributes().get("href"));
+    }
+
+    private String rewrite(String name, String content) throws IOException {
+        write(name, content);
+        String href = resources.rewrite(createPlan(name)).getTags().get(0)
+                .getAttributes().get("href");
+        assertTrue(href, href.startsWith(HeadResources.PATH_PREFIX));
+        return href;
+    }
+
+    private Response request(String pathInfo, String acceptEncoding)
+            throws IOException {
+        Response response = new Response();
+        VaadinRequest request = (VaadinRequest) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getPathInfo":
+                        return pathInfo;
+                    case "getHeader":
+                        return "Accept-Encoding".equals(args[0])
+                                ? acceptEncoding : null;
+                    default:
+                        return null;
+                    }
+                });
+        VaadinResponse vaadinResponse = (VaadinResponse) Proxy
+                .newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] { VaadinResponse.class },
+                        (proxy, method, args) -> {
+                            switch (method.getName()) {
+                            case "setHeader":
+                                response.headers.put((String) args[0],
+                                        (String) args[1]);
+                                break;
+                            case "setStatus":
+                            case "sendError":
+                                response.status = (Integer) args[0];
+                                break;
+                            case "getOutputStream":
+                                return response.content;
+                            default:
+                                break;
+                            }
+                            return null;
+                        });
+        response.handled = resources.handleRequest(null, request,
+                vaadinResponse);
+        return response;
+    }
+
+    private static HeadTagPlan createPlan(String href) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("rel", "stylesheet");
+        attributes.put("href", href);
+        return new HeadTagPlan(Arrays.asList(new HeadTagTemplate("link",
+                attributes, null)));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,268 @@
+package org.vaadin.leif.headertags;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import org.vaadin.leif.headertags.processor.HeadTagProcessor;
+
+public class HeadTagProcessorTest extends TestCase {
+
+    private static final String SAMPLE_UI = "package sample;\n"
+            + "import java.lang.annotation.*;\n"
+            + "import com.vaadin.server.VaadinRequest;\n"
+            + "import com.vaadin.ui.UI;\n"
+            + "import org.vaadin.leif.headertags.*;\n"
+            + "@Viewport(\"width=device-width, initial-scale=1\")\n"
+            + "@Meta(name = \"description\", content = \"Sample\")\n"
+            + "@Meta(name = \"mobile\", content = \"yes\", when = @Condition("
+            + "header = \"User-Agent\", contains = \"Mobile\"))\n"
+            + "@Link(rel = \"stylesheet\", href = \"a.css\")\n"
+            + "@Link(rel = \"stylesheet\", href = \"b.css\", media = \"print\")\n"
+            + "@Theme(value = \"dark\", mediaQuery = \"screen\")\n"
+            + "@HeadTagGenerators(SampleUI.Canonical.class)\n"
+            + "public class SampleUI extends UI {\n"
+            + "  @Link(rel = \"canonical\", href = HeadTag.NULL_VALUE)\n"
+            + "  public static class Canonical {\n"
+            + "    public String href(VaadinRequest request) {\n"
+            + "      return \"https://example.com/\";\n"
+            + "    }\n"
+            + "  }\n"
+            + "  @Meta(name = \"generated\")\n"
+            + "  public static class Nested {\n"
+            + "    public String content() {\n"
+            + "      return \"nested\";\n"
+            + "    }\n"
+            + "  }\n"
+            + "  @Override\n"
+            + "  protected void init(VaadinRequest request) {\n"
+            + "  }\n"
+            + "}\n";
+
+    private static final String THEME = "package sample;\n"
+            + "import java.lang.annotation.*;\n"
+            + "import org.vaadin.leif.headertags.*;\n"
+            + "@HeadTag(\"meta\")\n"
+            + "@Retention(RetentionPolicy.RUNTIME)\n"
+            + "public @interface Theme {\n"
+            + "  @HeadTagAttribute(\"content\") String value();\n"
+            + "  String name() default \"theme-color\";\n"
+            + "  String mediaQuery() default HeadTag.NULL_VALUE;\n"
+            + "}\n";
+
+    private static final String BASE_UI = "package base;\n"
+            + "import org.vaadin.leif.headertags.*;\n"
+            + "@HeadTagSource(\"tags.json\")\n"
+            + "@InlineCriticalCss(resource = \"critical.css\")\n"
+            + "public abstract class BaseUI extends com.vaadin.ui.UI {\n"
+            + "}\n";
+
+    private static final String SUB_UI = "package sub;\n"
+            + "public class SubUI extends base.BaseUI {\n"
+            + "  @Override\n"
+            + "  protected void init(com.vaadin.server.VaadinRequest r) {\n"
+            + "  }\n"
+            + "}\n";
+
+    private static final Pattern TYPE_NAME = Pattern
+            .compile("public (?:abstract )?(?:class|@interface) (\\w+)");
+
+    private final List<File> directories = new ArrayList<>();
+
+    @Override
+    protected void tearDown() throws IOException {
+        for (File directory : directories) {
+            delete(directory);
+        }
+    }
+
+    public void testRegistryMatchesReflection() throws Exception {
+        try (URLClassLoader processed = compile(true, SAMPLE_UI, THEME);
+                URLClassLoader reflected = compile(false, SAMPLE_UI, THEME)) {
+            Class<?> processedUi = processed.loadClass("sample.SampleUI");
+            Class<?> reflectedUi = reflected.loadClass("sample.SampleUI");
+            assertNotNull(processed.loadClass("sample.SampleUI"
+                    + HeadTagRegistry.CLASS_NAME_SUFFIX));
+            try {
+                reflected.loadClass("sample.SampleUI"
+                        + HeadTagRegistry.CLASS_NAME_SUFFIX);
+                fail("No registry should be generated without the processor");
+            } catch (ClassNotFoundException expected) {
+                // Expected
+            }
+
+            List<String> registryTags = describe(HeadTagPlanCompiler
+                    .compile(processedUi));
+            List<String> reflectionTags = describe(HeadTagPlanCompiler
+                    .compile(reflectedUi));
+
+            assertEquals(8, reflectionTags.size());
+            assertEquals(reflectionTags, registryTags);
+        }
+    }
+
+    public void testConditionWithMatchesAndContainsIsRejected()
+            throws IOException {
+        String source = SAMPLE_UI.replace("contains = \"Mobile\"",
+                "contains = \"Mobile\", matches = \"iPhone\"");
+
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                createDirectory(), true, source, THEME);
+
+        assertEquals(1, errors.size());
+        assertEquals("Condition cannot define both matches and contains",
+                errors.get(0).getMessage(Locale.ROOT));
+    }
+
+    public void testInheritedResourcesResolvedAgainstDeclaringClass()
+            throws Exception {
+        for (boolean process : new boolean[] { true, false }) {
+            try (URLClassLoader loader = compile(process, BASE_UI, SUB_UI)) {
+                File outputDirectory = new File(loader.getURLs()[0].toURI());
+                Files.write(new File(outputDirectory, "base/tags.json")
+                        .toPath(), "[{\"tag\": \"meta\", \"name\": \"base\"}]"
+                        .getBytes(StandardCharsets.UTF_8));
+                Files.write(new File(outputDirectory, "base/critical.css")
+                        .toPath(), "body { margin: 0 }"
+                        .getBytes(StandardCharsets.UTF_8));
+
+                List<String> tags = describe(HeadTagPlanCompiler
+                        .compile(loader.loadClass("sub.SubUI")));
+
+                assertEquals(Arrays.asList("style{} content=body{margin:0}",
+                        "meta{name=base}"), tags);
+            }
+        }
+    }
+
+    /**
+     * Describes the tags of a plan without referring to classes, so that
+     * plans for classes from different class loaders can be compared.
+     */
+    private static List<String> describe(HeadTagPlan plan) {
+        List<String> tags = new ArrayList<>();
+        for (HeadTagTemplate tag : plan.getTags()) {
+            StringBuilder description = new StringBuilder(tag.getTagName());
+            description.append(tag.getAttributes());
+            if (!tag.getConditions().isEmpty()) {
+                description.append(" conditions=").append(
+                        tag.getConditions().size());
+            }
+            if (tag.getContent() != null) {
+                description.append(" content=").append(tag.getContent());
+            }
+            GeneratorBinding generator = tag.getGenerator();
+            if (generator != null) {
+                description.append(" generator=")
+                        .append(generator.getInstanceClass().getName())
+                        .append('/')
+                        .append(generator.getDeclaringClass().getName())
+                        .append('/').append(generator.getScope());
+                for (GeneratorBinding.GeneratedAttribute attribute : generator
+                        .getAttributes()) {
+                    description.append(' ').append(attribute.getName());
+                }
+            }
+            tags.add(description.toString());
+        }
+        return tags;
+    }
+
+    private URLClassLoader compile(boolean process, String... sources)
+            throws IOException {
+        File outputDirectory = createDirectory();
+        List<Diagnostic<? extends JavaFileObject>> errors = compile(
+                outputDirectory, process, sources);
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        return new URLClassLoader(new URL[] { outputDirectory.toURI()
+                .toURL() }, getClass().getClassLoader());
+    }
+
+    /**
+     * Compiles source code, returning any errors.
+     */
+    private List<Diagnostic<? extends JavaFileObject>> compile(
+            File outputDirectory, boolean process, String... sources)
+            throws IOException {
+        File sourceDirectory = createDirectory();
+        List<File> sourceFiles = new ArrayList<>();
+        for (String source : sources) {
+            Matcher matcher = TYPE_NAME.matcher(source);
+            assertTrue(matcher.find());
+            File sourceFile = new File(sourceDirectory, matcher.group(1)
+                    + ".java");
+            Files.write(sourceFile.toPath(), source
+                    .getBytes(StandardCharsets.UTF_8));
+            sourceFiles.add(sourceFile);
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = new ArrayList<>(Arrays.asList("-d",
+                outputDirectory.getPath(), "-classpath",
+                System.getProperty("java.class.path"),
+                // Don't compile sources found in dependencies
+                "-implicit:none", "-sourcepath", ""));
+        if (!process) {
+            options.add("-proc:none");
+        }
+
+        try (StandardJavaFileManager fileManager = compiler
+                .getStandardFileManager(diagnostics, Locale.ROOT,
+                        StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null,
+                    fileManager, diagnostics, options, null, fileManager
+                            .getJavaFileObjectsFromFiles(sourceFiles));
+            if (process) {
+                task.setProcessors(Collections
+                        .singletonList(new HeadTagProcessor()));
+            }
+            task.call();
+        }
+
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+                .getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    private File createDirectory() throws IOException {
+        File directory = Files.createTempDirectory("processor").toFile();
+        directories.add(directory);
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,195 @@
+package org.vaadin.leif.headertags;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.vaadin.server.VaadinRequest;
+
+public class HeadTagSourceReaderTest extends TestCase {
+
+    private static class ReadTag {
+        private final String tagName;
+        private final Map<String, String> attributes;
+        private final List<RequestCondition> conditions;
+
+        private ReadTag(String tagName, Map<String, String> attributes,
+                List<RequestCondition> conditions) {
+            this.tagName = tagName;
+            this.attributes = attributes;
+            this.conditions = conditions;
+        }
+
+        @Override
+        public String toString() {
+            return tagName + attributes;
+        }
+    }
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("sources").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testJsonTagsInFileOrder() throws IOException {
+        List<ReadTag> tags = read("tags.json", "[\n"
+                + "  { \"tag\": \"meta\", \"name\": \"description\","
+                + " \"content\": \"App\" },\n"
+                + "  {\"tag\":\"link\",\"rel\":\"icon\",\"href\":\"a.png\"},\n"
+                + "  { \"tag\": \"meta\", \"name\": \"robots\", \"x\": null }\n"
+                + "]\n");
+
+        assertEquals("[meta{name=description, content=App}, "
+                + "link{rel=icon, href=a.png}, meta{name=robots}]",
+                tags.toString());
+    }
+
+    public void testJsonEmptyArray() throws IOException {
+        assertTrue(read("empty.json", " [ ] ").isEmpty());
+    }
+
+    public void testJsonEscapes() throws IOException {
+        List<ReadTag> tags = read("escapes.json", "[{\"tag\": \"meta\", "
+                + "\"content\": \"\\\"q\\\" \\\\ \\/ \\t\\n \\u00e5\\u20AC\"}]");
+
+        assertEquals("\"q\" \\ / \t\n \u00e5\u20ac",
+                tags.get(0).attributes.get("content"));
+    }
+
+    public void testJsonScalarsAsStrings() throws IOException {
+        List<ReadTag> tags = read("scalars.json", "[{\"tag\": \"meta\", "
+                + "\"a\": true, \"b\": -1.5e3, \"c\": 0}]");
+
+        assertEquals("meta{a=true, b=-1.5e3, c=0}", tags.get(0).toString());
+    }
+
+    public void testJsonNestedConditions() throws IOException {
+        List<ReadTag> tags = read("conditions.json", "[\n"
+                + "  { \"tag\": \"link\", \"rel\": \"apple-touch-icon\",\n"
+                + "    \"when\": [\n"
+                + "      { \"header\": \"User-Agent\", \"contains\": \"iPhone\" },\n"
+                + "      { \"header\": \"User-Agent\", \"matches\": \"Safari\","
+                + " \"negate\": true }\n"
+                + "    ] },\n"
+                + "  { \"tag\": \"meta\", \"when\": [] }\n"
+                + "]");
+
+        assertEquals(2, tags.size());
+        List<RequestCondition> conditions = tags.get(0).conditions;
+        assertEquals(2, conditions.size());
+        assertEquals("link{rel=apple-touch-icon}", tags.get(0).toString());
+        assertTrue(tags.get(1).conditions.isEmpty());
+
+        VaadinRequest iPhone = createRequest("iPhone Chrome");
+        assertTrue(conditions.get(0).test(iPhone));
+        assertTrue(conditions.get(1).test(iPhone));
+        assertFalse(conditions.get(1).test(createRequest("iPhone Safari")));
+    }
+
+    public void testMalformedJson() throws IOException {
+        assertInvalid("{}", "at line 1: expected [");
+        assertInvalid("[{\"tag\": \"meta\"", "at line 1: expected , or }");
+        assertInvalid("[{\"tag\": \"meta\"}] x",
+                "unexpected content after the tag array");
+        assertInvalid("[\n{\"name\": \"a\"}]", "at line 2: tag has no tag name");
+        assertInvalid("[{\"tag\": \"meta\", \"a\": \"open}]",
+                "unterminated string");
+        assertInvalid("[{\"tag\": \"meta\", \"a\": \"\\x\"}]", "invalid escape");
+        assertInvalid("[{\"tag\": \"meta\", \"a\": \"\\u12G4\"}]",
+                "invalid unicode escape");
+        assertInvalid("[{\"tag\": \"meta\", \"a\": yes}]",
+                "unexpected value yes");
+        assertInvalid("[{\"tag\": \"meta\", \"when\": [{\"contains\": \"a\"}]}]",
+                "condition has no header");
+        assertInvalid("[{\"tag\": \"meta\", \"when\": [{\"header\": \"a\","
+                + " \"equals\": \"b\"}]}]", "unknown condition property equals");
+    }
+
+    public void testPropertiesOrderedByIndex() throws IOException {
+        List<ReadTag> tags = read("tags.properties", "10.tag=link\n"
+                + "10.rel=icon\n"
+                + "10.href=b.png\n"
+                + "2.tag=meta\n"
+                + "2.name=description\n"
+                + "2.content=A \\u00e5 value\n");
+
+        assertEquals("[meta{name=description, content=A \u00e5 value}, "
+                + "link{rel=icon, href=b.png}]", tags.toString());
+    }
+
+    public void testPropertiesAttributeNamesWithDots() throws IOException {
+        List<ReadTag> tags = read("dots.properties",
+                "1.tag=meta\n1.property=og.title\n1.data.value=x\n");
+
+        assertEquals("[meta{property=og.title, data.value=x}]",
+                tags.toString());
+    }
+
+    public void testMalformedProperties() throws IOException {
+        assertInvalid("name.properties", "tag=meta\n",
+                "Key tag in head tag source name.properties should be on the"
+                        + " form index.attribute");
+        assertInvalid("index.properties", "first.tag=meta\n",
+                "Key first.tag in head tag source index.properties should be"
+                        + " on the form index.attribute");
+        assertInvalid("tag.properties", "1.name=description\n",
+                "Tag 1 in head tag source tag.properties has no tag name");
+    }
+
+    public void testUnsupportedFileType() throws IOException {
+        assertInvalid("tags.xml", "<meta/>", "Head tag source tags.xml"
+                + " should be a .json or .properties file");
+    }
+
+    private void assertInvalid(String content, String message)
+            throws IOException {
+        assertInvalid("invalid.json", content, message);
+    }
+
+    private void assertInvalid(String name, String content, String message)
+            throws IOException {
+        try {
+            read(name, content);
+            fail("Should not accept " + content);
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private List<ReadTag> read(String name, String content)
+            throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        List<ReadTag> tags = new ArrayList<>();
+        HeadTagSourceReader.read(file.toURI().toURL(), name,
+                (tagName, attributes, conditions) -> tags.add(new ReadTag(
+                        tagName, attributes, conditions)));
+        return tags;
+    }
+
+    private static VaadinRequest createRequest(String userAgent) {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                HeadTagSourceReaderTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> "getHeader".equals(method.getName())
+                        && "User-Agent".equals(args[0]) ? userAgent : null);
+    }
+}
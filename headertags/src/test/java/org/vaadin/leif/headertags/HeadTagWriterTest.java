@@ -0,0 +1,201 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Entities.EscapeMode;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+public class HeadTagWriterTest extends TestCase {
+
+    private static final String BOOTSTRAP_PAGE = "<!DOCTYPE html><html><head>"
+            + "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\">"
+            + "<meta http-equiv=\"X-UA-Compatible\" content=\"IE=11\">"
+            + "<link rel=\"shortcut icon\" href=\"VAADIN/themes/valo/favicon.ico\">"
+            + "</head><body></body></html>";
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (iPhone) Mobile Safari",
+            "Mozilla/5.0 (Windows NT 10.0) Firefox" };
+
+    public abstract static class TestUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Never initialized
+        }
+    }
+
+    @HeadTag("title")
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Title {
+        @HeadTagContent
+        String value();
+    }
+
+    @Meta(name = "generated")
+    public static class ContentGenerator {
+        public String content(VaadinRequest request) {
+            return "\"Agent\" <" + request.getHeader("User-Agent") + "> & more";
+        }
+    }
+
+    @Link(rel = "canonical", href = HeadTag.NULL_VALUE)
+    public static class CanonicalGenerator {
+        public String href(VaadinRequest request) {
+            if (request.getHeader("User-Agent").contains("Mobile")) {
+                return HeadTag.NULL_VALUE;
+            }
+            return "https://example.com/?a=1&b=2";
+        }
+    }
+
+    @Link(rel = "icon", href = "favicon.ico")
+    public static class IconGenerator {
+        public String sizes(VaadinRequest request) {
+            return request.getHeader("User-Agent").contains("Mobile") ? "192x192"
+                    : "32x32";
+        }
+    }
+
+    @Script("app.js")
+    public static class ScriptGenerator {
+        public String async(VaadinRequest request) {
+            return request.getHeader("User-Agent").contains("Mobile") ? ""
+                    : HeadTag.NULL_VALUE;
+        }
+
+        public String defer(VaadinRequest request) {
+            return "defer";
+        }
+    }
+
+    public static class ArticleGenerator {
+        public String getHeadline(VaadinRequest request) {
+            return "</script><script>alert(1)</script>";
+        }
+
+        public String getInLanguage(VaadinRequest request) {
+            return request.getHeader("User-Agent").contains("Mobile")
+                    ? HeadTag.NULL_VALUE : "en";
+        }
+    }
+
+    @Viewport("width=device-width, initial-scale=1")
+    @Meta(httpEquiv = "X-UA-Compatible", content = "IE=edge")
+    @Meta(name = "description", content = "Quotes \" & <tags>\u00A0")
+    @Meta(name = "mobile", content = "yes", when = @Condition(header = "User-Agent", contains = "Mobile"))
+    @Link(rel = "stylesheet", href = "styles.css")
+    @Link(rel = "icon", href = "icon.png", sizes = "16x16")
+    @Link(rel = "preload", href = "font.woff2", type = "font/woff2")
+    @Script(value = "async.js", async = true)
+    @Title("  Tom &  Jerry's <b>\"title\"</b>  ")
+    @JsonLd(type = "Organization", properties = @JsonLdProperty(name = "name", value = "Example <b>"))
+    @JsonLd(type = "Article", generator = ArticleGenerator.class)
+    @HeadTagGenerators({ ContentGenerator.class, CanonicalGenerator.class,
+            IconGenerator.class, ScriptGenerator.class })
+    public static class MixedUI extends TestUI {
+    }
+
+    @Meta(name = "description", content = "Only static tags")
+    @Link(rel = "stylesheet", href = "a.css")
+    @Link(rel = "stylesheet", href = "b.css")
+    @Script(value = "a.js", defer = true)
+    public static class StaticUI extends TestUI {
+    }
+
+    public void testMixedTagsMatchElements() {
+        assertSameAsElements(MixedUI.class);
+    }
+
+    public void testStaticTagsMatchElements() {
+        assertSameAsElements(StaticUI.class);
+    }
+
+    public void testReplacingTagsRemainElements() {
+        HeadMerger merger = new HeadMerger(HeadMerger.DEFAULT_REPLACE_KEYS);
+        HeadTagPlan plan = HeadTagPlan.get(MixedUI.class);
+        HeadTagWriter writer = new HeadTagWriter(plan, merger);
+
+        VaadinRequest request = createRequest(USER_AGENTS[0]);
+        Element head = writer.createHead("", plan.generateValues(
+                new GeneratorContext(request, null, null, MixedUI.class),
+                GeneratorEnvironment.createSequential()));
+
+        assertEquals(1, head.select("meta[http-equiv=X-UA-Compatible]")
+                .size());
+        assertEquals(2, head.select("link[rel=icon]").size());
+        assertTrue(head.select("meta[name=description]").isEmpty());
+    }
+
+    public void testOnlySupportsDefaultOutputSettings() {
+        HeadTagWriter writer = new HeadTagWriter(
+                HeadTagPlan.get(StaticUI.class), new HeadMerger(
+                        HeadMerger.DEFAULT_REPLACE_KEYS));
+
+        Document document = Jsoup.parse(BOOTSTRAP_PAGE);
+        assertTrue(writer.supports(document.outputSettings()));
+
+        document.outputSettings().prettyPrint(false);
+        assertFalse(writer.supports(document.outputSettings()));
+
+        document = Jsoup.parse(BOOTSTRAP_PAGE);
+        document.outputSettings().charset("US-ASCII");
+        assertFalse(writer.supports(document.outputSettings()));
+
+        document = Jsoup.parse(BOOTSTRAP_PAGE);
+        document.outputSettings().escapeMode(EscapeMode.xhtml);
+        assertFalse(writer.supports(document.outputSettings()));
+    }
+
+    private static void assertSameAsElements(Class<? extends UI> uiClass) {
+        HeadMerger merger = new HeadMerger(HeadMerger.DEFAULT_REPLACE_KEYS);
+        HeadTagPlan plan = HeadTagPlan.get(uiClass);
+        HeadTagWriter writer = new HeadTagWriter(plan, merger);
+        GeneratorEnvironment environment = GeneratorEnvironment
+                .createSequential();
+
+        for (String userAgent : USER_AGENTS) {
+            VaadinRequest request = createRequest(userAgent);
+            String[][] values = plan.generateValues(new GeneratorContext(
+                    request, null, null, uiClass), environment);
+
+            Document expected = Jsoup.parse(BOOTSTRAP_PAGE);
+            merger.merge(expected.head(),
+                    plan.createHead(expected.baseUri(), values));
+
+            Document actual = Jsoup.parse(BOOTSTRAP_PAGE);
+            merger.merge(actual.head(),
+                    writer.createHead(actual.baseUri(), values));
+
+            assertEquals(userAgent, expected.outerHtml(), actual.outerHtml());
+        }
+    }
+
+    private static VaadinRequest createRequest(String userAgent) {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                HeadTagWriterTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getHeader":
+                        return "User-Agent".equalsIgnoreCase((String) args[0])
+                                ? userAgent : null;
+                    case "getLocale":
+                        return Locale.ENGLISH;
+                    case "getPathInfo":
+                        return "/";
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,139 @@
+package org.vaadin.leif.headertags;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+
+public class HeadTagsTest extends TestCase {
+
+    private final HeadTags tags = new HeadTags();
+
+    public void testKeysAreNotCaseSensitive() {
+        tags.put(" META[Name=Theme-Color] ", content("red"));
+        tags.put("meta[name=theme-color]", content("blue"));
+        assertEquals(1, tags.getSnapshot().getTagCount());
+        assertEquals("blue", merge(tags).attr("content"));
+
+        tags.remove("Meta[NAME=THEME-COLOR]");
+        assertTrue(tags.isEmpty());
+    }
+
+    public void testKeyAttributeIsAdded() {
+        tags.put("meta[name=theme-color]", content("red"));
+
+        Elements metas = merge(tags);
+        assertEquals(1, metas.size());
+        assertEquals("theme-color", metas.attr("name"));
+        assertEquals("red", metas.attr("content"));
+    }
+
+    public void testKeyAttributeCannotBeOverwritten() {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("Name", "other");
+        attributes.put("content", "red");
+        try {
+            tags.put("meta[name=theme-color]", attributes);
+            fail("Another key attribute value should be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(tags.isEmpty());
+        }
+
+        // Repeating the same value is harmless
+        attributes.put("Name", "theme-color");
+        tags.put("meta[name=theme-color]", attributes);
+        assertEquals(1, merge(tags).size());
+    }
+
+    public void testInvalidKeysAreRejected() {
+        for (String key : new String[] { "meta", "meta[name]",
+                "meta[name=a],link[rel=b]" }) {
+            try {
+                tags.put(key, content("red"));
+                fail(key + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+        }
+        try {
+            tags.remove("meta");
+            fail("Invalid key should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    public void testSnapshotIsNotAffectedByChanges() {
+        tags.put("meta[name=theme-color]", content("red"));
+        HeadTags.Snapshot snapshot = tags.getSnapshot();
+
+        tags.put("meta[name=description]", content("Tenant"));
+        tags.remove("meta[name=theme-color]");
+
+        assertEquals(1, snapshot.getTagCount());
+        assertEquals(1, tags.getSnapshot().getTagCount());
+
+        tags.clear();
+        assertTrue(tags.isEmpty());
+        assertEquals(1, snapshot.getTagCount());
+    }
+
+    public void testSerialization() throws IOException,
+            ClassNotFoundException {
+        tags.put("meta[name=theme-color]", content("red"));
+        tags.put("link[rel=icon]", Collections.singletonMap("href", "a.png"),
+                Collections.singletonMap("href", "b.png"));
+
+        HeadTags copy = serializeAndDeserialize(tags);
+
+        assertEquals(3, copy.getSnapshot().getTagCount());
+        Document document = Jsoup.parse("<html><head>"
+                + "<link rel=\"icon\" href=\"old.png\"></head></html>");
+        copy.getSnapshot().merge(document.head(), new GeneratorContext(null,
+                null, null, null), GeneratorEnvironment.createSequential());
+        assertEquals("red", document.head().select("meta[name=theme-color]")
+                .attr("content"));
+        Elements icons = document.head().select("link[rel=icon]");
+        assertEquals(2, icons.size());
+        assertEquals("a.png", icons.get(0).attr("href"));
+        assertEquals("b.png", icons.get(1).attr("href"));
+
+        // Changes to the copy don't affect the original
+        copy.remove("link[rel=icon]");
+        assertEquals(3, tags.getSnapshot().getTagCount());
+        assertTrue(serializeAndDeserialize(new HeadTags()).isEmpty());
+    }
+
+    private static Map<String, String> content(String content) {
+        return Collections.singletonMap("content", content);
+    }
+
+    private static Elements merge(HeadTags tags) {
+        Document document = Jsoup.parse("<html><head></head></html>");
+        tags.getSnapshot().merge(document.head(), new GeneratorContext(null,
+                null, null, null), GeneratorEnvironment.createSequential());
+        return document.head().children();
+    }
+
+    private static HeadTags serializeAndDeserialize(HeadTags tags)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tags);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (HeadTags) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.vaadin.leif.headertags;
+
+import junit.framework.TestCase;
+
+public class JsonLdTemplateTest extends TestCase {
+
+    private static String toJson(String value) {
+        StringBuilder buffer = new StringBuilder();
+        JsonLdTemplate.appendString(buffer, value);
+        return buffer.toString();
+    }
+
+    public void testPlainString() {
+        assertEquals("\"Example Inc.\"", toJson("Example Inc."));
+    }
+
+    public void testJsonEscapes() {
+        assertEquals("\"a\\\"b\\\\c\\nd\\re\\tf\"",
+                toJson("a\"b\\c\nd\re\tf"));
+    }
+
+    public void testControlCharacters() {
+        assertEquals("\"\\u0000\\u001f\"", toJson("\u0000\u001f"));
+    }
+
+    public void testCannotEndScriptElement() {
+        String json = toJson("</script><script>alert(1)</script>");
+        assertEquals(-1, json.indexOf('<'));
+        assertEquals(-1, json.indexOf('>'));
+        assertEquals("\"\\u003c/script\\u003e\\u003cscript\\u003ealert(1)"
+                + "\\u003c/script\\u003e\"", json);
+    }
+
+    public void testCannotStartComment() {
+        assertEquals("\"\\u003c!-- \\u0026amp; --\\u003e\"",
+                toJson("<!-- &amp; -->"));
+    }
+
+    public void testLineSeparators() {
+        assertEquals("\"a\\u2028b\\u2029c\"", toJson("a\u2028b\u2029c"));
+    }
+
+    public void testNonAsciiKeptAsIs() {
+        assertEquals("\"Caf\u00e9 \u65e5\u672c\"", toJson("Caf\u00e9 \u65e5\u672c"));
+    }
+}
@@ -0,0 +1,76 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinServletResponse;
+import com.vaadin.ui.UI;
+
+public class LinkHeadersTest extends TestCase {
+
+    @Link(rel = "preload", href = "font.woff2", type = "font/woff2")
+    @Link(rel = "preconnect", href = "https://cdn.example.com")
+    @Link(rel = "stylesheet", href = "styles.css")
+    public static class LinkUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Never initialized
+        }
+    }
+
+    public void testParseRels() {
+        assertNull(LinkHeaders.parseRels("false"));
+        assertNull(LinkHeaders.parseRels(" "));
+        assertSame(LinkHeaders.DEFAULT_RELS, LinkHeaders.parseRels("true"));
+        assertEquals(Collections.singleton("stylesheet"),
+                LinkHeaders.parseRels(" StyleSheet, "));
+    }
+
+    public void testCreateHeader() {
+        String header = LinkHeaders.createHeader(HeadTagPlan.get(LinkUI.class),
+                LinkHeaders.DEFAULT_RELS);
+
+        assertEquals("<font.woff2>; rel=preload; type=\"font/woff2\", "
+                + "<https://cdn.example.com>; rel=preconnect", header);
+        assertNull(LinkHeaders.createHeader(HeadTagPlan.get(LinkUI.class),
+                Collections.singleton("icon")));
+    }
+
+    public void testCombineKeepsExistingHeaders() {
+        VaadinServletResponse response = createResponse(Arrays.asList(
+                "<a.js>; rel=preload; as=script", ""));
+
+        assertEquals("<a.js>; rel=preload; as=script, <b.css>; rel=preload",
+                LinkHeaders.combine(response, "<b.css>; rel=preload"));
+    }
+
+    public void testCombineWithoutExistingHeaders() {
+        assertEquals("<b.css>; rel=preload", LinkHeaders.combine(
+                createResponse(Collections.<String> emptyList()),
+                "<b.css>; rel=preload"));
+        assertEquals("<b.css>; rel=preload",
+                LinkHeaders.combine(null, "<b.css>; rel=preload"));
+    }
+
+    private static VaadinServletResponse createResponse(List<String> links) {
+        HttpServletResponse servletResponse = (HttpServletResponse) Proxy
+                .newProxyInstance(LinkHeadersTest.class.getClassLoader(),
+                        new Class<?>[] { HttpServletResponse.class },
+                        (proxy, method, args) -> {
+                            if ("getHeaders".equals(method.getName())
+                                    && "Link".equals(args[0])) {
+                                return links;
+                            }
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        });
+        return new VaadinServletResponse(servletResponse, null);
+    }
+}
@@ -0,0 +1,198 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import com.vaadin.server.DefaultDeploymentConfiguration;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+public class ParallelGeneratorsTest extends TestCase {
+
+    private static final AtomicInteger invocations = new AtomicInteger();
+
+    private static volatile CountDownLatch blockingStarted;
+
+    private static volatile CountDownLatch blockingInterrupted;
+
+    public abstract static class TestUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Never initialized
+        }
+    }
+
+    @Meta(name = "slow")
+    public static class SlowGenerator {
+        public String content(VaadinRequest request)
+                throws InterruptedException {
+            Thread.sleep(100);
+            return "slow";
+        }
+    }
+
+    @Meta(name = "fast")
+    public static class FastGenerator {
+        public String content(VaadinRequest request) {
+            return "fast";
+        }
+    }
+
+    @Meta(name = "stuck")
+    @GeneratorTimeout(value = 50, fallback = "fallback")
+    public static class StuckGenerator {
+        public String content(VaadinRequest request)
+                throws InterruptedException {
+            Thread.sleep(10000);
+            return "stuck";
+        }
+    }
+
+    @Meta(name = "failing")
+    public static class FailingGenerator {
+        public String content(VaadinRequest request)
+                throws InterruptedException {
+            // Fail only once the other generator is running
+            blockingStarted.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("Generator failure");
+        }
+    }
+
+    @Meta(name = "blocking")
+    public static class BlockingGenerator {
+        public String content(VaadinRequest request) {
+            blockingStarted.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                blockingInterrupted.countDown();
+            }
+            return "blocking";
+        }
+    }
+
+    @Meta(name = "cached")
+    @CacheableGenerator
+    public static class CachedGenerator {
+        public String content(VaadinRequest request) {
+            return "cached-" + invocations.incrementAndGet();
+        }
+    }
+
+    @HeadTagGenerators({ SlowGenerator.class, FastGenerator.class })
+    public static class OrderUI extends TestUI {
+    }
+
+    @HeadTagGenerators({ FastGenerator.class, StuckGenerator.class })
+    public static class TimeoutUI extends TestUI {
+    }
+
+    @HeadTagGenerators({ FailingGenerator.class, BlockingGenerator.class })
+    public static class FailingUI extends TestUI {
+    }
+
+    @HeadTagGenerators(CachedGenerator.class)
+    public static class CachedUI extends TestUI {
+    }
+
+    private GeneratorEnvironment environment;
+
+    @Override
+    protected void setUp() {
+        Properties parameters = new Properties();
+        parameters.setProperty("productionMode", "true");
+        parameters.setProperty(HeaderTagHandler.PARALLEL_GENERATORS_PARAMETER,
+                "true");
+        parameters.setProperty(HeaderTagHandler.GENERATOR_EXECUTOR_PARAMETER,
+                "2");
+        parameters.setProperty(HeaderTagHandler.GENERATOR_TIMEOUT_PARAMETER,
+                "5000");
+        environment = GeneratorEnvironment.create(
+                new DefaultDeploymentConfiguration(getClass(), parameters),
+                "test");
+        assertTrue(environment.isParallel());
+    }
+
+    @Override
+    protected void tearDown() {
+        environment.destroy();
+    }
+
+    public void testOutputInPlanOrder() {
+        Elements metas = createHead(OrderUI.class).select("meta");
+
+        assertEquals(2, metas.size());
+        assertEquals("slow", metas.get(0).attr("name"));
+        assertEquals("slow", metas.get(0).attr("content"));
+        assertEquals("fast", metas.get(1).attr("name"));
+        assertEquals("fast", metas.get(1).attr("content"));
+    }
+
+    public void testTimeoutUsesFallback() {
+        long start = System.nanoTime();
+        Element head = createHead(TimeoutUI.class);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("fast", head.select("meta[name=fast]").attr("content"));
+        assertEquals("fallback", head.select("meta[name=stuck]").attr(
+                "content"));
+        assertTrue("Waited " + millis + " ms", millis < 5000);
+    }
+
+    public void testFailureCancelsOtherGenerators()
+            throws InterruptedException {
+        blockingStarted = new CountDownLatch(1);
+        blockingInterrupted = new CountDownLatch(1);
+
+        try {
+            createHead(FailingUI.class);
+            fail("The generator failure should be thrown");
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(e), containsFailure(e));
+        }
+
+        assertTrue(blockingInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testCachedValuesAreNotSubmitted() {
+        invocations.set(0);
+        assertEquals("cached-1", createHead(CachedUI.class).select(
+                "meta[name=cached]").attr("content"));
+
+        // Submitting anything would now be rejected
+        environment.destroy();
+
+        assertEquals("cached-1", createHead(CachedUI.class).select(
+                "meta[name=cached]").attr("content"));
+        assertEquals(1, invocations.get());
+    }
+
+    private static boolean containsFailure(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if ("Generator failure".equals(t.getMessage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Element createHead(Class<? extends UI> uiClass) {
+        return HeadTagPlan.get(uiClass).createHead("", new GeneratorContext(
+                createRequest(), null, null, uiClass), environment);
+    }
+
+    private static VaadinRequest createRequest() {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                ParallelGeneratorsTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> null);
+    }
+}
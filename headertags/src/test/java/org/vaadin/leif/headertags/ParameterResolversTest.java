@@ -0,0 +1,172 @@
+package org.vaadin.leif.headertags;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+public class ParameterResolversTest extends TestCase {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1000);
+
+    public static class ClockResolver implements
+            HeadTagParameterResolver<Clock> {
+        @Override
+        public Class<Clock> getType() {
+            return Clock.class;
+        }
+
+        @Override
+        public Clock resolve(GeneratorContext context) {
+            return Clock.fixed(NOW, ZoneOffset.UTC);
+        }
+    }
+
+    public static class OtherClockResolver extends ClockResolver {
+        @Override
+        public Clock resolve(GeneratorContext context) {
+            return Clock.systemUTC();
+        }
+    }
+
+    public static class LocaleResolver implements
+            HeadTagParameterResolver<Locale> {
+        @Override
+        public Class<Locale> getType() {
+            return Locale.class;
+        }
+
+        @Override
+        public Locale resolve(GeneratorContext context) {
+            return Locale.GERMAN;
+        }
+    }
+
+    @Meta(name = "generated")
+    public static class ContextGenerator {
+        public String content(Locale locale, VaadinRequest request,
+                Class<?> uiClass, GeneratorContext context) {
+            assertSame(request, context.getRequest());
+            return locale + " " + request.getPathInfo() + " "
+                    + uiClass.getSimpleName();
+        }
+    }
+
+    @HeadTagGenerators(ContextGenerator.class)
+    public static class ContextUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Never initialized
+        }
+    }
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("resolvers").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        delete(directory);
+    }
+
+    public void testBuiltInFilters() throws Throwable {
+        VaadinRequest request = createRequest();
+        GeneratorContext context = new GeneratorContext(request, null, null,
+                ContextUI.class);
+        ParameterResolvers resolvers = ParameterResolvers
+                .get(ContextGenerator.class);
+
+        assertSame(request, resolvers.getFilter(VaadinRequest.class).invoke(
+                context));
+        assertEquals(Locale.ENGLISH, resolvers.getFilter(Locale.class)
+                .invoke(context));
+        assertSame(ContextUI.class, resolvers.getFilter(Class.class).invoke(
+                context));
+        assertSame(context, resolvers.getFilter(GeneratorContext.class)
+                .invoke(context));
+        assertNull(resolvers.getFilter(String.class));
+        assertNull(resolvers.getFilter(Clock.class));
+    }
+
+    public void testGeneratorParametersResolved() {
+        HeadTagPlan plan = HeadTagPlan.get(ContextUI.class);
+
+        String[][] values = plan.generateValues(new GeneratorContext(
+                createRequest(), null, null, ContextUI.class),
+                GeneratorEnvironment.createSequential());
+
+        assertEquals("en /view ContextUI", values[0][0]);
+    }
+
+    public void testServiceLoaderResolvers() throws Throwable {
+        File services = new File(directory, "META-INF/services");
+        services.mkdirs();
+        Files.write(new File(services, HeadTagParameterResolver.class
+                .getName()).toPath(), (ClockResolver.class.getName() + "\n"
+                + LocaleResolver.class.getName() + "\n"
+                + OtherClockResolver.class.getName() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { directory
+                .toURI().toURL() }, getClass().getClassLoader())) {
+            // Any class defined by the loader can act as the generator class
+            Class<?> generatorClass = Proxy.newProxyInstance(loader,
+                    new Class<?>[] { Runnable.class },
+                    (proxy, method, args) -> null).getClass();
+            ParameterResolvers resolvers = ParameterResolvers
+                    .get(generatorClass);
+            GeneratorContext context = new GeneratorContext(createRequest(),
+                    null, null, null);
+
+            MethodHandle clock = resolvers.getFilter(Clock.class);
+            assertNotNull(clock);
+            // The first resolver for a type is used
+            assertEquals(NOW, ((Clock) clock.invoke(context)).instant());
+            // Built-in types can't be overridden
+            assertEquals(Locale.ENGLISH, resolvers.getFilter(Locale.class)
+                    .invoke(context));
+        }
+    }
+
+    private static VaadinRequest createRequest() {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                ParameterResolversTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getLocale":
+                        return Locale.ENGLISH;
+                    case "getPathInfo":
+                        return "/view";
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,103 @@
+package org.vaadin.leif.headertags;
+
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+
+import com.vaadin.server.VaadinRequest;
+
+public class RequestConditionTest extends TestCase {
+
+    private static final VaadinRequest MOBILE = createRequest(
+            "Mozilla/5.0 (iPhone) Mobile Safari");
+
+    private static final VaadinRequest DESKTOP = createRequest(
+            "Mozilla/5.0 (Windows NT 10.0) Firefox");
+
+    private static final VaadinRequest NO_AGENT = createRequest(null);
+
+    public void testContains() {
+        RequestCondition condition = create(HeadTag.NULL_VALUE, "Mobile",
+                false);
+
+        assertTrue(condition.test(MOBILE));
+        assertFalse(condition.test(DESKTOP));
+        assertFalse(condition.test(NO_AGENT));
+    }
+
+    public void testMatchesFindsPattern() {
+        RequestCondition condition = create("(iPhone|iPad)", HeadTag.NULL_VALUE,
+                false);
+
+        assertTrue(condition.test(MOBILE));
+        assertFalse(condition.test(DESKTOP));
+        assertFalse(condition.test(NO_AGENT));
+    }
+
+    public void testHeaderPresence() {
+        RequestCondition condition = create(HeadTag.NULL_VALUE,
+                HeadTag.NULL_VALUE, false);
+
+        assertTrue(condition.test(MOBILE));
+        assertFalse(condition.test(NO_AGENT));
+    }
+
+    public void testNegate() {
+        RequestCondition contains = create(HeadTag.NULL_VALUE, "Mobile", true);
+        assertFalse(contains.test(MOBILE));
+        assertTrue(contains.test(DESKTOP));
+        // A missing header doesn't contain anything
+        assertTrue(contains.test(NO_AGENT));
+
+        RequestCondition matches = create("^Mozilla", HeadTag.NULL_VALUE,
+                true);
+        assertFalse(matches.test(DESKTOP));
+        assertTrue(matches.test(NO_AGENT));
+
+        RequestCondition presence = create(HeadTag.NULL_VALUE,
+                HeadTag.NULL_VALUE, true);
+        assertFalse(presence.test(MOBILE));
+        assertTrue(presence.test(NO_AGENT));
+    }
+
+    public void testHeaderNameIsNotCaseSensitive() {
+        RequestCondition condition = RequestCondition.create("user-agent",
+                HeadTag.NULL_VALUE, "Mobile", false);
+
+        assertTrue(condition.test(MOBILE));
+    }
+
+    public void testInvalidConditionsAreRejected() {
+        try {
+            create("Mobile", "Mobile", false);
+            fail("Both matches and contains should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        try {
+            create("(unclosed", HeadTag.NULL_VALUE, false);
+            fail("Invalid pattern should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    private static RequestCondition create(String matches, String contains,
+            boolean negate) {
+        return RequestCondition.create("User-Agent", matches, contains,
+                negate);
+    }
+
+    private static VaadinRequest createRequest(String userAgent) {
+        return (VaadinRequest) Proxy.newProxyInstance(
+                RequestConditionTest.class.getClassLoader(),
+                new Class<?>[] { VaadinRequest.class },
+                (proxy, method, args) -> {
+                    if ("getHeader".equals(method.getName())
+                            && "User-Agent".equalsIgnoreCase((String) args[0])) {
+                        return userAgent;
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,114 @@
+package org.vaadin.leif.headertags;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ResourceIntegrityTest extends TestCase {
+
+    private File directory;
+
+    private ResourceIntegrity integrity;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("integrity").toFile();
+        integrity = new ResourceIntegrity(new HeadResources(null) {
+            @Override
+            URL findResource(String path) {
+                File file = new File(directory, path);
+                try {
+                    return file.exists() ? file.toURI().toURL() : null;
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testDigestOfLocalResource() throws Exception {
+        write("styles.css", "body{margin:0}");
+        HeadTagPlan plan = createPlan("./styles.css");
+
+        HeadTagTemplate tag = integrity.apply(plan).getTags().get(0);
+
+        assertEquals(sha384("body{margin:0}"),
+                tag.getAttributes().get("integrity"));
+        assertEquals("./styles.css", tag.getAttributes().get("href"));
+    }
+
+    public void testAttributeRemovedWhenNotFound() {
+        HeadTagTemplate missing = integrity.apply(createPlan("missing.css"))
+                .getTags().get(0);
+        assertFalse(missing.getAttributes().containsKey("integrity"));
+
+        HeadTagTemplate external = integrity.apply(createPlan(
+                "https://example.com/styles.css")).getTags().get(0);
+        assertFalse(external.getAttributes().containsKey("integrity"));
+    }
+
+    public void testPlanWithoutAutoValuesUnchanged() {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("rel", "stylesheet");
+        attributes.put("href", "styles.css");
+        HeadTagPlan plan = new HeadTagPlan(Collections.singletonList(
+                new HeadTagTemplate("link", attributes, null)));
+
+        assertSame(plan, integrity.apply(plan));
+    }
+
+    public void testModifiedResource() throws Exception {
+        File file = write("app.js", "one");
+        HeadTagPlan plan = createPlan("app.js");
+        integrity.apply(plan);
+        assertTrue(integrity.isCurrent(plan));
+
+        write("app.js", "two");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertFalse(integrity.isCurrent(plan));
+        assertEquals(sha384("two"), integrity.apply(plan).getTags().get(0)
+                .getAttributes().get("integrity"));
+        assertTrue(integrity.isCurrent(plan));
+    }
+
+    private static HeadTagPlan createPlan(String href) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("rel", "stylesheet");
+        attributes.put("href", href);
+        attributes.put("integrity", HeadTag.AUTO);
+        return new HeadTagPlan(Arrays.asList(new HeadTagTemplate("link",
+                attributes, null)));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String sha384(String content) throws Exception {
+        return "sha384-" + Base64.getEncoder().encodeToString(MessageDigest
+                .getInstance("SHA-384").digest(content
+                        .getBytes(StandardCharsets.UTF_8)));
+    }
+}